@@ -0,0 +1,29 @@
+package ru.softlab.ib6.benchmark;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+
+/**
+ * Общие подключения для бенчмарков.
+ *
+ * @author Andrey Grigorov
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Подключение к брокеру встроенной сети через vm-транспорт, без TCP.
+     */
+    static ActiveMQConnectionFactory vmConnectionFactory(EmbeddedBrokerNetwork network, int index) {
+        return new ActiveMQConnectionFactory("vm://" + network.getBroker(index).getBrokerName() + "?create=false");
+    }
+
+    /**
+     * Подключение к брокеру встроенной сети через TCP с теми же параметрами, что в сценариях.
+     */
+    static ActiveMQConnectionFactory tcpConnectionFactory(EmbeddedBrokerNetwork network, int index, int prefetch) {
+        return new ActiveMQConnectionFactory(network.getConnectUri(index) + "?jms.prefetchPolicy.all=" + prefetch);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.softlab.ib6.benchmark;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Пропускная способность доставки сообщений в MessageListener.
+ *
+ * За одну операцию отправляется пакет из {@link #BATCH} неперсистентных сообщений и ожидается, пока все
+ * они будут доставлены в listener. Результат пересчитывается на одно сообщение.
+ *
+ * @author Andrey Grigorov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    static final int BATCH = 1000;
+
+    @Param({"1", "100"})
+    public int prefetch;
+
+    private EmbeddedBrokerNetwork network;
+    private Connection connection;
+    private MessageProducer producer;
+    private BytesMessage message;
+    private volatile CountDownLatch delivered;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        network = EmbeddedBrokerNetwork.builder().brokers(1).start();
+        ActiveMQConnectionFactory connectionFactory = Benchmarks.vmConnectionFactory(network, 0);
+        connectionFactory.getPrefetchPolicy().setAll(prefetch);
+        connectionFactory.setUseAsyncSend(true);
+        connection = connectionFactory.createConnection();
+
+        Session consumerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = consumerSession.createQueue("benchmark.dispatch");
+        MessageConsumer consumer = consumerSession.createConsumer(queue);
+        consumer.setMessageListener(received -> delivered.countDown());
+
+        Session producerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = producerSession.createProducer(queue);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message = Messages.createBytesMessage(producerSession, "DataCenter #1 - 1", null);
+
+        connection.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.close();
+        network.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() throws Exception {
+        delivered = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            producer.send(message);
+        }
+        if (!delivered.await(30, TimeUnit.SECONDS)) {
+            throw new TimeoutException(delivered.getCount() + " messages were not delivered");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ru.softlab.ib6.benchmark;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.softlab.ib6.payload.Payload;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость построения сообщения до его отправки: создание BytesMessage, запись полезной нагрузки
+ * и заполнение correlation ID и строковых свойств.
+ *
+ * Сообщения только создаются, поэтому сессии достаточно брокера в памяти без хранилища и JMX: запуск KahaDB
+ * не влияет на измерение, а только замедляет подготовку.
+ *
+ * @author Andrey Grigorov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageConstructionBenchmark {
+
+    private Connection connection;
+    private Session session;
+    private byte[] payload;
+    private Map<String, String> headers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        connection = new ActiveMQConnectionFactory(
+                "vm://message-construction?broker.persistent=false&broker.useJmx=false").createConnection();
+        session = connection.createSession(true, Session.SESSION_TRANSACTED);
+
+        payload = new byte[Messages.PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+
+        headers = new HashMap<>();
+        headers.put("service", "ABC");
+        headers.put("origin", "DataCenter #1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        // последнее соединение останавливает созданный им vm-брокер
+        connection.close();
+    }
+
+    @Benchmark
+    public BytesMessage createBytesMessage() throws JMSException {
+        return session.createBytesMessage();
+    }
+
+    @Benchmark
+    public BytesMessage writePayload() throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(payload);
+        return message;
+    }
+
+    @Benchmark
+    public BytesMessage setCorrelationIdAndHeaders() throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.setJMSCorrelationID("DataCenter #1 - 1");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            message.setStringProperty(header.getKey(), header.getValue());
+        }
+        return message;
+    }
+
+    @Benchmark
+    public Payload nextPayload() {
+        return Messages.getPayloadProvider().next();
+    }
+
+    /**
+     * Полное построение сообщения так, как это делают отправители.
+     */
+    @Benchmark
+    public BytesMessage createMessage() throws JMSException {
+        return Messages.createBytesMessage(session, "DataCenter #1 - 1", headers);
+    }
+}
@@ -0,0 +1,93 @@
+package ru.softlab.ib6.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+import ru.softlab.ib6.producer.ConnectionPerMessageSender;
+import ru.softlab.ib6.producer.MessageSender;
+import ru.softlab.ib6.producer.PooledMessageSender;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь отправки одного сообщения с commit'ом транзакции.
+ *
+ * target=vm - producer и consumer подключены к одному встроенному брокеру через vm-транспорт;
+ * target=network - producer подключен к первому брокеру сети из двух, consumer - ко второму,
+ * поэтому каждое сообщение проходит через сетевой мост.
+ *
+ * @author Andrey Grigorov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendBenchmark {
+
+    @Param({"vm", "network"})
+    public String target;
+
+    @Param({"pooled", "baseline"})
+    public String sender;
+
+    private EmbeddedBrokerNetwork network;
+    private Connection consumerConnection;
+    private ConnectionFactory producerConnectionFactory;
+    private Queue queue;
+    private MessageSender messageSender;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ConnectionFactory consumerConnectionFactory;
+        if ("vm".equals(target)) {
+            network = EmbeddedBrokerNetwork.builder().brokers(1).start();
+            producerConnectionFactory = Benchmarks.vmConnectionFactory(network, 0);
+            consumerConnectionFactory = producerConnectionFactory;
+        } else {
+            network = EmbeddedBrokerNetwork.start();
+            producerConnectionFactory = Benchmarks.tcpConnectionFactory(network, 0, 1);
+            consumerConnectionFactory = Benchmarks.tcpConnectionFactory(network, 1, 1);
+        }
+
+        consumerConnection = consumerConnectionFactory.createConnection();
+        Session session = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        queue = session.createQueue("benchmark.send");
+        MessageConsumer consumer = session.createConsumer(queue);
+        consumer.setMessageListener(message -> {
+        });
+        consumerConnection.start();
+
+        messageSender = "pooled".equals(sender) ? new PooledMessageSender() : new ConnectionPerMessageSender();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        messageSender.close();
+        consumerConnection.close();
+        network.close();
+    }
+
+    @Benchmark
+    public void send() throws JMSException {
+        messageSender.send(producerConnectionFactory, queue, "DataCenter #1 - 1", null);
+    }
+}
@@ -1,15 +1,76 @@
+import org.HdrHistogram.Histogram;
+import ru.softlab.ib6.bridge.BridgeStatisticsSource;
+import ru.softlab.ib6.bridge.EmbeddedBridgeStatisticsSource;
+import ru.softlab.ib6.bridge.JmxBridgeStatisticsSource;
+import ru.softlab.ib6.consumer.AckMode;
+import ru.softlab.ib6.consumer.ConsumerPool;
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+import ru.softlab.ib6.embedded.Topology;
+import ru.softlab.ib6.encoding.BodyType;
+import ru.softlab.ib6.encoding.EncodingBenchmark;
+import ru.softlab.ib6.encoding.EncodingResult;
+import ru.softlab.ib6.failover.BrokerControl;
+import ru.softlab.ib6.failover.CommandBrokerControl;
+import ru.softlab.ib6.failover.EmbeddedBrokerControl;
+import ru.softlab.ib6.failover.FailoverBenchmark;
+import ru.softlab.ib6.fanout.FanOutBenchmark;
+import ru.softlab.ib6.large.LargeMessageBenchmark;
+import ru.softlab.ib6.large.TransferMode;
+import ru.softlab.ib6.load.LoadGenerator;
+import ru.softlab.ib6.load.LoadPhase;
+import ru.softlab.ib6.metrics.LatencyRecorder;
+import ru.softlab.ib6.payload.PayloadContent;
+import ru.softlab.ib6.payload.PayloadProvider;
+import ru.softlab.ib6.payload.SizeDistribution;
+import ru.softlab.ib6.persistence.DurabilityMode;
+import ru.softlab.ib6.persistence.PersistenceBenchmark;
+import ru.softlab.ib6.persistence.PersistenceResult;
+import ru.softlab.ib6.producer.AsyncSender;
+import ru.softlab.ib6.producer.BatchSender;
+import ru.softlab.ib6.producer.BatchStatistics;
+import ru.softlab.ib6.producer.ConnectionPerMessageSender;
+import ru.softlab.ib6.producer.MessageSender;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.producer.OutgoingMessage;
+import ru.softlab.ib6.producer.PooledMessageSender;
+import ru.softlab.ib6.producer.WindowedSender;
+import ru.softlab.ib6.requestreply.ReplyStrategy;
+import ru.softlab.ib6.requestreply.RequestReplyBenchmark;
+import ru.softlab.ib6.requestreply.RequestReplyResult;
+import ru.softlab.ib6.results.RegressionCheck;
+import ru.softlab.ib6.results.ResultsFiles;
+import ru.softlab.ib6.results.ScenarioMetrics;
+import ru.softlab.ib6.routing.RoutingBenchmark;
+import ru.softlab.ib6.routing.RoutingStrategy;
+import ru.softlab.ib6.scenario.ConsumerSpec;
+import ru.softlab.ib6.scenario.DataCenter;
+import ru.softlab.ib6.scenario.ProducerSpec;
+import ru.softlab.ib6.scenario.Scenario;
+import ru.softlab.ib6.scenario.ScenarioResult;
+import ru.softlab.ib6.scenario.ScenarioRunner;
+
 import javax.jms.*;
 import javax.naming.InitialContext;
-import java.util.Collections;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
-import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Пример отправки сообщений через сеть брокеров сообщений ActiveMQ.
  *
  * Перед запуском приложения необходимо запустить два docker-контейнера с ActiveMQ,
  * которые связаны через network connection. Для этого используйте docker/docker-compose.yml.
+ * С системным свойством -Dembedded=true вместо docker-контейнеров используется сеть из двух брокеров,
+ * запущенная внутри JVM (см. {@link EmbeddedBrokerNetwork}).
  *
  * @author Andrey Grigorov
  */
@@ -17,522 +78,1143 @@ public class BrokerNetworkExperiments {
 
     private static final String MQ_01_ADDRESS = "tcp://localhost:61616";
     private static final String MQ_02_ADDRESS = "tcp://localhost:61617";
+    private static final int DC_1 = 0;
+    private static final int DC_2 = 1;
+    private static final String QUEUE = "dynamicQueues/test";
+    private static final String TOPIC = "dynamicTopics/topic";
+    private static final String FAILOVER_BASE_OPTIONS = "randomize=false&priorityBackup=true";
+    private static final String FAILOVER_OPTIONS = FAILOVER_BASE_OPTIONS + "&jms.prefetchPolicy.all=1";
+    private static final String FAILOVER_SWEEP_BASE_OPTIONS = "randomize=false&jms.prefetchPolicy.all=1";
+    private static final String FAILOVER_SWEEP = "priorityBackup=true"
+            + "|initialReconnectDelay=100&maxReconnectDelay=1000&priorityBackup=true"
+            + "|initialReconnectDelay=100&maxReconnectDelay=1000&priorityBackup=false";
     private static final Properties PROPERTIES_1 = new Properties();
     private static final Properties PROPERTIES_2 = new Properties();
 
-    static {
-        PROPERTIES_1.put("java.naming.provider.url", "failover:(" + MQ_01_ADDRESS + "," + MQ_02_ADDRESS + ")?randomize=false&priorityBackup=true&jms.prefetchPolicy.all=1");
-        PROPERTIES_1.put("java.naming.factory.initial", "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+    private static String address1;
+    private static String address2;
+    private static BridgeStatisticsSource bridgeStatistics;
+    private static int exitCode;
 
-        PROPERTIES_2.put("java.naming.provider.url", "failover:(" + MQ_02_ADDRESS + "," + MQ_01_ADDRESS + ")?randomize=false&priorityBackup=true&jms.prefetchPolicy.all=1");
-        PROPERTIES_2.put("java.naming.factory.initial", "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+    static {
+        useBrokers(MQ_01_ADDRESS, MQ_02_ADDRESS);
     }
 
     public static void main(String[] args) throws Exception {
+        if (Boolean.getBoolean("embedded")) {
+            try (EmbeddedBrokerNetwork network = EmbeddedBrokerNetwork.start()) {
+                useBrokers(network.getConnectUri(0), network.getConnectUri(1));
+                bridgeStatistics = new EmbeddedBridgeStatisticsSource(network);
+                run(args);
+            }
+        } else if (System.getProperty("broker.jmx") != null) {
+            // счётчики сетевых мостов внешних брокеров доступны только через JMX
+            try (BridgeStatisticsSource jmx = new JmxBridgeStatisticsSource(
+                    Arrays.asList(System.getProperty("broker.jmx").split(",")))) {
+                bridgeStatistics = jmx;
+                run(args);
+            }
+        } else {
+            run(args);
+        }
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    private static void run(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "scenarios";
+        switch (mode) {
+            case "scenarios":
+                try (MessageSender sender = createSender()) {
+                    runScenarios(sender);
+                }
+                break;
+            case "batch":
+                batchSendBenchmark();
+                break;
+            case "async":
+                asyncSendBenchmark();
+                break;
+            case "load":
+                loadTest();
+                break;
+            case "consumers":
+                consumerPoolBenchmark();
+                break;
+            case "sweep":
+                prefetchSweep();
+                break;
+            case "routing":
+                routingBenchmark();
+                break;
+            case "fanout":
+                fanOutBenchmark();
+                break;
+            case "failover":
+                failoverBenchmark();
+                break;
+            case "compression":
+                compressionBenchmark();
+                break;
+            case "large":
+                largeMessageBenchmark();
+                break;
+            case "persistence":
+                persistenceBenchmark();
+                break;
+            case "requestreply":
+                requestReplyBenchmark();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    private static List<DataCenter> dataCenters() throws Exception {
+        return Arrays.asList(
+                new DataCenter("DataCenter #1", PROPERTIES_1),
+                new DataCenter("DataCenter #2", PROPERTIES_2));
+    }
+
+    /**
+     * Выполняет все сценарии. Если задан каталог results.dir, метрики сценариев записываются в нём в results.json
+     * и results.csv; если задан results.baseline - CSV эталонного прогона, метрики сравниваются с ним, и при
+     * регрессии приложение завершается с кодом 1.
+     *
+     * Параметры задаются системными свойствами:
+     * results.dir - каталог для файлов результатов (по умолчанию не задан - результаты не записываются),
+     * results.baseline - results.csv эталонного прогона (по умолчанию не задан - сравнения нет),
+     * results.maxThroughputDrop - допустимое падение пропускной способности, доля эталона (по умолчанию 0.1),
+     * results.maxLatencyGrowth - допустимый рост p50 и p99 задержки, доля эталона (по умолчанию 0.2).
+     *
+     * @throws Exception
+     */
+    private static void runScenarios(MessageSender sender) throws Exception {
+        List<DataCenter> dataCenters = dataCenters();
+        ScenarioRunner runner = new ScenarioRunner(dataCenters, sender,
+                Long.getLong("scenario.timeout", ScenarioRunner.DEFAULT_TIMEOUT_MILLIS))
+                .bridgeStatistics(bridgeStatistics);
+        List<ScenarioMetrics> metrics = new ArrayList<>();
+
         // обычное поведение
-        regular();
+        metrics.add(ScenarioMetrics.of(runner.run(regular())));
 
         // один consumer
-        oneConsumer();
+        metrics.add(ScenarioMetrics.of(runner.run(oneConsumer())));
 
         // два consumer'а, но один медленный
-        twoConsumerByOneIsSlow();
+        metrics.add(ScenarioMetrics.of(runner.run(twoConsumerByOneIsSlow())));
 
         // один producer
-        oneProducer();
+        metrics.add(ScenarioMetrics.of(runner.run(oneProducer())));
 
         // один producer, два consumer'а, но один медленный
-        oneProducerTwoConsumerByOneIsSlow();
+        metrics.add(ScenarioMetrics.of(runner.run(oneProducerTwoConsumerByOneIsSlow())));
 
         // один producer и два consumer на разных брокерах; общение через топик
-        oneSubscriberOnePublisher();
+        metrics.add(ScenarioMetrics.of(runner.run(oneSubscriberOnePublisher())));
 
         // два producer, один consumer, который подключается к очереди с селектором
-        twoProducerOneConsumerWithSelector();
+        metrics.add(ScenarioMetrics.of(runner.run(twoProducerOneConsumerWithSelector())));
+
+        writeResults(metrics);
+        checkRegressions(metrics);
+    }
+
+    private static void writeResults(List<ScenarioMetrics> metrics) throws IOException {
+        String resultsDir = System.getProperty("results.dir");
+        if (resultsDir == null) {
+            return;
+        }
+        Path dir = Files.createDirectories(Paths.get(resultsDir));
+        ResultsFiles.writeJson(dir.resolve("results.json"), metrics);
+        ResultsFiles.writeCsv(dir.resolve("results.csv"), metrics);
+        System.out.println("Results written to " + dir.toAbsolutePath());
+    }
+
+    private static void checkRegressions(List<ScenarioMetrics> metrics) throws IOException {
+        String baselineFile = System.getProperty("results.baseline");
+        if (baselineFile == null) {
+            return;
+        }
+        RegressionCheck check = new RegressionCheck(
+                Double.parseDouble(System.getProperty("results.maxThroughputDrop", "0.1")),
+                Double.parseDouble(System.getProperty("results.maxLatencyGrowth", "0.2")));
+        System.out.println();
+        System.out.println("Comparison with " + baselineFile);
+        List<String> regressions = check.check(ResultsFiles.readCsv(Paths.get(baselineFile)), metrics, System.out);
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions");
+            return;
+        }
+        System.out.println("REGRESSIONS:");
+        for (String regression : regressions) {
+            System.out.println("  " + regression);
+        }
+        exitCode = 1;
     }
 
     /**
      * Запущены 2 Active MQ. К каждому подключён 1 consumer. К каждому подключается по одному producer, которые
      * отправляют по 10 сообщений.
      * Сообщения от producer'а обрабатывает consumer, подключенный к тому же экземпляру брокера.
-     *
-     * @throws Exception
      */
-    private static void regular() throws Exception {
-        System.out.println();
-        System.out.println("2 Active MQ, 2 Producers, 2 Consumers");
+    private static Scenario regular() {
+        return Scenario.builder("2 Active MQ, 2 Producers, 2 Consumers")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, QUEUE))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, QUEUE))
+                .producer(new ProducerSpec(DC_1, QUEUE, 10))
+                .producer(new ProducerSpec(DC_2, QUEUE, 10))
+                .expectTotal(20)
+                .build();
+    }
 
-        InitialContext context1 = new InitialContext(PROPERTIES_1);
-        final ConnectionFactory connectionFactory1 = (ConnectionFactory) context1.lookup("ConnectionFactory");
-        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/test");
+    /**
+     * Запущены 2 Active MQ. К одному подключён consumer. К каждому подключается по одному producer, которые
+     * отправляют по 10 сообщений.
+     * Consumer обрабатывает все запросы.
+     */
+    private static Scenario oneConsumer() {
+        return Scenario.builder("2 Active MQ, 2 Producers, 1 Consumer (in DataCenter #1)")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, QUEUE).expect(20))
+                .producer(new ProducerSpec(DC_1, QUEUE, 10))
+                .producer(new ProducerSpec(DC_2, QUEUE, 10))
+                .build();
+    }
 
-        InitialContext context2 = new InitialContext(PROPERTIES_2);
-        final ConnectionFactory connectionFactory2 = (ConnectionFactory) context2.lookup("ConnectionFactory");
-        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/test");
-
-        Connection connection1 = connectionFactory1.createConnection();
-        Session session1 = connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer1 = session1.createConsumer(queueCluster1);
-        consumer1.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 1 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+    /**
+     * Запущены 2 Active MQ. К каждому подключёно по одному consumer. К каждому подключается по одному producer, которые
+     * отправляют по 10 сообщений.
+     * Один consumer медленный (каждое сообщение обрабатывает 1 секунду), другой быстрый.
+     * Медленный consumer забирает одно сообщение от producer'а, подлючённого к тому же экземпляру брокера. Все
+     * остальный сообщения от этого producer'а передаются на другой брокер.
+     */
+    private static Scenario twoConsumerByOneIsSlow() {
+        return twoConsumerByOneIsSlow(1000);
+    }
 
-        Connection connection2 = connectionFactory2.createConnection();
-        Session session2 = connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer2 = session2.createConsumer(queueCluster2);
-        consumer2.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 2 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+    /**
+     * @param slowDelayMillis время обработки одного сообщения медленным consumer'ом
+     */
+    private static Scenario twoConsumerByOneIsSlow(long slowDelayMillis) {
+        return Scenario.builder("2 Active MQ, 2 Producers, 2 Consumers (1 slow - in DataCenter #2)")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, QUEUE))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, QUEUE).processingDelay(slowDelayMillis))
+                .producer(new ProducerSpec(DC_1, QUEUE, 10))
+                .producer(new ProducerSpec(DC_2, QUEUE, 10))
+                .expectTotal(20)
+                .build();
+    }
 
-        connection1.start();
-        connection2.start();
+    /**
+     * Запущены 2 Active MQ. К каждому подключён 1 consumer. К одному ActiveMQ подключен один producer, который
+     * отправляет 10 сообщений.
+     * Все сообщения обрабатывает consumer, подключенный к тому же экземпляру брокера, что и producer.
+     */
+    private static Scenario oneProducer() {
+        return Scenario.builder("2 Active MQ, 1 Producer (in DataCenter #1), 2 Consumers")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, QUEUE))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, QUEUE))
+                .producer(new ProducerSpec(DC_1, QUEUE, 10))
+                .expectTotal(10)
+                .build();
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory1, queueCluster1, "DataCenter #1 - " + String.valueOf(i));
-        }
+    /**
+     * Запущены 2 Active MQ. К каждому подключён 1 consumer. К одному ActiveMQ подключен один producer, который
+     * отправляет 10 сообщений. Consumer, подключённый к тому же ActiveMQ, что и producer, обрабатывает сообщения
+     * медленно (2 секунды на сообщение).
+     * Медленный consumer заберёт в обработку одно сообщение, всё остальные будут переданы другому брокеру.
+     */
+    private static Scenario oneProducerTwoConsumerByOneIsSlow() {
+        return oneProducerTwoConsumerByOneIsSlow(2000);
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory2, queueCluster2, "DataCenter #2 - " + String.valueOf(i));
-        }
+    /**
+     * @param slowDelayMillis время обработки одного сообщения медленным consumer'ом
+     */
+    private static Scenario oneProducerTwoConsumerByOneIsSlow(long slowDelayMillis) {
+        return Scenario.builder("2 Active MQ, 1 Producer (in DataCenter #1), 2 Consumers (1 slow - in DataCenter #1)")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, QUEUE).processingDelay(slowDelayMillis))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, QUEUE))
+                .producer(new ProducerSpec(DC_1, QUEUE, 10))
+                .expectTotal(10)
+                .build();
+    }
 
-        Thread.sleep(3000);
-        System.out.println();
+    /**
+     * Запущены 2 Active MQ. К каждому подключено по 1 consumer. К одному подключен producer, который
+     * отправляют 10 сообщений в топик.
+     * Consumer'ы на каждом брокере получают все запросы.
+     */
+    private static Scenario oneSubscriberOnePublisher() {
+        return Scenario.builder("2 Active MQ, 1 Producers (in DataCenter #2), 2 Consumer (in DataCenter #1 & #2), 1 topic")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, TOPIC).expect(10))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, TOPIC).expect(10))
+                .producer(new ProducerSpec(DC_2, TOPIC, 10))
+                .build();
+    }
 
-        session1.close();
-        connection1.close();
-        session2.close();
-        connection2.close();
+    /**
+     * Запущены 2 Active MQ. К одному подключён consumer, который случает очередь по селектору service='ABC'. К каждому ActiveMQ
+     * подключается по одному producer, которые отправляют по 10 сообщений для сервиса ABC и по 10 для сервиса XYZ.
+     * Consumer обрабатывает все 20 запросов, адресованных сервису ABC.
+     */
+    private static Scenario twoProducerOneConsumerWithSelector() {
+        return Scenario.builder("2 Active MQ, 2 Producers, 1 Consumer with selector (in DataCenter #1)")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, QUEUE).selector("service = 'ABC'").expect(20))
+                .producer(new ProducerSpec(DC_1, QUEUE, 10).header("service", "ABC"))
+                .producer(new ProducerSpec(DC_2, QUEUE, 10).header("service", "ABC"))
+                .producer(new ProducerSpec(DC_1, QUEUE, 10).header("service", "XYZ"))
+                .producer(new ProducerSpec(DC_2, QUEUE, 10).header("service", "XYZ"))
+                .build();
     }
 
     /**
-     * Запущены 2 Active MQ. К одному подключён consumer. К каждому подключается по одному producer, которые
-     * отправляют по 10 сообщений.
-     * Consumer обрабатывает все запросы.
+     * Направляет все сценарии на заданную пару брокеров.
      *
-     * @throws Exception
+     * @param mq01Address адрес брокера DataCenter #1
+     * @param mq02Address адрес брокера DataCenter #2
      */
-    private static void oneConsumer() throws Exception {
-        System.out.println();
-        System.out.println("2 Active MQ, 2 Producers, 1 Consumer (in DataCenter #1)");
-
-        InitialContext context1 = new InitialContext(PROPERTIES_1);
-        final ConnectionFactory connectionFactory1 = (ConnectionFactory) context1.lookup("ConnectionFactory");
-        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/test");
-
-        InitialContext context2 = new InitialContext(PROPERTIES_2);
-        final ConnectionFactory connectionFactory2 = (ConnectionFactory) context2.lookup("ConnectionFactory");
-        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/test");
-
-        Connection connection1 = connectionFactory1.createConnection();
-        Session session1 = connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer1 = session1.createConsumer(queueCluster1);
-        consumer1.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 1 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+    private static void useBrokers(String mq01Address, String mq02Address) {
+        address1 = mq01Address;
+        address2 = mq02Address;
+        PROPERTIES_1.putAll(createProperties(mq01Address, mq02Address, FAILOVER_OPTIONS));
+        PROPERTIES_2.putAll(createProperties(mq02Address, mq01Address, FAILOVER_OPTIONS));
+    }
 
-        connection1.start();
+    /**
+     * Создаёт параметры JNDI-контекста с failover-подключением к двум брокерам.
+     *
+     * @param primaryAddress адрес основного брокера
+     * @param backupAddress  адрес резервного брокера
+     * @param options        параметры failover-транспорта и соединения
+     */
+    private static Properties createProperties(String primaryAddress, String backupAddress, String options) {
+        Properties properties = new Properties();
+        properties.put("java.naming.provider.url", "failover:(" + primaryAddress + "," + backupAddress + ")?" + options);
+        properties.put("java.naming.factory.initial", "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+        return properties;
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory1, queueCluster1, "DataCenter #1 - " + String.valueOf(i));
-        }
+    /**
+     * Создаёт параметры JNDI-контекста с failover-подключением к одному брокеру: клиент переподключается к нему же,
+     * а не уходит на другой брокер сети.
+     *
+     * @param address адрес брокера
+     * @param options параметры failover-транспорта и соединения
+     */
+    private static Properties createProperties(String address, String options) {
+        Properties properties = new Properties();
+        properties.put("java.naming.provider.url", "failover:(" + address + ")?" + options);
+        properties.put("java.naming.factory.initial", "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+        return properties;
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory2, queueCluster2, "DataCenter #2 - " + String.valueOf(i));
+    /**
+     * Создаёт отправителя сообщений, заданного системным свойством "sender":
+     * "pooled" (по умолчанию) - с переиспользованием соединений и сессий,
+     * "baseline" - с новым соединением на каждое сообщение.
+     */
+    private static MessageSender createSender() {
+        String mode = System.getProperty("sender", "pooled");
+        switch (mode) {
+            case "pooled":
+                return new PooledMessageSender();
+            case "baseline":
+                return new ConnectionPerMessageSender();
+            default:
+                throw new IllegalArgumentException("Unknown sender: " + mode);
         }
-
-        Thread.sleep(3000);
-
-        System.out.println();
-
-        session1.close();
-        connection1.close();
     }
 
-
     /**
-     * Запущены 2 Active MQ. К каждому подключёно по одному consumer. К каждому подключается по одному producer, которые
-     * отправляют по 10 сообщений.
-     * Один consumer медленный (каждое сообщение обрабатывает 1 секунду), другой быстрый.
-     * Медленный consumer забирает одно сообщение от producer'а, подлючённого к тому же экземпляру брокера. Все
-     * остальный сообщения от этого producer'а передаются на другой брокер.
+     * Запущены 2 Active MQ. К второму подключён consumer. К первому подключается producer, который отправляет
+     * сообщения пакетами, фиксируя транзакцию каждые N сообщений, - то есть все сообщения идут через сеть брокеров.
+     * Для каждого размера пакета выводятся пропускная способность и задержка commit'а.
+     *
+     * Параметры задаются системными свойствами:
+     * batch.sizes - размеры пакетов через запятую (по умолчанию 1,10,100,500),
+     * batch.messages - число сообщений для каждого размера пакета (по умолчанию 1000),
+     * batch.timeout - максимальная длительность пакета в миллисекундах (по умолчанию 0 - не ограничена),
+     * batch.receiveTimeout - сколько миллисекунд ждать, пока consumer получит все отправленные сообщения
+     * (по умолчанию 30000).
      *
      * @throws Exception
      */
-    private static void twoConsumerByOneIsSlow() throws Exception {
+    private static void batchSendBenchmark() throws Exception {
         System.out.println();
-        System.out.println("2 Active MQ, 2 Producers, 2 Consumers (1 slow - in DataCenter #2)");
+        System.out.println("2 Active MQ, 1 batching Producer (in DataCenter #1), 1 Consumer (in DataCenter #2)");
+
+        String[] batchSizes = System.getProperty("batch.sizes", "1,10,100,500").split(",");
+        int messageCount = Integer.getInteger("batch.messages", 1000);
+        long batchTimeout = Long.getLong("batch.timeout", 0L);
+        long receiveTimeout = Long.getLong("batch.receiveTimeout", 30000L);
 
         InitialContext context1 = new InitialContext(PROPERTIES_1);
         final ConnectionFactory connectionFactory1 = (ConnectionFactory) context1.lookup("ConnectionFactory");
-        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/test");
+        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/batch");
 
         InitialContext context2 = new InitialContext(PROPERTIES_2);
         final ConnectionFactory connectionFactory2 = (ConnectionFactory) context2.lookup("ConnectionFactory");
-        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/test");
-
-        Connection connection1 = connectionFactory1.createConnection();
-        Session session1 = connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer1 = session1.createConsumer(queueCluster1);
-        consumer1.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 1 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/batch");
 
+        final AtomicLong received = new AtomicLong();
         Connection connection2 = connectionFactory2.createConnection();
         Session session2 = connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
         MessageConsumer consumer2 = session2.createConsumer(queueCluster2);
-        consumer2.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    System.out.println("Consumer 2 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
+        consumer2.setMessageListener(message -> received.incrementAndGet());
+        connection2.start();
+
+        try {
+            long sent = 0;
+            for (String batchSize : batchSizes) {
+                List<OutgoingMessage> messages = new ArrayList<>(messageCount);
+                for (int i = 1; i <= messageCount; i++) {
+                    messages.add(new OutgoingMessage("DataCenter #1 - " + i));
                 }
-            }
-        });
 
-        connection1.start();
-        connection2.start();
+                try (BatchSender batchSender = new BatchSender(connectionFactory1, Integer.parseInt(batchSize.trim()), batchTimeout)) {
+                    BatchStatistics statistics = batchSender.send(queueCluster1, messages);
+                    System.out.println(statistics);
+                }
+                sent += messageCount;
+            }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory1, queueCluster1, "DataCenter #1 - " + String.valueOf(i));
+            printReceived("Consumer 2", received, sent, receiveTimeout);
+            System.out.println();
+        } finally {
+            session2.close();
+            connection2.close();
         }
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory2, queueCluster2, "DataCenter #2 - " + String.valueOf(i));
+    /**
+     * Ждёт, пока consumer получит expected сообщений, но не дольше timeoutMillis, и выводит, сколько он получил.
+     */
+    private static void printReceived(String consumer, AtomicLong received, long expected,
+                                      long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (received.get() < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
         }
-
-        Thread.sleep(5000);
-        System.out.println();
-
-        session1.close();
-        connection1.close();
-        session2.close();
-        connection2.close();
+        long count = received.get();
+        System.out.println(consumer + " received " + count + " of " + expected + " messages"
+                + (count < expected ? " (gave up after " + timeoutMillis + " ms)" : ""));
     }
 
     /**
-     * Запущены 2 Active MQ. К каждому подключён 1 consumer. К одному ActiveMQ подключен один producer, который
-     * отправляет 10 сообщений.
-     * Все сообщения обрабатывает consumer, подключенный к тому же экземпляру брокера, что и producer.
+     * Запущены 2 Active MQ. К второму подключён consumer. К первому подключается producer, который отправляет
+     * сообщения асинхронно, не дожидаясь подтверждения каждого сообщения брокером. Сравниваются два способа:
+     * send с callback'ом и ограничением числа неподтверждённых сообщений ({@link AsyncSender}) и обычный send
+     * с jms.useAsyncSend=true, который ограничивает jms.producerWindowSize ({@link WindowedSender}).
+     * Для callback'ов выводятся пропускная способность до подтверждения всех сообщений, число неподтверждённых
+     * сообщений в моменты переключения failover'а и сообщения, которые так и не были подтверждены.
+     * Для окна выводятся скорость отправки и скорость доставки до consumer'а, потому что подтверждений
+     * отдельных сообщений у такой отправки нет.
+     *
+     * Параметры задаются системными свойствами:
+     * async.messages - число отправляемых сообщений каждым способом (по умолчанию 1000),
+     * async.inFlight - максимальное число неподтверждённых сообщений при отправке с callback'ом (по умолчанию 100),
+     * async.windowSize - jms.producerWindowSize в байтах при отправке с окном (по умолчанию 1048576),
+     * async.confirmTimeout - сколько миллисекунд ждать подтверждения всех отправленных сообщений
+     * (по умолчанию 30000),
+     * async.receiveTimeout - сколько миллисекунд ждать, пока consumer получит все подтверждённые
+     * (при отправке с окном - все отправленные) сообщения (по умолчанию 30000).
      *
      * @throws Exception
      */
-    private static void oneProducer() throws Exception {
+    private static void asyncSendBenchmark() throws Exception {
         System.out.println();
-        System.out.println("2 Active MQ, 1 Producer (in DataCenter #1), 2 Consumers");
+        System.out.println("2 Active MQ, 1 async Producer (in DataCenter #1), 1 Consumer (in DataCenter #2)");
 
-        InitialContext context1 = new InitialContext(PROPERTIES_1);
+        int messageCount = Integer.getInteger("async.messages", 1000);
+        int maxInFlight = Integer.getInteger("async.inFlight", 100);
+        int windowSize = Integer.getInteger("async.windowSize", 1024 * 1024);
+        long confirmTimeout = Long.getLong("async.confirmTimeout", 30000L);
+        long receiveTimeout = Long.getLong("async.receiveTimeout", 30000L);
+
+        // send(message, AsyncCallback) асинхронен сам по себе и не проходит через окно producer'а
+        InitialContext context1 = new InitialContext(createProperties(address1, address2, FAILOVER_OPTIONS));
         final ConnectionFactory connectionFactory1 = (ConnectionFactory) context1.lookup("ConnectionFactory");
-        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/test");
+        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/async");
+        final Queue windowQueueCluster1 = (Queue) context1.lookup("dynamicQueues/async.window");
+
+        String windowOptions = FAILOVER_OPTIONS + "&jms.useAsyncSend=true&jms.producerWindowSize=" + windowSize;
+        InitialContext windowContext1 = new InitialContext(createProperties(address1, address2, windowOptions));
+        final ConnectionFactory windowConnectionFactory1 = (ConnectionFactory) windowContext1.lookup("ConnectionFactory");
 
         InitialContext context2 = new InitialContext(PROPERTIES_2);
         final ConnectionFactory connectionFactory2 = (ConnectionFactory) context2.lookup("ConnectionFactory");
-        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/test");
-
-        Connection connection1 = connectionFactory1.createConnection();
-        Session session1 = connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer1 = session1.createConsumer(queueCluster1);
-        consumer1.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 1 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/async");
+        final Queue windowQueueCluster2 = (Queue) context2.lookup("dynamicQueues/async.window");
 
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong windowReceived = new AtomicLong();
         Connection connection2 = connectionFactory2.createConnection();
-        Session session2 = connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer2 = session2.createConsumer(queueCluster2);
-        consumer2.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 2 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
+        try {
+            Session session2 = connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session2.createConsumer(queueCluster2).setMessageListener(message -> received.incrementAndGet());
+            Session windowSession2 = connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            windowSession2.createConsumer(windowQueueCluster2)
+                    .setMessageListener(message -> windowReceived.incrementAndGet());
+            connection2.start();
+
+            callbackSend(connectionFactory1, queueCluster1, messageCount, maxInFlight, confirmTimeout,
+                    received, receiveTimeout);
+            windowSend(windowConnectionFactory1, windowQueueCluster1, messageCount, windowReceived, receiveTimeout);
+            System.out.println();
+        } finally {
+            connection2.close();
+        }
+    }
+
+    /**
+     * Отправляет messageCount сообщений через {@link AsyncSender} и ждёт, пока consumer получит подтверждённые.
+     */
+    private static void callbackSend(ConnectionFactory connectionFactory, Queue queue, int messageCount,
+                                     int maxInFlight, long confirmTimeout, AtomicLong received,
+                                     long receiveTimeout) throws Exception {
+        final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        long confirmed;
+        try (AsyncSender asyncSender = new AsyncSender(connectionFactory, maxInFlight)) {
+            AsyncSender.CompletionListener listener = new AsyncSender.CompletionListener() {
+                @Override
+                public void onComplete(String correlationId) {
                 }
-            }
-        });
 
-        connection1.start();
-        connection2.start();
+                @Override
+                public void onFailure(String correlationId, JMSException exception) {
+                    failures.add(correlationId + ": " + exception.getMessage());
+                }
+            };
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory1, queueCluster1, "DataCenter #1 - " + String.valueOf(i));
+            long startTime = System.nanoTime();
+            for (int i = 1; i <= messageCount; i++) {
+                asyncSender.send(queue, "DataCenter #1 - " + i, null, listener);
+            }
+            boolean completed = asyncSender.awaitCompletion(confirmTimeout, TimeUnit.MILLISECONDS);
+            long elapsedNanos = System.nanoTime() - startTime;
+
+            System.out.println(String.format("callback, in-flight limit %d: %.1f msg/s, confirmed %d, failed %d",
+                    maxInFlight, messageCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+                    asyncSender.getCompleted(), asyncSender.getFailed()));
+            for (AsyncSender.FailoverEvent event : asyncSender.getFailoverEvents()) {
+                System.out.println("Failover: " + event.getUnconfirmed().size() + " unconfirmed messages " + event.getUnconfirmed());
+            }
+            for (String failure : failures) {
+                System.out.println("Failed message \"" + failure + "\"");
+            }
+            if (!completed) {
+                System.out.println("Not confirmed within " + confirmTimeout + " ms (throughput includes the wait): "
+                        + asyncSender.getUnconfirmed());
+            }
+            confirmed = asyncSender.getCompleted();
         }
+        printReceived("Consumer 2", received, confirmed, receiveTimeout);
+    }
 
-        Thread.sleep(3000);
-        System.out.println();
+    /**
+     * Отправляет messageCount сообщений через {@link WindowedSender} и ждёт, пока consumer получит все.
+     * Скорость доставки считается по полученным сообщениям за время от начала отправки до последнего полученного.
+     */
+    private static void windowSend(ConnectionFactory connectionFactory, Queue queue, int messageCount,
+                                   AtomicLong received, long receiveTimeout) throws Exception {
+        try (WindowedSender windowedSender = new WindowedSender(connectionFactory)) {
+            long startTime = System.nanoTime();
+            for (int i = 1; i <= messageCount; i++) {
+                windowedSender.send(queue, "DataCenter #1 - " + i, null);
+            }
+            long sendNanos = System.nanoTime() - startTime;
+            printReceived("Consumer 2", received, messageCount, receiveTimeout);
+            long deliverNanos = System.nanoTime() - startTime;
+
+            System.out.println(String.format("window %d bytes: sent %.1f msg/s, delivered %.1f msg/s, failovers %d",
+                    windowedSender.getWindowSize(), messageCount * (double) TimeUnit.SECONDS.toNanos(1) / sendNanos,
+                    received.get() * (double) TimeUnit.SECONDS.toNanos(1) / deliverNanos,
+                    windowedSender.getTransportInterruptions()));
+        }
+    }
 
-        session1.close();
-        connection1.close();
-        session2.close();
-        connection2.close();
+    /**
+     * Запущены 2 Active MQ. К каждому подключены consumer'ы и несколько потоков producer'ов, которые отправляют
+     * сообщения с заданной интенсивностью по фазам: плавный рост, постоянная нагрузка и всплеск.
+     * С -Dembedded=true или -Dbroker.jmx дополнительно выводится глубина очереди на брокере каждого датацентра.
+     *
+     * Параметры задаются системными свойствами:
+     * load.rate - интенсивность на один датацентр в сообщениях в секунду (по умолчанию 200),
+     * load.threads - число потоков producer'ов на датацентр (по умолчанию 4),
+     * load.consumers - число consumer'ов на датацентр (по умолчанию 1),
+     * load.rampUp, load.steady, load.burst - длительность фаз в миллисекундах (по умолчанию 5000, 10000, 3000),
+     * load.burstFactor - во сколько раз всплеск превышает постоянную нагрузку (по умолчанию 3),
+     * load.stallThreshold - отправка дольше этого времени в миллисекундах считается остановкой из-за
+     * producer flow control (по умолчанию 100),
+     * load.verify - нумеровать сообщения каждого потока producer'ов и проверять пропуски, повторы и порядок
+     * получения (по умолчанию true).
+     *
+     * @throws Exception
+     */
+    private static void loadTest() throws Exception {
+        double rate = Double.parseDouble(System.getProperty("load.rate", "200"));
+        LoadGenerator.builder(dataCenters(), QUEUE)
+                .threads(Integer.getInteger("load.threads", 4))
+                .consumers(Integer.getInteger("load.consumers", 1))
+                .phase(LoadPhase.rampUp(Long.getLong("load.rampUp", 5000L), rate))
+                .phase(LoadPhase.steady(Long.getLong("load.steady", 10000L), rate))
+                .phase(LoadPhase.burst(Long.getLong("load.burst", 3000L), rate,
+                        Double.parseDouble(System.getProperty("load.burstFactor", "3"))))
+                .stallThreshold(Long.getLong("load.stallThreshold", 100L))
+                .verifySequences(Boolean.parseBoolean(System.getProperty("load.verify", "true")))
+                .statistics(bridgeStatistics)
+                .build()
+                .run();
     }
 
     /**
-     * Запущены 2 Active MQ. К каждому подключён 1 consumer. К одному ActiveMQ подключен один producer, который
-     * отправляет 10 сообщений. Consumer, подключённый к тому же ActiveMQ, что и producer, обрабатывает сообщения
-     * медленно (2 секунды на сообщение).
-     * Медленный consumer заберёт в обработку одно сообщение, всё остальные будут переданы другому брокеру.
+     * Запущены 2 Active MQ. К каждому подключён пул consumer'ов, к первому - producer, который отправляет все
+     * сообщения. Обработка каждого сообщения занимает заданное время, поэтому при недостаточной параллельности
+     * обработки в DataCenter #1 брокер отдаёт сообщения по сетевому мосту в DataCenter #2.
+     * Для каждого сочетания числа сессий, потоков обработки и режима подтверждения выводятся пропускная способность,
+     * доля пересланных сообщений и задержка доставки.
+     *
+     * Параметры задаются системными свойствами:
+     * consumers.messages - число сообщений в каждом прогоне (по умолчанию 2000),
+     * consumers.sessions - числа сессий на датацентр через запятую (по умолчанию 1,4),
+     * consumers.workers - числа потоков обработки на датацентр через запятую, 0 - обработка в MessageListener'е
+     * (по умолчанию 0,8),
+     * consumers.ackModes - режимы подтверждения через запятую: auto, client, dups_ok, optimize (по умолчанию все),
+     * consumers.ackBatch - размер пакета подтверждений в режиме client (по умолчанию 100),
+     * consumers.ackInterval - через сколько миллисекунд подтверждать неполный пакет при получении следующего
+     * сообщения (по умолчанию 1000),
+     * consumers.prefetch - prefetch consumer'ов (по умолчанию 1, как в сценариях),
+     * consumers.processingDelay - время обработки одного сообщения в миллисекундах (по умолчанию 2).
      *
      * @throws Exception
      */
-    private static void oneProducerTwoConsumerByOneIsSlow() throws Exception {
+    private static void consumerPoolBenchmark() throws Exception {
         System.out.println();
-        System.out.println("2 Active MQ, 1 Producer (in DataCenter #1), 2 Consumers (1 slow - in DataCenter #1)");
+        System.out.println("2 Active MQ, 1 Producer (in DataCenter #1), consumer pools in both data centers");
+
+        int messageCount = Integer.getInteger("consumers.messages", 2000);
+        String[] sessionCounts = System.getProperty("consumers.sessions", "1,4").split(",");
+        String[] workerCounts = System.getProperty("consumers.workers", "0,8").split(",");
+        String[] ackModes = System.getProperty("consumers.ackModes", "auto,client,dups_ok,optimize").split(",");
+        int ackBatch = Integer.getInteger("consumers.ackBatch", 100);
+        long ackInterval = Long.getLong("consumers.ackInterval", 1000L);
+        final long processingDelay = Long.getLong("consumers.processingDelay", 2L);
+        String options = FAILOVER_BASE_OPTIONS + "&jms.prefetchPolicy.all=" + Integer.getInteger("consumers.prefetch", 1);
+
+        List<DataCenter> dataCenters = Arrays.asList(
+                new DataCenter("DataCenter #1", createProperties(address1, address2, options)),
+                new DataCenter("DataCenter #2", createProperties(address2, address1, options)));
+
+        int run = 0;
+        for (String sessions : sessionCounts) {
+            for (String workers : workerCounts) {
+                for (String ackMode : ackModes) {
+                    // у каждого прогона своя очередь, чтобы неподтверждённые сообщения не попали в следующий
+                    String queue = "dynamicQueues/consumers." + (++run);
+                    final LatencyRecorder latency = new LatencyRecorder();
+                    final CountDownLatch processed = new CountDownLatch(messageCount);
+                    MessageListener processor = message -> {
+                        latency.record(message);
+                        try {
+                            Thread.sleep(processingDelay);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        processed.countDown();
+                    };
 
-        InitialContext context1 = new InitialContext(PROPERTIES_1);
-        final ConnectionFactory connectionFactory1 = (ConnectionFactory) context1.lookup("ConnectionFactory");
-        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/test");
+                    List<ConsumerPool> pools = new ArrayList<>();
+                    try {
+                        for (DataCenter dataCenter : dataCenters) {
+                            pools.add(ConsumerPool.builder(dataCenter, queue, processor)
+                                    .sessions(Integer.parseInt(sessions.trim()))
+                                    .workers(Integer.parseInt(workers.trim()))
+                                    .ackMode(AckMode.parse(ackMode))
+                                    .ackBatch(ackBatch, ackInterval)
+                                    .start());
+                        }
 
-        InitialContext context2 = new InitialContext(PROPERTIES_2);
-        final ConnectionFactory connectionFactory2 = (ConnectionFactory) context2.lookup("ConnectionFactory");
-        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/test");
-
-        Connection connection1 = connectionFactory1.createConnection();
-        Session session1 = connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer1 = session1.createConsumer(queueCluster1);
-        consumer1.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    Thread.sleep(2000);
-                    System.out.println("Consumer 1 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+                        long startTime = System.nanoTime();
+                        sendAll(dataCenters.get(DC_1), queue, messageCount);
+                        boolean completed = processed.await(60, TimeUnit.SECONDS);
+                        long elapsedNanos = System.nanoTime() - startTime;
 
-        Connection connection2 = connectionFactory2.createConnection();
-        Session session2 = connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer2 = session2.createConsumer(queueCluster2);
-        consumer2.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 2 processed message \"" + message.getJMSCorrelationID() + "\"");
-                } catch (JMSException e) {
-                    e.printStackTrace();
+                        long forwarded = 0;
+                        for (ConsumerPool pool : pools) {
+                            forwarded += pool.getForwarded();
+                        }
+                        System.out.println(String.format("sessions %s, workers %s, ack %s: %.1f msg/s, forwarded %.1f%%%s",
+                                sessions.trim(), workers.trim(), AckMode.parse(ackMode),
+                                (messageCount - processed.getCount()) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+                                100.0 * forwarded / messageCount, completed ? "" : ", TIMEOUT"));
+                        // последний неполный пакет подтверждается при закрытии пула, поэтому счётчики выводятся после него
+                        for (ConsumerPool pool : pools) {
+                            pool.close();
+                            System.out.println("  " + pool);
+                        }
+                        latency.printSummary(System.out);
+                    } finally {
+                        for (ConsumerPool pool : pools) {
+                            pool.close();
+                        }
+                    }
                 }
             }
-        });
-
-        connection1.start();
-        connection2.start();
-
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory1, queueCluster1, "DataCenter #1 - " + String.valueOf(i));
         }
-
-        Thread.sleep(3000);
         System.out.println();
-
-        session1.close();
-        connection1.close();
-        session2.close();
-        connection2.close();
     }
 
-    private static void sendMessage(ConnectionFactory connectionFactory, Destination destination,
-                                    String correlationId) throws JMSException {
-        sendMessage(connectionFactory, destination, correlationId, null);
-    }
-
-    private static void sendMessage(ConnectionFactory connectionFactory, Destination destination,
-                                    String correlationId, Map<String, String> headers) throws JMSException {
-        Connection connection = connectionFactory.createConnection();
+    /**
+     * Отправляет сообщения одной сессией без транзакций, как можно быстрее.
+     */
+    private static void sendAll(DataCenter dataCenter, String queue, int messageCount) throws Exception {
+        Connection connection = dataCenter.getConnectionFactory().createConnection();
         try {
-            connection.start();
-            Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
-            try {
-                BytesMessage bytesMessage = session.createBytesMessage();
-
-                byte[] bytes = new byte[10000];
-                new Random().nextBytes(bytes);
-                bytesMessage.writeBytes(bytes);
-                bytesMessage.setJMSCorrelationID(correlationId);
-                if (headers != null) {
-                    headers.forEach((key, value) -> {
-                        try {
-                            bytesMessage.setStringProperty(key, value);
-                        } catch (JMSException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-                }
-
-                MessageProducer messageProducer = session.createProducer(destination);
-                try {
-                    messageProducer.setTimeToLive(30000);
-                    messageProducer.send(bytesMessage);
-                } finally {
-                    messageProducer.close();
-                }
-                session.commit();
-            } finally {
-                session.close();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(dataCenter.lookup(queue));
+            for (int i = 1; i <= messageCount; i++) {
+                producer.send(Messages.createBytesMessage(session, dataCenter.getName() + " - " + i, null));
             }
         } finally {
             connection.close();
         }
     }
 
-
     /**
-     * Запущены 2 Active MQ. К каждому подключено по 1 consumer. К одному подключен producer, который
-     * отправляют 10 сообщений в топик.
-     * Consumer'ы на каждом брокере получают все запросы.
+     * Перебирает сочетания prefetch consumer'ов, времени обработки медленного consumer'а и параметров сетевого
+     * коннектора и для каждого прогоняет сценарии twoConsumerByOneIsSlow и oneProducerTwoConsumerByOneIsSlow.
+     * Для каждого прогона выводятся пропускная способность, задержка доставки (p99 и максимум) и доля сообщений,
+     * пересланных по сетевому мосту.
+     *
+     * Параметры сетевого коннектора перебираются, только если сеть брокеров запускается внутри JVM (-Dembedded=true):
+     * для каждого сочетания запускается новая сеть. С внешними брокерами используются их настройки.
+     *
+     * Параметры задаются системными свойствами:
+     * sweep.prefetch - prefetch consumer'ов через запятую (по умолчанию 1,10,100),
+     * sweep.delays - время обработки медленным consumer'ом в миллисекундах через запятую (по умолчанию 10,100,1000),
+     * sweep.decreasePriority - значения decreaseNetworkConsumerPriority через запятую (по умолчанию true,false),
+     * sweep.networkPrefetch - prefetch сетевого моста через запятую (по умолчанию 1000).
      *
      * @throws Exception
      */
-    private static void oneSubscriberOnePublisher() throws Exception {
-        System.out.println();
-        System.out.println("2 Active MQ, 1 Producers (in DataCenter #2), 2 Consumer (in DataCenter #1 & #2), 1 topic");
+    private static void prefetchSweep() throws Exception {
+        String[] prefetchSizes = System.getProperty("sweep.prefetch", "1,10,100").split(",");
+        String[] delays = System.getProperty("sweep.delays", "10,100,1000").split(",");
+        long timeout = Long.getLong("scenario.timeout", ScenarioRunner.DEFAULT_TIMEOUT_MILLIS);
 
-        InitialContext context1 = new InitialContext(PROPERTIES_1);
-        final ConnectionFactory connectionFactory1 = (ConnectionFactory) context1.lookup("ConnectionFactory");
-        final Topic topicCluster1 = (Topic) context1.lookup("dynamicTopics/topic");
+        System.out.println();
+        System.out.println("Prefetch sweep: prefetch " + Arrays.toString(prefetchSizes) + ", slow consumer delay "
+                + Arrays.toString(delays) + " ms");
 
-        InitialContext context2 = new InitialContext(PROPERTIES_2);
-        final ConnectionFactory connectionFactory2 = (ConnectionFactory) context2.lookup("ConnectionFactory");
-        final Topic topicCluster2 = (Topic) context2.lookup("dynamicTopics/topic");
-
-        Connection connection1 = connectionFactory1.createConnection();
-        Session session1 = connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer1 = session1.createConsumer(topicCluster1);
-        consumer1.setMessageListener(message -> {
-            try {
-                System.out.println("Consumer 1 processed message \"" + message.getJMSCorrelationID() + "\"");
-            } catch (JMSException e) {
-                e.printStackTrace();
+        if (!Boolean.getBoolean("embedded")) {
+            System.out.println("Network connector options of the external brokers are used as configured");
+            prefetchSweep(address1, address2, "as configured", prefetchSizes, delays, timeout);
+            return;
+        }
+        for (String decreasePriority : System.getProperty("sweep.decreasePriority", "true,false").split(",")) {
+            for (String networkPrefetch : System.getProperty("sweep.networkPrefetch", "1000").split(",")) {
+                try (EmbeddedBrokerNetwork network = EmbeddedBrokerNetwork.builder()
+                        .decreaseNetworkConsumerPriority(Boolean.parseBoolean(decreasePriority.trim()))
+                        .networkPrefetchSize(Integer.parseInt(networkPrefetch.trim()))
+                        .start()) {
+                    String networkOptions = "decreaseNetworkConsumerPriority=" + decreasePriority.trim()
+                            + ", bridge prefetch " + networkPrefetch.trim();
+                    prefetchSweep(network.getConnectUri(0), network.getConnectUri(1), networkOptions,
+                            prefetchSizes, delays, timeout);
+                }
             }
-        });
+        }
+        System.out.println();
+    }
 
-        Connection connection2 = connectionFactory2.createConnection();
-        Session session2 = connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer2 = session2.createConsumer(topicCluster2);
-        consumer2.setMessageListener(message -> {
-            try {
-                System.out.println("Consumer 2 processed message \"" + message.getJMSCorrelationID() + "\"");
-            } catch (JMSException e) {
-                e.printStackTrace();
+    private static void prefetchSweep(String mq01Address, String mq02Address, String networkOptions,
+                                      String[] prefetchSizes, String[] delays, long timeout) throws Exception {
+        System.out.println();
+        System.out.println("Network: " + networkOptions);
+        for (String prefetch : prefetchSizes) {
+            String options = FAILOVER_BASE_OPTIONS + "&jms.prefetchPolicy.all=" + prefetch.trim();
+            List<DataCenter> dataCenters = Arrays.asList(
+                    new DataCenter("DataCenter #1", createProperties(mq01Address, mq02Address, options)),
+                    new DataCenter("DataCenter #2", createProperties(mq02Address, mq01Address, options)));
+            try (MessageSender sender = createSender()) {
+                ScenarioRunner runner = new ScenarioRunner(dataCenters, sender, timeout, false);
+                for (String delay : delays) {
+                    long delayMillis = Long.parseLong(delay.trim());
+                    printSweepResult(prefetch.trim(), delayMillis, "two producers, slow consumer in DC #2",
+                            runner.run(twoConsumerByOneIsSlow(delayMillis)));
+                    printSweepResult(prefetch.trim(), delayMillis, "one producer, slow consumer in DC #1",
+                            runner.run(oneProducerTwoConsumerByOneIsSlow(delayMillis)));
+                }
             }
-        });
-
-        connection1.start();
-        connection2.start();
-
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory2, topicCluster2, "DataCenter #2 - " + i);
         }
+    }
 
-        Thread.sleep(3000);
+    private static void printSweepResult(String prefetch, long delayMillis, String scenario, ScenarioResult result) {
+        Histogram latency = result.getLatency().getAll();
+        System.out.println(String.format("prefetch %4s, delay %5d ms, %-38s: %7.1f msg/s, p99 %8.1f ms, max %8.1f ms, "
+                        + "forwarded %5.1f%%%s",
+                prefetch, delayMillis, scenario,
+                result.getReceivedTotal() * 1000.0 / Math.max(1, result.getElapsedMillis()),
+                latency.getValueAtPercentile(99) / 1000.0, latency.getMaxValue() / 1000.0,
+                100 * result.getLatency().getForwardedShare(), result.isSuccessful() ? "" : ", FAILED"));
+    }
 
+    /**
+     * Запущены 2 Active MQ. Сотни сервисов получают свои сообщения одним из способов: селектором из общей очереди,
+     * из отдельной очереди сервиса или из очереди виртуального топика. У части сервисов consumer'а нет.
+     * Для каждого способа выводятся скорость доставки, пиковая память брокеров и число сообщений, оставшихся
+     * в очередях.
+     *
+     * С -Dembedded=true для каждого способа запускается новая сеть брокеров, чтобы память и очереди предыдущего
+     * прогона не влияли на следующий. С внешними брокерами память и очереди измеряются, только если задан
+     * -Dbroker.jmx, а виртуальные топики работают так, как настроены на брокерах.
+     *
+     * Параметры задаются системными свойствами:
+     * routing.strategies - способы через запятую: selector, queue_per_service, virtual_topic (по умолчанию все),
+     * routing.services - число сервисов (по умолчанию 200),
+     * routing.consumedShare - доля сервисов с consumer'ами (по умолчанию 0.5),
+     * routing.messages - число сообщений каждому сервису (по умолчанию 10),
+     * routing.timeout - максимальное время ожидания доставки в миллисекундах (по умолчанию 60000),
+     * routing.selectorAware - selectorAware у виртуальных топиков брокеров, запущенных внутри JVM (по умолчанию true),
+     * routing.conduitSubscriptions - conduitSubscriptions сетевых коннекторов брокеров, запущенных внутри JVM
+     * (по умолчанию false: объединённая подписка моста теряет селекторы, и в очереди виртуального топика на удалённом
+     * брокере попадают сообщения всех сервисов).
+     *
+     * @throws Exception
+     */
+    private static void routingBenchmark() throws Exception {
+        System.out.println();
+        System.out.println("2 Active MQ, routing by service: selector vs queue per service vs virtual topic");
+
+        for (String strategyName : System.getProperty("routing.strategies", "selector,queue_per_service,virtual_topic").split(",")) {
+            RoutingStrategy strategy = RoutingStrategy.parse(strategyName);
+            if (Boolean.getBoolean("embedded")) {
+                try (EmbeddedBrokerNetwork network = EmbeddedBrokerNetwork.builder()
+                        .selectorAwareVirtualTopics(Boolean.parseBoolean(System.getProperty("routing.selectorAware", "true")))
+                        .conduitSubscriptions(Boolean.getBoolean("routing.conduitSubscriptions"))
+                        .start()) {
+                    List<DataCenter> dataCenters = Arrays.asList(
+                            new DataCenter("DataCenter #1", createProperties(network.getConnectUri(0), network.getConnectUri(1), FAILOVER_OPTIONS)),
+                            new DataCenter("DataCenter #2", createProperties(network.getConnectUri(1), network.getConnectUri(0), FAILOVER_OPTIONS)));
+                    routingBenchmark(dataCenters, strategy, new EmbeddedBridgeStatisticsSource(network));
+                }
+            } else {
+                routingBenchmark(dataCenters(), strategy, bridgeStatistics);
+            }
+        }
         System.out.println();
-
-        session1.close();
-        connection1.close();
     }
 
+    private static void routingBenchmark(List<DataCenter> dataCenters, RoutingStrategy strategy,
+                                         BridgeStatisticsSource statistics) throws Exception {
+        RoutingBenchmark.builder(dataCenters, strategy)
+                .services(Integer.getInteger("routing.services", 200))
+                .consumedShare(Double.parseDouble(System.getProperty("routing.consumedShare", "0.5")))
+                .messagesPerService(Integer.getInteger("routing.messages", 10))
+                .timeout(Long.getLong("routing.timeout", 60000L))
+                .statistics(statistics)
+                .build()
+                .run();
+    }
 
     /**
-     * Запущены 2 Active MQ. К одному подключён consumer, который случает очередь по селектору service='ABC'. К каждому ActiveMQ
-     * подключается по одному producer, которые отправляют по 10 сообщений для сервиса ABC и по 10 для сервиса XYZ.
-     * Consumer обрабатывает все 20 запросов, адресованных сервису ABC.
+     * Рассылка через топик подписчикам на нескольких брокерах: для каждой топологии сети выводятся полученные,
+     * повторные и потерянные сообщения каждого подписчика, задержка по числу пройденных мостов и число пересылок
+     * между брокерами на одно опубликованное сообщение.
+     *
+     * С -Dembedded=true для каждой топологии запускается новая сеть из fanout.brokers брокеров: в полной сетке
+     * каждый брокер связан с каждым, в цепочке - только с соседними, и сообщения до дальних брокеров проходят
+     * через промежуточные. С внешними брокерами используется их собственная сеть из двух брокеров.
+     *
+     * Параметры задаются системными свойствами:
+     * fanout.brokers - число брокеров, запускаемых внутри JVM (по умолчанию 3),
+     * fanout.topologies - топологии через запятую: full_mesh, chain (по умолчанию обе),
+     * fanout.subscribers - число подписчиков на каждом брокере (по умолчанию 4),
+     * fanout.publishers - число publisher'ов (по умолчанию 2),
+     * fanout.messages - число сообщений каждого publisher'а (по умолчанию 1000),
+     * fanout.slowSubscribers - число медленных подписчиков (по умолчанию 1),
+     * fanout.slowDelay - время обработки сообщения медленным подписчиком в миллисекундах (по умолчанию 5),
+     * fanout.idleTimeout - сколько ждать новых сообщений, прежде чем считать недоставленные потерянными,
+     * в миллисекундах (по умолчанию 3000).
      *
      * @throws Exception
      */
-    private static void twoProducerOneConsumerWithSelector() throws Exception {
+    private static void fanOutBenchmark() throws Exception {
+        System.out.println();
+        System.out.println("Topic fan-out across broker network");
+
+        if (Boolean.getBoolean("embedded")) {
+            int brokerCount = Integer.getInteger("fanout.brokers", 3);
+            for (String topologyName : System.getProperty("fanout.topologies", "full_mesh,chain").split(",")) {
+                Topology topology = Topology.parse(topologyName);
+                try (EmbeddedBrokerNetwork network = EmbeddedBrokerNetwork.builder()
+                        .brokers(brokerCount)
+                        .topology(topology)
+                        .start()) {
+                    List<DataCenter> brokers = new ArrayList<>();
+                    for (int i = 0; i < network.getBrokerCount(); i++) {
+                        brokers.add(new DataCenter("Broker #" + (i + 1), createProperties(network.getConnectUri(i), FAILOVER_OPTIONS)));
+                    }
+                    fanOutBenchmark(topology.name(), brokers, new EmbeddedBridgeStatisticsSource(network));
+                }
+            }
+        } else {
+            fanOutBenchmark("external", dataCenters(), bridgeStatistics);
+        }
         System.out.println();
-        System.out.println("2 Active MQ, 2 Producers, 1 Consumer with selector (in DataCenter #1)");
+    }
 
-        InitialContext context1 = new InitialContext(PROPERTIES_1);
-        final ConnectionFactory connectionFactory1 = (ConnectionFactory) context1.lookup("ConnectionFactory");
-        final Queue queueCluster1 = (Queue) context1.lookup("dynamicQueues/test");
+    private static void fanOutBenchmark(String topology, List<DataCenter> brokers,
+                                        BridgeStatisticsSource statistics) throws Exception {
+        FanOutBenchmark.builder(topology, brokers)
+                .publishers(Integer.getInteger("fanout.publishers", 2))
+                .subscribersPerBroker(Integer.getInteger("fanout.subscribers", 4))
+                .messagesPerPublisher(Integer.getInteger("fanout.messages", 1000))
+                .slowSubscribers(Integer.getInteger("fanout.slowSubscribers", 1), Long.getLong("fanout.slowDelay", 5L))
+                .idleTimeout(Long.getLong("fanout.idleTimeout", 3000L))
+                .statistics(statistics)
+                .build()
+                .run();
+    }
 
-        InitialContext context2 = new InitialContext(PROPERTIES_2);
-        final ConnectionFactory connectionFactory2 = (ConnectionFactory) context2.lookup("ConnectionFactory");
-        final Queue queueCluster2 = (Queue) context2.lookup("dynamicQueues/test");
-
-        Connection connection1 = connectionFactory1.createConnection();
-        Session session1 = connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageConsumer consumer1 = session1.createConsumer(queueCluster1, "service = 'ABC'");
-        consumer1.setMessageListener(new MessageListener() {
-            @Override
-            public void onMessage(Message message) {
-                try {
-                    System.out.println("Consumer 1 processed message \"" + message.getJMSCorrelationID() + "\"; service = " + message.getStringProperty("service"));
-                } catch (JMSException e) {
-                    e.printStackTrace();
+    /**
+     * Отказ брокера DataCenter #1 под постоянной нагрузкой для каждого набора параметров failover-транспорта:
+     * выводятся время переподключения producer'ов и consumer'ов и возврата на основной брокер, самая долгая
+     * блокировка отправки, посекундная скорость получения, потерянные и повторно полученные сообщения.
+     *
+     * С -Dembedded=true для каждого набора параметров запускается новая сеть брокеров, и первый брокер
+     * останавливается и запускается через API BrokerService. Внешний брокер останавливается и запускается командами
+     * failover.stopCommand и failover.startCommand, например "docker-compose -f docker/docker-compose.yml stop amq01".
+     *
+     * Параметры задаются системными свойствами:
+     * failover.options - наборы параметров failover-транспорта через "|", которые добавляются к
+     * randomize=false&jms.prefetchPolicy.all=1 (по умолчанию параметры по умолчанию ActiveMQ, быстрое
+     * переподключение с priorityBackup и без него),
+     * failover.rate - сообщений в секунду от producer'а каждого датацентра (по умолчанию 200),
+     * failover.warmUp, failover.outage, failover.recovery - нагрузка до остановки брокера, время без брокера
+     * и нагрузка после его запуска в миллисекундах (по умолчанию 5000, 5000 и 10000),
+     * failover.drainTimeout - сколько ждать недоставленные сообщения в миллисекундах (по умолчанию 15000).
+     *
+     * @throws Exception
+     */
+    private static void failoverBenchmark() throws Exception {
+        System.out.println();
+        System.out.println("2 Active MQ, broker of DataCenter #1 stopped and restarted under steady load");
+
+        for (String sweepOptions : System.getProperty("failover.options", FAILOVER_SWEEP).split("\\|")) {
+            String options = FAILOVER_SWEEP_BASE_OPTIONS + "&" + sweepOptions.trim();
+            if (Boolean.getBoolean("embedded")) {
+                try (EmbeddedBrokerNetwork network = EmbeddedBrokerNetwork.start()) {
+                    List<DataCenter> dataCenters = Arrays.asList(
+                            new DataCenter("DataCenter #1", createProperties(network.getConnectUri(0), network.getConnectUri(1), options)),
+                            new DataCenter("DataCenter #2", createProperties(network.getConnectUri(1), network.getConnectUri(0), options)));
+                    failoverBenchmark(sweepOptions.trim(), dataCenters, new EmbeddedBrokerControl(network, 0));
+                }
+            } else {
+                String stopCommand = System.getProperty("failover.stopCommand");
+                String startCommand = System.getProperty("failover.startCommand");
+                if (stopCommand == null || startCommand == null) {
+                    throw new IllegalArgumentException("Set -Dembedded=true or -Dfailover.stopCommand and -Dfailover.startCommand");
                 }
+                List<DataCenter> dataCenters = Arrays.asList(
+                        new DataCenter("DataCenter #1", createProperties(address1, address2, options)),
+                        new DataCenter("DataCenter #2", createProperties(address2, address1, options)));
+                failoverBenchmark(sweepOptions.trim(), dataCenters,
+                        new CommandBrokerControl(address1, stopCommand, startCommand));
             }
-        });
+        }
+        System.out.println();
+    }
 
-        connection1.start();
+    private static void failoverBenchmark(String options, List<DataCenter> dataCenters,
+                                          BrokerControl broker) throws Exception {
+        FailoverBenchmark.builder(options, dataCenters, broker)
+                .rate(Integer.getInteger("failover.rate", 200))
+                .timeline(Long.getLong("failover.warmUp", 5000L), Long.getLong("failover.outage", 5000L),
+                        Long.getLong("failover.recovery", 10000L))
+                .drainTimeout(Long.getLong("failover.drainTimeout", 15000L))
+                .build()
+                .run();
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory1, queueCluster1, "DataCenter #1 - " + String.valueOf(i), Collections.singletonMap("service", "ABC"));
+    /**
+     * Сравнение jms.useCompression, типов тела сообщения и содержимого нагрузки: producer DataCenter #1 отправляет
+     * сообщения consumer'у DataCenter #2 через сетевой мост. Для каждого сочетания выводятся размер сообщения
+     * на проводе и его отношение к размеру нагрузки, процессорное время на отправку и чтение одного сообщения
+     * и пропускная способность.
+     *
+     * Параметры задаются системными свойствами:
+     * compression.bodyTypes - типы тела через запятую: bytes, text, stream, object (по умолчанию все),
+     * compression.contents - содержимое нагрузки через запятую: random, text (по умолчанию оба),
+     * compression.messages - число измеряемых сообщений (по умолчанию 2000),
+     * compression.warmUp - число сообщений прогрева перед каждым измерением (по умолчанию 200);
+     * размер нагрузки задаётся свойством payload.size.
+     *
+     * @throws Exception
+     */
+    private static void compressionBenchmark() throws Exception {
+        System.out.println();
+        System.out.println("2 Active MQ, DataCenter #1 -> DataCenter #2: compression and message body types");
+        List<DataCenter> dataCenters = dataCenters();
+        SizeDistribution sizes = SizeDistribution.parse(System.getProperty("payload.size", "fixed:10000"));
+        EncodingResult.printHeader(System.out);
+        for (String contentName : System.getProperty("compression.contents", "random,text").split(",")) {
+            PayloadProvider payloads = new PayloadProvider(sizes, PayloadContent.parse(contentName));
+            for (String bodyTypeName : System.getProperty("compression.bodyTypes", "bytes,text,stream,object").split(",")) {
+                for (boolean compression : new boolean[]{false, true}) {
+                    EncodingBenchmark.builder(dataCenters.get(DC_1), dataCenters.get(DC_2))
+                            .bodyType(BodyType.parse(bodyTypeName))
+                            .compression(compression)
+                            .payloads(payloads)
+                            .messages(Integer.getInteger("compression.messages", 2000),
+                                    Integer.getInteger("compression.warmUp", 200))
+                            .build()
+                            .run();
+                }
+            }
         }
+        System.out.println();
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory2, queueCluster2, "DataCenter #2 - " + String.valueOf(i), Collections.singletonMap("service", "ABC"));
+    /**
+     * Передача больших нагрузок из DataCenter #1 в DataCenter #2 одним сообщением и группой сообщений по частям
+     * со сборкой в файл на стороне consumer'а: для каждого размера выводятся время доставки, пропускная способность
+     * и пиковый прирост занятой памяти heap. Одним сообщением не отправляются нагрузки, которые не помещаются
+     * в кадр OpenWire или трижды в heap (-Xmx): такие передачи выводятся как неудачные.
+     *
+     * Параметры задаются системными свойствами:
+     * large.sizes - размеры нагрузки в мегабайтах через запятую (по умолчанию 1,10,100),
+     * large.modes - способы передачи через запятую: single, chunked (по умолчанию оба),
+     * large.chunkSize - размер части в килобайтах (по умолчанию 256),
+     * large.timeout - максимальное время доставки одной нагрузки в миллисекундах (по умолчанию 120000).
+     *
+     * @throws Exception
+     */
+    private static void largeMessageBenchmark() throws Exception {
+        System.out.println();
+        System.out.println("2 Active MQ, DataCenter #1 -> DataCenter #2: large payloads as one message and as message group");
+        List<DataCenter> dataCenters = dataCenters();
+        LargeMessageBenchmark.Builder builder = LargeMessageBenchmark.builder(dataCenters.get(DC_1), dataCenters.get(DC_2))
+                .chunkSize(Integer.getInteger("large.chunkSize", 256) * 1024)
+                .timeout(Long.getLong("large.timeout", 120000L));
+        for (String size : System.getProperty("large.sizes", "1,10,100").split(",")) {
+            builder.size((long) (Double.parseDouble(size.trim()) * 1024 * 1024));
         }
-
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory1, queueCluster1, "DataCenter #1 - " + String.valueOf(i), Collections.singletonMap("service", "XYZ"));
+        for (String mode : System.getProperty("large.modes", "single,chunked").split(",")) {
+            builder.mode(TransferMode.parse(mode));
         }
+        builder.build().run();
+        System.out.println();
+    }
 
-        for (int i = 1; i <= 10; i++) {
-            sendMessage(connectionFactory2, queueCluster2, "DataCenter #2 - " + String.valueOf(i), Collections.singletonMap("service", "XYZ"));
+    /**
+     * Цена надёжности доставки: NON_PERSISTENT, PERSISTENT с синхронизацией журнала KahaDB и без неё и PERSISTENT
+     * с хранилищем в памяти. Для каждого режима запускается новая сеть брокеров внутри JVM (независимо от
+     * -Dembedded) во временном каталоге, и выводятся пропускная способность, процентили задержки, прирост
+     * журналов KahaDB и запись процесса на диск на одно сообщение - отдельно для доставки consumer'у своего
+     * датацентра и через сетевой мост.
+     *
+     * Параметры задаются системными свойствами:
+     * persistence.modes - режимы через запятую: non_persistent, persistent_sync, persistent_no_sync,
+     * persistent_memory (по умолчанию все),
+     * persistence.messages - число измеряемых сообщений (по умолчанию 5000),
+     * persistence.warmUp - число сообщений прогрева (по умолчанию 500).
+     *
+     * @throws Exception
+     */
+    private static void persistenceBenchmark() throws Exception {
+        System.out.println();
+        System.out.println("2 embedded Active MQ, DataCenter #1 -> DataCenter #1 (local) and DataCenter #2 (forwarded)");
+        PersistenceResult.printHeader(System.out);
+        for (String modeName : System.getProperty("persistence.modes",
+                "non_persistent,persistent_sync,persistent_no_sync,persistent_memory").split(",")) {
+            DurabilityMode mode = DurabilityMode.parse(modeName);
+            try (EmbeddedBrokerNetwork network = EmbeddedBrokerNetwork.builder().store(mode.getStore()).start()) {
+                List<DataCenter> dataCenters = Arrays.asList(
+                        new DataCenter("DataCenter #1", createProperties(network.getConnectUri(0), network.getConnectUri(1), FAILOVER_OPTIONS)),
+                        new DataCenter("DataCenter #2", createProperties(network.getConnectUri(1), network.getConnectUri(0), FAILOVER_OPTIONS)));
+                List<PersistenceResult> results = PersistenceBenchmark.builder(dataCenters, network, mode)
+                        .messages(Integer.getInteger("persistence.messages", 5000),
+                                Integer.getInteger("persistence.warmUp", 500))
+                        .build()
+                        .run();
+                for (PersistenceResult result : results) {
+                    result.print(System.out);
+                }
+            }
         }
-
-        Thread.sleep(3000);
-
         System.out.println();
+    }
 
-        session1.close();
-        connection1.close();
+    /**
+     * Запрос-ответ: потоки requester'а в DataCenter #1 отправляют запрос и ждут ответа, а responder отвечает
+     * в том же датацентре или в DataCenter #2. Ответ возвращается во временную очередь, создаваемую на каждый
+     * запрос, во временную очередь соединения или в общую постоянную очередь; в двух последних случаях requester
+     * находит ожидающий запрос по correlation ID. Для каждого сочетания выводятся число запросов в секунду,
+     * процентили времени запроса-ответа, неудачные запросы и advisory-сообщения о временных очередях на одном
+     * запросе на брокере каждого датацентра, а для каждого способа и размещения responder'а - наибольшая
+     * интенсивность среди прогонов без неудачных запросов.
+     *
+     * Параметры задаются системными свойствами:
+     * requestreply.strategies - способы ответа через запятую: temp_queue_per_request, temp_queue_per_connection,
+     * shared_queue (по умолчанию все),
+     * requestreply.responders - размещение responder'а через запятую: local, remote (по умолчанию оба),
+     * requestreply.concurrency - числа потоков requester'а через запятую (по умолчанию 1,4,16),
+     * requestreply.responderSessions - число сессий responder'а (по умолчанию 4),
+     * requestreply.warmUp - длительность прогрева в миллисекундах (по умолчанию 2000),
+     * requestreply.duration - длительность измерения в миллисекундах (по умолчанию 5000),
+     * requestreply.timeout - сколько ждать ответа в миллисекундах (по умолчанию 5000).
+     *
+     * @throws Exception
+     */
+    private static void requestReplyBenchmark() throws Exception {
+        System.out.println();
+        System.out.println("2 Active MQ, requester in DataCenter #1: request-reply round trip");
+        List<DataCenter> dataCenters = dataCenters();
+        List<String> dataCenterNames = new ArrayList<>();
+        for (DataCenter dataCenter : dataCenters) {
+            dataCenterNames.add(dataCenter.getName());
+        }
+        RequestReplyResult.printHeader(System.out, dataCenterNames);
+        for (String strategyName : System.getProperty("requestreply.strategies",
+                "temp_queue_per_request,temp_queue_per_connection,shared_queue").split(",")) {
+            ReplyStrategy strategy = ReplyStrategy.parse(strategyName);
+            for (String placement : System.getProperty("requestreply.responders", "local,remote").split(",")) {
+                int responder;
+                switch (placement.trim()) {
+                    case "local":
+                        responder = DC_1;
+                        break;
+                    case "remote":
+                        responder = DC_2;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown responder placement: " + placement);
+                }
+                RequestReplyResult best = null;
+                for (String concurrency : System.getProperty("requestreply.concurrency", "1,4,16").split(",")) {
+                    RequestReplyResult result = RequestReplyBenchmark.builder(dataCenters, DC_1, responder, strategy)
+                            .concurrency(Integer.parseInt(concurrency.trim()))
+                            .responderSessions(Integer.getInteger("requestreply.responderSessions", 4))
+                            .duration(Long.getLong("requestreply.warmUp", 2000L),
+                                    Long.getLong("requestreply.duration", 5000L))
+                            .replyTimeout(Long.getLong("requestreply.timeout", 5000L))
+                            .build()
+                            .run();
+                    if (result.isSuccessful() && (best == null || result.getRate() > best.getRate())) {
+                        best = result;
+                    }
+                }
+                System.out.println(best != null
+                        ? String.format("  max sustainable rate: %.1f req/s (%d requester threads)", best.getRate(),
+                        best.getConcurrency())
+                        : "  max sustainable rate: every run had failed requests");
+            }
+        }
+        System.out.println();
     }
 }
-
@@ -0,0 +1,243 @@
+package ru.softlab.ib6.bridge;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Снимок счётчиков сетевых мостов и destination'ов всех брокеров сети, а также занятой брокерами памяти.
+ *
+ * Счётчики брокера растут с момента его запуска, поэтому для одного сценария используется разность снимков
+ * после и до сценария ({@link #minus(BridgeStatistics)}). Подтверждения пересылки и потребления приходят брокеру
+ * асинхронно, поэтому сразу после сценария счётчики могут отставать от числа полученных сообщений на единицы.
+ * Текущие значения (размер очереди, число consumer'ов, занятая память) в разности берутся из более позднего снимка.
+ *
+ * @author Andrey Grigorov
+ */
+public class BridgeStatistics {
+
+    private final List<BrokerUsage> brokers;
+    private final List<Bridge> bridges;
+    private final List<DestinationCounters> destinations;
+
+    public BridgeStatistics(List<BrokerUsage> brokers, List<Bridge> bridges, List<DestinationCounters> destinations) {
+        this.brokers = Collections.unmodifiableList(new ArrayList<>(brokers));
+        this.bridges = Collections.unmodifiableList(new ArrayList<>(bridges));
+        this.destinations = Collections.unmodifiableList(new ArrayList<>(destinations));
+    }
+
+    public List<BrokerUsage> getBrokers() {
+        return brokers;
+    }
+
+    public List<Bridge> getBridges() {
+        return bridges;
+    }
+
+    public List<DestinationCounters> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * @return сообщения, переданные всеми мостами на удалённые брокеры
+     */
+    public long getForwarded() {
+        long forwarded = 0;
+        for (Bridge bridge : bridges) {
+            forwarded += bridge.getDequeued();
+        }
+        return forwarded;
+    }
+
+    /**
+     * @return разность счётчиков этого и более раннего снимка; мосты и destination'ы, которых не было в раннем
+     * снимке, берутся целиком
+     */
+    public BridgeStatistics minus(BridgeStatistics earlier) {
+        Map<String, Bridge> earlierBridges = new HashMap<>();
+        for (Bridge bridge : earlier.bridges) {
+            earlierBridges.put(bridge.key(), bridge);
+        }
+        List<Bridge> bridgeDeltas = new ArrayList<>();
+        for (Bridge bridge : bridges) {
+            Bridge before = earlierBridges.get(bridge.key());
+            bridgeDeltas.add(before == null ? bridge : new Bridge(bridge.localBroker, bridge.remoteBroker,
+                    bridge.enqueued - before.enqueued, bridge.dequeued - before.dequeued,
+                    bridge.received - before.received));
+        }
+
+        Map<String, DestinationCounters> earlierDestinations = new HashMap<>();
+        for (DestinationCounters destination : earlier.destinations) {
+            earlierDestinations.put(destination.key(), destination);
+        }
+        List<DestinationCounters> destinationDeltas = new ArrayList<>();
+        for (DestinationCounters destination : destinations) {
+            DestinationCounters before = earlierDestinations.get(destination.key());
+            destinationDeltas.add(before == null ? destination : new DestinationCounters(destination.broker,
+                    destination.destination, destination.enqueues - before.enqueues,
+                    destination.dequeues - before.dequeues, destination.forwards - before.forwards,
+                    destination.size, destination.consumers));
+        }
+        return new BridgeStatistics(brokers, bridgeDeltas, destinationDeltas);
+    }
+
+    /**
+     * @param elapsedMillis интервал между снимками, по которому считается пропускная способность мостов
+     */
+    public void print(PrintStream out, long elapsedMillis) {
+        out.println("Network bridges:");
+        for (Bridge bridge : bridges) {
+            out.println(String.format("  %s -> %s: enqueued %d, forwarded %d (%.1f msg/s), received %d",
+                    bridge.localBroker, bridge.remoteBroker, bridge.enqueued, bridge.dequeued,
+                    bridge.dequeued * 1000.0 / Math.max(1, elapsedMillis), bridge.received));
+        }
+        for (DestinationCounters destination : destinations) {
+            // destination'ы, через которые за интервал ничего не прошло, не выводятся
+            if (destination.enqueues == 0 && destination.dequeues == 0) {
+                continue;
+            }
+            out.println(String.format("  %s %s: enqueued %d, dequeued %d, forwarded %d",
+                    destination.broker, destination.destination, destination.enqueues, destination.dequeues,
+                    destination.forwards));
+        }
+    }
+
+    /**
+     * Память, занятая сообщениями брокера.
+     */
+    public static final class BrokerUsage {
+
+        private final String broker;
+        private final long memoryUsage;
+
+        /**
+         * @param memoryUsage байты, занятые сообщениями в памяти брокера (memoryUsage из systemUsage)
+         */
+        public BrokerUsage(String broker, long memoryUsage) {
+            this.broker = broker;
+            this.memoryUsage = memoryUsage;
+        }
+
+        public String getBroker() {
+            return broker;
+        }
+
+        public long getMemoryUsage() {
+            return memoryUsage;
+        }
+    }
+
+    /**
+     * Счётчики сетевого моста от локального брокера к удалённому.
+     */
+    public static final class Bridge {
+
+        private final String localBroker;
+        private final String remoteBroker;
+        private final long enqueued;
+        private final long dequeued;
+        private final long received;
+
+        /**
+         * @param enqueued сообщения, которые мост взял у локального брокера для пересылки
+         * @param dequeued сообщения, пересылку которых подтвердил удалённый брокер
+         * @param received сообщения, полученные мостом от удалённого брокера
+         */
+        public Bridge(String localBroker, String remoteBroker, long enqueued, long dequeued, long received) {
+            this.localBroker = localBroker;
+            this.remoteBroker = remoteBroker;
+            this.enqueued = enqueued;
+            this.dequeued = dequeued;
+            this.received = received;
+        }
+
+        public String getLocalBroker() {
+            return localBroker;
+        }
+
+        public String getRemoteBroker() {
+            return remoteBroker;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        public long getDequeued() {
+            return dequeued;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        private String key() {
+            return localBroker + "->" + remoteBroker;
+        }
+    }
+
+    /**
+     * Счётчики очереди или топика на одном брокере.
+     */
+    public static final class DestinationCounters {
+
+        private final String broker;
+        private final String destination;
+        private final long enqueues;
+        private final long dequeues;
+        private final long forwards;
+        private final long size;
+        private final long consumers;
+
+        /**
+         * @param forwards  сообщения, переданные consumer'ам сетевых мостов, то есть на другие брокеры
+         * @param size      сообщения, которые сейчас хранятся в destination'е
+         * @param consumers подключённые сейчас consumer'ы, включая consumer'ы сетевых мостов
+         */
+        public DestinationCounters(String broker, String destination, long enqueues, long dequeues, long forwards,
+                                   long size, long consumers) {
+            this.broker = broker;
+            this.destination = destination;
+            this.enqueues = enqueues;
+            this.dequeues = dequeues;
+            this.forwards = forwards;
+            this.size = size;
+            this.consumers = consumers;
+        }
+
+        public String getBroker() {
+            return broker;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public long getEnqueues() {
+            return enqueues;
+        }
+
+        public long getDequeues() {
+            return dequeues;
+        }
+
+        public long getForwards() {
+            return forwards;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getConsumers() {
+            return consumers;
+        }
+
+        private String key() {
+            return broker + "/" + destination;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.softlab.ib6.bridge;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Источник счётчиков сетевых мостов и destination'ов брокеров.
+ *
+ * @author Andrey Grigorov
+ */
+public interface BridgeStatisticsSource extends AutoCloseable {
+
+    BridgeStatistics snapshot() throws Exception;
+
+    /**
+     * Ждёт, пока число consumer'ов destination'ов, в имени которых есть destinationNamePart, на всех брокерах
+     * перестанет меняться. Подписки сетевых мостов создаются по advisory-сообщениям асинхронно, и сообщение,
+     * отправленное до появления подписки на удалённом брокере, туда не будет переслано.
+     *
+     * @return true, если число consumer'ов устоялось до истечения таймаута
+     */
+    default boolean awaitStableConsumers(String destinationNamePart, long timeoutMillis) throws Exception {
+        return awaitStableConsumers(destinationNamePart, 0, timeoutMillis);
+    }
+
+    /**
+     * То же, но дополнительно ждёт, пока на каждом брокере у таких destination'ов станет не меньше
+     * minimumPerBroker consumer'ов. Для топика это позволяет дождаться подписок мостов на всех брокерах, а не только
+     * локальных подписчиков.
+     *
+     * @return true, если число consumer'ов устоялось до истечения таймаута
+     */
+    default boolean awaitStableConsumers(String destinationNamePart, long minimumPerBroker,
+                                         long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long previous = -1;
+        while (System.currentTimeMillis() < deadline) {
+            BridgeStatistics statistics = snapshot();
+            Map<String, Long> consumersByBroker = new HashMap<>();
+            for (BridgeStatistics.BrokerUsage broker : statistics.getBrokers()) {
+                consumersByBroker.put(broker.getBroker(), 0L);
+            }
+            long consumers = 0;
+            for (BridgeStatistics.DestinationCounters destination : statistics.getDestinations()) {
+                if (destination.getDestination().contains(destinationNamePart)) {
+                    consumers += destination.getConsumers();
+                    consumersByBroker.merge(destination.getBroker(), destination.getConsumers(), Long::sum);
+                }
+            }
+            boolean enough = true;
+            for (long brokerConsumers : consumersByBroker.values()) {
+                enough &= brokerConsumers >= minimumPerBroker;
+            }
+            if (enough && consumers > 0 && consumers == previous) {
+                return true;
+            }
+            previous = consumers;
+            Thread.sleep(500);
+        }
+        return false;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,68 @@
+package ru.softlab.ib6.bridge;
+
+import org.apache.activemq.advisory.AdvisorySupport;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.network.NetworkBridge;
+import org.apache.activemq.network.NetworkBridgeStatistics;
+import org.apache.activemq.network.NetworkConnector;
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Счётчики брокеров, запущенных внутри JVM, читаются напрямую через API {@link BrokerService}.
+ *
+ * @author Andrey Grigorov
+ */
+public class EmbeddedBridgeStatisticsSource implements BridgeStatisticsSource {
+
+    private final EmbeddedBrokerNetwork network;
+
+    public EmbeddedBridgeStatisticsSource(EmbeddedBrokerNetwork network) {
+        this.network = network;
+    }
+
+    @Override
+    public BridgeStatistics snapshot() throws Exception {
+        List<BridgeStatistics.BrokerUsage> brokers = new ArrayList<>();
+        List<BridgeStatistics.Bridge> bridges = new ArrayList<>();
+        List<BridgeStatistics.DestinationCounters> destinations = new ArrayList<>();
+        for (int i = 0; i < network.getBrokerCount(); i++) {
+            BrokerService broker = network.getBroker(i);
+            brokers.add(new BridgeStatistics.BrokerUsage(broker.getBrokerName(),
+                    broker.getSystemUsage().getMemoryUsage().getUsage()));
+            for (NetworkConnector connector : broker.getNetworkConnectors()) {
+                for (NetworkBridge bridge : connector.activeBridges()) {
+                    NetworkBridgeStatistics statistics = bridge.getNetworkBridgeStatistics();
+                    bridges.add(new BridgeStatistics.Bridge(broker.getBrokerName(), bridge.getRemoteBrokerName(),
+                            statistics.getEnqueues().getCount(), statistics.getDequeues().getCount(),
+                            statistics.getReceivedCount().getCount()));
+                }
+            }
+
+            Map<ActiveMQDestination, Destination> destinationMap = broker.getRegionBroker().getDestinationMap();
+            for (Map.Entry<ActiveMQDestination, Destination> entry : destinationMap.entrySet()) {
+                ActiveMQDestination destination = entry.getKey();
+                if (AdvisorySupport.isAdvisoryTopic(destination) || destination.isTemporary()) {
+                    continue;
+                }
+                DestinationStatistics statistics = entry.getValue().getDestinationStatistics();
+                destinations.add(new BridgeStatistics.DestinationCounters(broker.getBrokerName(),
+                        destination.getQualifiedName(), statistics.getEnqueues().getCount(),
+                        statistics.getDequeues().getCount(), statistics.getForwards().getCount(),
+                        statistics.getMessages().getCount(), statistics.getConsumers().getCount()));
+            }
+        }
+        return new BridgeStatistics(brokers, bridges, destinations);
+    }
+
+    @Override
+    public void close() {
+        // сетью брокеров владеет вызывающий код
+    }
+}
@@ -0,0 +1,101 @@
+package ru.softlab.ib6.bridge;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Счётчики внешних брокеров читаются через удалённый JMX, например
+ * service:jmx:rmi:///jndi/rmi://localhost:1099/jmxrmi. Для этого в activemq.xml у managementContext
+ * должно быть createConnector="true".
+ *
+ * @author Andrey Grigorov
+ */
+public class JmxBridgeStatisticsSource implements BridgeStatisticsSource {
+
+    private static final String DOMAIN = "org.apache.activemq";
+
+    private final List<JMXConnector> connectors = new ArrayList<>();
+
+    /**
+     * @param jmxUrls адреса JMX-коннекторов всех брокеров сети
+     * @throws IOException если к одному из брокеров не удалось подключиться
+     */
+    public JmxBridgeStatisticsSource(List<String> jmxUrls) throws IOException {
+        try {
+            for (String url : jmxUrls) {
+                connectors.add(JMXConnectorFactory.connect(new JMXServiceURL(url.trim())));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public BridgeStatistics snapshot() throws Exception {
+        List<BridgeStatistics.BrokerUsage> brokers = new ArrayList<>();
+        List<BridgeStatistics.Bridge> bridges = new ArrayList<>();
+        List<BridgeStatistics.DestinationCounters> destinations = new ArrayList<>();
+        for (JMXConnector connector : connectors) {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+
+            for (ObjectName name : connection.queryNames(new ObjectName(DOMAIN + ":type=Broker,brokerName=*"), null)) {
+                // BrokerViewMBean отдаёт только процент занятой памяти от лимита
+                long memoryLimit = (Long) connection.getAttribute(name, "MemoryLimit");
+                int memoryPercent = (Integer) connection.getAttribute(name, "MemoryPercentUsage");
+                brokers.add(new BridgeStatistics.BrokerUsage(name.getKeyProperty("brokerName"),
+                        memoryLimit * memoryPercent / 100));
+            }
+
+            // точный список ключей: у моста есть дочерние MBean'ы пересылаемых destination'ов с ключом component
+            ObjectName bridgePattern = new ObjectName(DOMAIN + ":type=Broker,brokerName=*,connector=networkConnectors,"
+                    + "networkConnectorName=*,networkBridge=*");
+            for (ObjectName name : connection.queryNames(bridgePattern, null)) {
+                bridges.add(new BridgeStatistics.Bridge(
+                        (String) connection.getAttribute(name, "LocalBrokerName"),
+                        (String) connection.getAttribute(name, "RemoteBrokerName"),
+                        (Long) connection.getAttribute(name, "EnqueueCounter"),
+                        (Long) connection.getAttribute(name, "DequeueCounter"),
+                        (Long) connection.getAttribute(name, "ReceivedCounter")));
+            }
+
+            ObjectName destinationPattern = new ObjectName(DOMAIN + ":type=Broker,destinationType=*,destinationName=*,*");
+            for (ObjectName name : connection.queryNames(destinationPattern, null)) {
+                String destinationType = name.getKeyProperty("destinationType");
+                String destinationName = name.getKeyProperty("destinationName");
+                // у подписок и других дочерних MBean'ов destination'а больше ключей
+                if (name.getKeyPropertyList().size() != 4
+                        || destinationType.startsWith("Temp") || destinationName.startsWith("ActiveMQ.Advisory")) {
+                    continue;
+                }
+                destinations.add(new BridgeStatistics.DestinationCounters(name.getKeyProperty("brokerName"),
+                        destinationType.toLowerCase(Locale.ROOT) + "://" + destinationName,
+                        (Long) connection.getAttribute(name, "EnqueueCount"),
+                        (Long) connection.getAttribute(name, "DequeueCount"),
+                        (Long) connection.getAttribute(name, "ForwardCount"),
+                        (Long) connection.getAttribute(name, "QueueSize"),
+                        (Long) connection.getAttribute(name, "ConsumerCount")));
+            }
+        }
+        return new BridgeStatistics(brokers, bridges, destinations);
+    }
+
+    @Override
+    public void close() {
+        for (JMXConnector connector : connectors) {
+            try {
+                connector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        connectors.clear();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.softlab.ib6.consumer;
+
+import javax.jms.Session;
+import java.util.Locale;
+
+/**
+ * Режим подтверждения полученных сообщений.
+ *
+ * @author Andrey Grigorov
+ */
+public enum AckMode {
+
+    /**
+     * Каждое сообщение подтверждается отдельно после возврата из MessageListener'а.
+     */
+    AUTO(Session.AUTO_ACKNOWLEDGE, false),
+
+    /**
+     * Сообщения подтверждаются пакетами после обработки: каждые N сообщений или раз в T миллисекунд.
+     */
+    CLIENT(Session.CLIENT_ACKNOWLEDGE, false),
+
+    /**
+     * Клиент ActiveMQ подтверждает сообщения пакетами сам; при сбое возможны повторные доставки.
+     */
+    DUPS_OK(Session.DUPS_OK_ACKNOWLEDGE, false),
+
+    /**
+     * AUTO_ACKNOWLEDGE с включённым optimizeAcknowledge: клиент ActiveMQ подтверждает сообщения пакетами
+     * по мере расходования prefetch'а.
+     */
+    OPTIMIZE(Session.AUTO_ACKNOWLEDGE, true);
+
+    private final int sessionMode;
+    private final boolean optimizeAcknowledge;
+
+    AckMode(int sessionMode, boolean optimizeAcknowledge) {
+        this.sessionMode = sessionMode;
+        this.optimizeAcknowledge = optimizeAcknowledge;
+    }
+
+    /**
+     * @return режим подтверждения для {@link javax.jms.Connection#createSession(boolean, int)}
+     */
+    public int getSessionMode() {
+        return sessionMode;
+    }
+
+    public boolean isOptimizeAcknowledge() {
+        return optimizeAcknowledge;
+    }
+
+    /**
+     * @param value "auto", "client", "dups_ok" или "optimize"
+     */
+    public static AckMode parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,343 @@
+package ru.softlab.ib6.consumer;
+
+import org.apache.activemq.ActiveMQConnection;
+import ru.softlab.ib6.metrics.LatencyRecorder;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул consumer'ов одного датацентра: несколько сессий с consumer'ом в каждой на общем соединении
+ * и ограниченный пул потоков, в котором обрабатываются полученные сообщения.
+ *
+ * MessageListener только передаёт сообщение в пул потоков и сразу возвращается за следующим, поэтому медленная
+ * обработка не простаивает prefetch локального брокера. Если очередь пула потоков заполнена, сообщение
+ * обрабатывается в потоке сессии - так consumer перестаёт забирать сообщения, пока обработка не догонит.
+ * При workers = 0 сообщения обрабатываются прямо в MessageListener'е, как раньше.
+ *
+ * В режиме {@link AckMode#CLIENT} сообщения подтверждаются пакетами. Message.acknowledge() в ActiveMQ подтверждает
+ * все доставленные сессии сообщения, поэтому подтверждение отправляется, только когда обработаны все переданные
+ * в пул сообщения сессии, а сессия не получает больше ackBatch неподтверждённых сообщений. До обработки может
+ * быть подтверждено только сообщение, которое в этот момент ожидает в MessageListener'е.
+ *
+ * Сессией JMS может пользоваться только один поток, поэтому подтверждение отправляет поток сессии, когда
+ * получает очередное сообщение: если неподтверждённых уже ackBatch, он ждёт, пока потоки пула обработают
+ * переданные им сообщения, а неполный пакет подтверждает, если с его первого сообщения прошло ackInterval.
+ * Пока новых сообщений нет, обработанные сообщения остаются неподтверждёнными; их подтверждает {@link #close()}
+ * после остановки соединения, когда поток сессии уже не работает.
+ *
+ * @author Andrey Grigorov
+ */
+public class ConsumerPool implements AutoCloseable {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final String name;
+    private final AckMode ackMode;
+    private final int ackBatch;
+    private final long ackIntervalNanos;
+    private final MessageListener processor;
+    private final Connection connection;
+    private final List<SessionState> sessions = new ArrayList<>();
+    private final ThreadPoolExecutor workers;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong acknowledgements = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private ConsumerPool(Builder builder) throws Exception {
+        this.name = builder.dataCenter.getName();
+        this.ackMode = builder.ackMode;
+        this.ackBatch = builder.ackBatch;
+        this.ackIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.ackIntervalMillis);
+        this.processor = builder.processor;
+
+        if (builder.workers > 0) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            workers = new ThreadPoolExecutor(builder.workers, builder.workers, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(builder.queueCapacity),
+                    runnable -> new Thread(runnable, name + " worker " + threadNumber.incrementAndGet()),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            workers = null;
+        }
+
+        connection = builder.dataCenter.getConnectionFactory().createConnection();
+        try {
+            if (ackMode.isOptimizeAcknowledge() && connection instanceof ActiveMQConnection) {
+                ((ActiveMQConnection) connection).setOptimizeAcknowledge(true);
+            }
+            Destination destination = builder.dataCenter.lookup(builder.destination);
+            for (int i = 0; i < builder.sessions; i++) {
+                Session session = connection.createSession(false, ackMode.getSessionMode());
+                SessionState state = new SessionState();
+                sessions.add(state);
+                MessageConsumer consumer = session.createConsumer(destination, builder.selector);
+                consumer.setMessageListener(message -> dispatch(state, message));
+            }
+            connection.start();
+        } catch (Exception e) {
+            connection.close();
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param dataCenter  датацентр, к брокеру которого подключаются consumer'ы
+     * @param destination JNDI-имя очереди или топика
+     * @param processor   обработка сообщения; вызывается из потоков пула
+     */
+    public static Builder builder(DataCenter dataCenter, String destination, MessageListener processor) {
+        return new Builder(dataCenter, destination, processor);
+    }
+
+    private void dispatch(final SessionState state, final Message message) {
+        received.incrementAndGet();
+        if (LatencyRecorder.isForwarded(message)) {
+            forwarded.incrementAndGet();
+        }
+        if (ackMode == AckMode.CLIENT) {
+            try {
+                state.delivered();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (workers != null && !workers.isShutdown()) {
+            workers.execute(() -> process(state, message));
+        } else {
+            process(state, message);
+        }
+    }
+
+    private void process(SessionState state, Message message) {
+        try {
+            processor.onMessage(message);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        processed.incrementAndGet();
+        if (ackMode == AckMode.CLIENT) {
+            state.processed(message);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AckMode getAckMode() {
+        return ackMode;
+    }
+
+    /**
+     * @return сообщения, полученные consumer'ами пула
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return сообщения, пришедшие по сетевому мосту с другого брокера
+     */
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return число подтверждений, отправленных пулом в режиме {@link AckMode#CLIENT}
+     */
+    public long getAcknowledgements() {
+        return acknowledgements.get();
+    }
+
+    /**
+     * Дожидается обработки уже полученных сообщений, подтверждает их и закрывает соединение. Повторный вызов
+     * ничего не делает.
+     */
+    @Override
+    public void close() throws JMSException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            connection.stop();
+            if (workers != null) {
+                workers.shutdown();
+                workers.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (ackMode == AckMode.CLIENT) {
+                // соединение остановлено, поэтому потоки сессий уже не пользуются ими
+                for (SessionState state : sessions) {
+                    state.acknowledgeProcessed();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: received %d (forwarded %d), processed %d, acks %d",
+                name, getReceived(), getForwarded(), getProcessed(), getAcknowledgements());
+    }
+
+    /**
+     * Счётчики сообщений одной сессии для пакетного подтверждения.
+     */
+    private class SessionState {
+
+        private long delivered;
+        private long processed;
+        private long acknowledged;
+        private long firstUnacknowledgedNanos;
+        private Message lastProcessed;
+
+        /**
+         * Вызывается из потока сессии перед передачей сообщения в пул. Подтверждает обработанные сообщения,
+         * если набрался пакет или с первого неподтверждённого сообщения прошло ackInterval; при ackBatch
+         * неподтверждённых сообщений сначала ждёт, пока пул обработает все переданные ему сообщения.
+         */
+        synchronized void delivered() throws InterruptedException {
+            if (delivered - acknowledged >= ackBatch) {
+                while (processed != delivered) {
+                    wait();
+                }
+                acknowledge();
+            } else if (processed == delivered && processed > acknowledged
+                    && System.nanoTime() - firstUnacknowledgedNanos >= ackIntervalNanos) {
+                acknowledge();
+            }
+            if (delivered == acknowledged) {
+                firstUnacknowledgedNanos = System.nanoTime();
+            }
+            delivered++;
+        }
+
+        synchronized void processed(Message message) {
+            processed++;
+            lastProcessed = message;
+            notifyAll();
+        }
+
+        /**
+         * Подтверждает обработанные сообщения; вызывается, когда поток сессии уже остановлен.
+         */
+        synchronized void acknowledgeProcessed() {
+            if (processed > acknowledged) {
+                acknowledge();
+            }
+        }
+
+        private void acknowledge() {
+            try {
+                lastProcessed.acknowledge();
+                acknowledgements.incrementAndGet();
+            } catch (JMSException e) {
+                // сессия закрыта или соединение потеряно: неподтверждённые сообщения будут доставлены повторно
+                e.printStackTrace();
+            }
+            acknowledged = processed;
+        }
+    }
+
+    public static class Builder {
+
+        private final DataCenter dataCenter;
+        private final String destination;
+        private final MessageListener processor;
+        private String selector;
+        private int sessions = 1;
+        private int workers = 0;
+        private int queueCapacity = 100;
+        private AckMode ackMode = AckMode.AUTO;
+        private int ackBatch = 100;
+        private long ackIntervalMillis = 1000;
+
+        private Builder(DataCenter dataCenter, String destination, MessageListener processor) {
+            this.dataCenter = dataCenter;
+            this.destination = destination;
+            this.processor = processor;
+        }
+
+        public Builder selector(String selector) {
+            this.selector = selector;
+            return this;
+        }
+
+        /**
+         * @param sessions число сессий, в каждой из которых создаётся один consumer
+         */
+        public Builder sessions(int sessions) {
+            this.sessions = sessions;
+            return this;
+        }
+
+        /**
+         * @param workers число потоков обработки; 0 - обработка в потоке сессии
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * @param queueCapacity число полученных, но ещё не обрабатываемых сообщений
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Builder ackMode(AckMode ackMode) {
+            this.ackMode = ackMode;
+            return this;
+        }
+
+        /**
+         * @param ackBatch         число сообщений в одном подтверждении в режиме {@link AckMode#CLIENT}
+         * @param ackIntervalMillis через какое время подтверждать неполный пакет при получении следующего сообщения
+         */
+        public Builder ackBatch(int ackBatch, long ackIntervalMillis) {
+            this.ackBatch = ackBatch;
+            this.ackIntervalMillis = ackIntervalMillis;
+            return this;
+        }
+
+        public ConsumerPool start() throws Exception {
+            if (sessions < 1) {
+                throw new IllegalStateException("sessions must be positive: " + sessions);
+            }
+            if (ackBatch < 1 || ackIntervalMillis < 1) {
+                throw new IllegalStateException("ackBatch and ackInterval must be positive: " + ackBatch + ", " + ackIntervalMillis);
+            }
+            return new ConsumerPool(this);
+        }
+    }
+}
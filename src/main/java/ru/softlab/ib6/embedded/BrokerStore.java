@@ -0,0 +1,64 @@
+package ru.softlab.ib6.embedded;
+
+import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Хранилище сообщений брокера.
+ *
+ * @author Andrey Grigorov
+ */
+public enum BrokerStore {
+
+    /**
+     * KahaDB с синхронизацией журнала на диск при каждой записи, как в docker/activemq.xml.
+     */
+    KAHADB {
+        @Override
+        PersistenceAdapter createAdapter(File brokerDirectory) {
+            return kahaDB(brokerDirectory, Journal.JournalDiskSyncStrategy.ALWAYS);
+        }
+    },
+
+    /**
+     * KahaDB без синхронизации журнала: записи остаются в кэше операционной системы, и при отказе машины
+     * последние сообщения теряются.
+     */
+    KAHADB_NO_SYNC {
+        @Override
+        PersistenceAdapter createAdapter(File brokerDirectory) {
+            return kahaDB(brokerDirectory, Journal.JournalDiskSyncStrategy.NEVER);
+        }
+    },
+
+    /**
+     * Хранение persistent-сообщений только в памяти брокера.
+     */
+    MEMORY {
+        @Override
+        PersistenceAdapter createAdapter(File brokerDirectory) {
+            return new MemoryPersistenceAdapter();
+        }
+    };
+
+    abstract PersistenceAdapter createAdapter(File brokerDirectory);
+
+    private static PersistenceAdapter kahaDB(File brokerDirectory, Journal.JournalDiskSyncStrategy syncStrategy) {
+        KahaDBPersistenceAdapter kahaDB = new KahaDBPersistenceAdapter();
+        kahaDB.setDirectory(new File(brokerDirectory, "kahadb"));
+        kahaDB.setJournalDiskSyncStrategy(syncStrategy.name());
+        return kahaDB;
+    }
+
+    /**
+     * @param value "kahadb", "kahadb_no_sync" или "memory"
+     */
+    public static BrokerStore parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
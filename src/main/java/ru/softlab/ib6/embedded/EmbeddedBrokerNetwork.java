@@ -0,0 +1,431 @@
+package ru.softlab.ib6.embedded;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.broker.region.DestinationInterceptor;
+import org.apache.activemq.broker.region.policy.ConstantPendingMessageLimitStrategy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.broker.region.virtual.VirtualDestination;
+import org.apache.activemq.broker.region.virtual.VirtualDestinationInterceptor;
+import org.apache.activemq.broker.region.virtual.VirtualTopic;
+import org.apache.activemq.network.NetworkConnector;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.usage.SystemUsage;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сеть брокеров ActiveMQ, запущенная внутри текущей JVM.
+ *
+ * Повторяет настройки docker/activemq.xml: KahaDB, ограничение числа неотправленных сообщений медленным
+ * подписчикам топиков (constantPendingMessageLimitStrategy limit="1000"), ограничения memory/store/temp usage,
+ * сетевой коннектор с decreaseNetworkConsumerPriority="true" и транспортный коннектор с
+ * wireFormat.maxFrameSize=104857600. Вместо multicast-обнаружения брокеры соединяются статическими
+ * network connector'ами через loopback, каждый со всеми остальными, - как при обнаружении через multicast.
+ * Топология {@link Topology#CHAIN} соединяет брокеры цепочкой, чтобы сообщения проходили несколько мостов,
+ * а {@link BrokerStore} позволяет заменить KahaDB с синхронной записью журнала.
+ *
+ * Каждый запуск получает собственный временный каталог с данными, который удаляется в {@link #close()}.
+ *
+ * @author Andrey Grigorov
+ */
+public class EmbeddedBrokerNetwork implements AutoCloseable {
+
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final long BRIDGE_START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final AtomicInteger NETWORK_COUNTER = new AtomicInteger();
+
+    private final int brokerCount;
+    private final boolean decreaseNetworkConsumerPriority;
+    private final int networkPrefetchSize;
+    private final boolean selectorAwareVirtualTopics;
+    private final boolean conduitSubscriptions;
+    private final boolean jmx;
+    private final Topology topology;
+    private final BrokerStore store;
+    private final String brokerNamePrefix;
+    private final Path dataDirectory;
+    private final List<BrokerService> brokers = new ArrayList<>();
+    private final List<String> connectUris = new ArrayList<>();
+
+    private EmbeddedBrokerNetwork(Builder builder) throws IOException {
+        this.brokerCount = builder.brokerCount;
+        this.decreaseNetworkConsumerPriority = builder.decreaseNetworkConsumerPriority;
+        this.networkPrefetchSize = builder.networkPrefetchSize;
+        this.selectorAwareVirtualTopics = builder.selectorAwareVirtualTopics;
+        this.conduitSubscriptions = builder.conduitSubscriptions;
+        this.jmx = builder.jmx;
+        this.topology = builder.topology;
+        this.store = builder.store;
+        // мост подключается к своему брокеру через vm://<имя брокера>, поэтому имена брокеров разных сетей
+        // в одной JVM не должны совпадать, иначе мост подпишется на брокер другой сети
+        this.brokerNamePrefix = "net" + NETWORK_COUNTER.incrementAndGet() + "-broker-";
+        this.dataDirectory = Files.createTempDirectory("broker-network");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Запускает сеть из двух брокеров с настройками по умолчанию.
+     */
+    public static EmbeddedBrokerNetwork start() throws Exception {
+        return builder().start();
+    }
+
+    private void startBrokers() throws Exception {
+        for (int i = 0; i < brokerCount; i++) {
+            connectUris.add("tcp://" + LOOPBACK + ":" + freePort());
+        }
+        for (int i = 0; i < brokerCount; i++) {
+            BrokerService broker = createBroker(i);
+            broker.start();
+            broker.waitUntilStarted();
+            brokers.add(broker);
+        }
+        // сетевые коннекторы запускаются, когда все брокеры уже принимают соединения,
+        // иначе первая попытка подключения к ещё не запущенному брокеру откладывает мост на секунды
+        for (int i = 0; i < brokerCount; i++) {
+            startNetworkConnector(i);
+        }
+        waitForBridges();
+    }
+
+    private void startNetworkConnector(int index) throws Exception {
+        if (topology.peers(index, brokerCount).isEmpty()) {
+            return;
+        }
+        BrokerService broker = brokers.get(index);
+        NetworkConnector connector = broker.addNetworkConnector(peersUri(index));
+        connector.setName("networkConnector");
+        connector.setDecreaseNetworkConsumerPriority(decreaseNetworkConsumerPriority);
+        connector.setPrefetchSize(networkPrefetchSize);
+        connector.setConduitSubscriptions(conduitSubscriptions);
+        connector.setNetworkTTL(topology.diameter(brokerCount));
+        broker.startNetworkConnector(connector, null);
+    }
+
+    private BrokerService createBroker(int index) throws Exception {
+        File brokerDirectory = dataDirectory.resolve("broker-" + (index + 1)).toFile();
+
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName(brokerNamePrefix + (index + 1));
+        broker.setDataDirectoryFile(brokerDirectory);
+        broker.setUseJmx(jmx);
+        if (jmx) {
+            // MBean'ы регистрируются в platform MBeanServer; собственный RMI-коннектор на порту 1099 не нужен
+            broker.getManagementContext().setCreateConnector(false);
+        }
+        broker.setUseShutdownHook(false);
+
+        broker.setPersistenceAdapter(store.createAdapter(brokerDirectory));
+
+        PolicyEntry topicPolicy = new PolicyEntry();
+        topicPolicy.setTopic(">");
+        ConstantPendingMessageLimitStrategy pendingMessageLimitStrategy = new ConstantPendingMessageLimitStrategy();
+        pendingMessageLimitStrategy.setLimit(1000);
+        topicPolicy.setPendingMessageLimitStrategy(pendingMessageLimitStrategy);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setPolicyEntries(Collections.singletonList(topicPolicy));
+        broker.setDestinationPolicy(policyMap);
+
+        if (selectorAwareVirtualTopics) {
+            // очереди Consumer.*.VirtualTopic.> получают только сообщения, подходящие под селекторы их consumer'ов
+            VirtualTopic virtualTopic = new VirtualTopic();
+            virtualTopic.setName("VirtualTopic.>");
+            virtualTopic.setPrefix("Consumer.*.");
+            virtualTopic.setSelectorAware(true);
+            VirtualDestinationInterceptor interceptor = new VirtualDestinationInterceptor();
+            interceptor.setVirtualDestinations(new VirtualDestination[]{virtualTopic});
+            broker.setDestinationInterceptors(new DestinationInterceptor[]{interceptor});
+        }
+
+        SystemUsage systemUsage = broker.getSystemUsage();
+        systemUsage.getMemoryUsage().setPercentOfJvmHeap(70);
+        systemUsage.getStoreUsage().setLimit(100L * 1024 * 1024 * 1024);
+        systemUsage.getTempUsage().setLimit(50L * 1024 * 1024 * 1024);
+
+        TransportConnector connector = broker.addConnector(
+                connectUris.get(index) + "?maximumConnections=1000&wireFormat.maxFrameSize=104857600");
+        connector.setName("openwire");
+        return broker;
+    }
+
+    private String peersUri(int index) {
+        List<String> peers = new ArrayList<>();
+        for (int peer : topology.peers(index, brokerCount)) {
+            peers.add(connectUris.get(peer));
+        }
+        return "static:(" + String.join(",", peers) + ")";
+    }
+
+    private void waitForBridges() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + BRIDGE_START_TIMEOUT_MILLIS;
+        for (int i = 0; i < brokers.size(); i++) {
+            BrokerService broker = brokers.get(i);
+            int expectedBridges = topology.peers(i, brokerCount).size();
+            for (NetworkConnector connector : broker.getNetworkConnectors()) {
+                while (connector.activeBridges().size() < expectedBridges) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IllegalStateException("Network bridges of " + broker.getBrokerName() + " did not start");
+                    }
+                    Thread.sleep(10);
+                }
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName(LOOPBACK))) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * @param index номер брокера, начиная с 0
+     * @return адрес транспортного коннектора брокера для клиентов, например tcp://127.0.0.1:50123
+     */
+    public String getConnectUri(int index) {
+        return connectUris.get(index);
+    }
+
+    public BrokerService getBroker(int index) {
+        return brokers.get(index);
+    }
+
+    public int getBrokerCount() {
+        return brokers.size();
+    }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    public BrokerStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return суммарный размер журналов KahaDB всех брокеров: сколько байт записано в журналы и ещё не удалено
+     * их очисткой; 0 для хранилища в памяти
+     */
+    public long getJournalBytes() throws IOException {
+        long bytes = 0;
+        for (BrokerService broker : brokers) {
+            if (broker.getPersistenceAdapter() instanceof KahaDBPersistenceAdapter) {
+                bytes += ((KahaDBPersistenceAdapter) broker.getPersistenceAdapter()).getStore().getJournal().getDiskSize();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Останавливает брокер: клиенты и мосты других брокеров теряют соединение с ним. Остановка штатная, поэтому
+     * незавершённые операции KahaDB успевают записаться - в отличие от аварии процесса брокера.
+     * Данные KahaDB сохраняются, и {@link #restartBroker(int)} поднимает брокер на том же адресе.
+     *
+     * @param index номер брокера, начиная с 0
+     */
+    public void stopBroker(int index) throws Exception {
+        BrokerService broker = brokers.get(index);
+        for (NetworkConnector connector : broker.getNetworkConnectors()) {
+            connector.stop();
+        }
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    /**
+     * Запускает остановленный брокер заново на том же адресе и с теми же данными и восстанавливает его
+     * сетевой коннектор. Мосты других брокеров к нему переподключаются сами.
+     *
+     * @param index номер брокера, начиная с 0
+     */
+    public void restartBroker(int index) throws Exception {
+        if (brokers.get(index).isStarted()) {
+            throw new IllegalStateException(brokers.get(index).getBrokerName() + " is running");
+        }
+        BrokerService broker = createBroker(index);
+        broker.start();
+        broker.waitUntilStarted();
+        brokers.set(index, broker);
+        startNetworkConnector(index);
+    }
+
+    /**
+     * Останавливает мосты и брокеры и удаляет каталог с данными. Ошибки остановки отдельных брокеров выводятся
+     * и не мешают остановить остальные; если поток прерван, остановка всё равно доводится до конца, а флаг
+     * прерывания восстанавливается.
+     *
+     * @throws IOException если не удалось удалить каталог с данными
+     */
+    @Override
+    public void close() throws IOException {
+        boolean interrupted = false;
+        // сначала разрываются все мосты, иначе они пытаются пересылать сообщения в уже остановленные брокеры
+        for (BrokerService broker : brokers) {
+            for (NetworkConnector connector : broker.getNetworkConnectors()) {
+                try {
+                    connector.stop();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        for (BrokerService broker : brokers) {
+            try {
+                broker.stop();
+                broker.waitUntilStopped();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        brokers.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        deleteRecursively(dataDirectory);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public static class Builder {
+
+        private int brokerCount = 2;
+        private boolean decreaseNetworkConsumerPriority = true;
+        private int networkPrefetchSize = 1000;
+        private boolean selectorAwareVirtualTopics;
+        private boolean conduitSubscriptions = true;
+        private boolean jmx;
+        private Topology topology = Topology.FULL_MESH;
+        private BrokerStore store = BrokerStore.KAHADB;
+
+        private Builder() {
+        }
+
+        /**
+         * @param brokerCount число брокеров в сети (по умолчанию 2)
+         */
+        public Builder brokers(int brokerCount) {
+            if (brokerCount < 1) {
+                throw new IllegalArgumentException("brokerCount must be positive: " + brokerCount);
+            }
+            this.brokerCount = brokerCount;
+            return this;
+        }
+
+        /**
+         * @param decreaseNetworkConsumerPriority понижать ли приоритет consumer'ов, подключенных через сеть брокеров
+         *                                        (по умолчанию true, как в docker/activemq.xml)
+         */
+        public Builder decreaseNetworkConsumerPriority(boolean decreaseNetworkConsumerPriority) {
+            this.decreaseNetworkConsumerPriority = decreaseNetworkConsumerPriority;
+            return this;
+        }
+
+        /**
+         * @param networkPrefetchSize prefetch consumer'ов сетевого моста (по умолчанию 1000, как в ActiveMQ)
+         */
+        public Builder networkPrefetchSize(int networkPrefetchSize) {
+            if (networkPrefetchSize < 1) {
+                throw new IllegalArgumentException("networkPrefetchSize must be positive: " + networkPrefetchSize);
+            }
+            this.networkPrefetchSize = networkPrefetchSize;
+            return this;
+        }
+
+        /**
+         * @param selectorAwareVirtualTopics копировать ли сообщения виртуальных топиков только в те очереди
+         *                                   consumer'ов, селекторам которых они подходят (по умолчанию false,
+         *                                   как в ActiveMQ)
+         */
+        public Builder selectorAwareVirtualTopics(boolean selectorAwareVirtualTopics) {
+            this.selectorAwareVirtualTopics = selectorAwareVirtualTopics;
+            return this;
+        }
+
+        /**
+         * @param conduitSubscriptions объединять ли consumer'ов одного destination'а удалённого брокера в одну
+         *                             подписку сетевого моста (по умолчанию true, как в ActiveMQ); объединённая
+         *                             подписка теряет селекторы consumer'ов
+         */
+        public Builder conduitSubscriptions(boolean conduitSubscriptions) {
+            this.conduitSubscriptions = conduitSubscriptions;
+            return this;
+        }
+
+        /**
+         * @param jmx регистрировать ли MBean'ы брокеров в platform MBeanServer (по умолчанию false)
+         */
+        public Builder jmx(boolean jmx) {
+            this.jmx = jmx;
+            return this;
+        }
+
+        /**
+         * @param topology как соединены брокеры (по умолчанию {@link Topology#FULL_MESH})
+         */
+        public Builder topology(Topology topology) {
+            this.topology = topology;
+            return this;
+        }
+
+        /**
+         * @param store хранилище сообщений брокеров (по умолчанию {@link BrokerStore#KAHADB})
+         */
+        public Builder store(BrokerStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Запускает брокеры и ждёт, пока между ними поднимутся все сетевые мосты.
+         */
+        public EmbeddedBrokerNetwork start() throws Exception {
+            EmbeddedBrokerNetwork network = new EmbeddedBrokerNetwork(this);
+            try {
+                network.startBrokers();
+            } catch (Exception e) {
+                network.close();
+                throw e;
+            }
+            return network;
+        }
+    }
+}
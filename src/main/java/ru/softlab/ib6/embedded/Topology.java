@@ -0,0 +1,52 @@
+package ru.softlab.ib6.embedded;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Топология сети брокеров: с какими брокерами соединяется каждый брокер.
+ *
+ * @author Andrey Grigorov
+ */
+public enum Topology {
+
+    /**
+     * Каждый брокер соединён со всеми остальными, как при multicast-обнаружении: сообщение проходит не больше
+     * одного сетевого моста.
+     */
+    FULL_MESH,
+
+    /**
+     * Брокеры соединены цепочкой 1 - 2 - ... - N: сообщение от первого брокера к последнему проходит N - 1 мостов.
+     */
+    CHAIN;
+
+    /**
+     * @return номера брокеров, с которыми соединяется брокер index
+     */
+    List<Integer> peers(int index, int brokerCount) {
+        List<Integer> peers = new ArrayList<>();
+        for (int i = 0; i < brokerCount; i++) {
+            if (i != index && (this == FULL_MESH || Math.abs(i - index) == 1)) {
+                peers.add(i);
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * @return наибольшее число мостов между двумя брокерами - networkTTL, при котором сообщения и подписки
+     * доходят до всех брокеров
+     */
+    int diameter(int brokerCount) {
+        return this == FULL_MESH ? 1 : Math.max(1, brokerCount - 1);
+    }
+
+    /**
+     * @param value "full_mesh" или "chain"
+     */
+    public static Topology parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,112 @@
+package ru.softlab.ib6.encoding;
+
+import ru.softlab.ib6.payload.Payload;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import javax.jms.TextMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Тип тела JMS-сообщения, в котором передаётся полезная нагрузка.
+ *
+ * @author Andrey Grigorov
+ */
+public enum BodyType {
+
+    BYTES {
+        @Override
+        Message create(Session session, Payload payload) throws JMSException {
+            BytesMessage message = session.createBytesMessage();
+            payload.writeTo(message);
+            return message;
+        }
+
+        @Override
+        int read(Message message, byte[] buffer) throws JMSException {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            int total = 0;
+            int read;
+            while ((read = bytesMessage.readBytes(buffer)) > 0) {
+                total += read;
+            }
+            return total;
+        }
+    },
+
+    /**
+     * Нагрузка передаётся строкой, по символу на байт (ISO-8859-1). ActiveMQ кодирует текст в UTF-8, поэтому
+     * байты больше 127 занимают в сообщении по два байта: двоичные данные в TextMessage увеличиваются, текст - нет.
+     */
+    TEXT {
+        @Override
+        Message create(Session session, Payload payload) throws JMSException {
+            return session.createTextMessage(StandardCharsets.ISO_8859_1.decode(payload.asReadOnlyBuffer()).toString());
+        }
+
+        @Override
+        int read(Message message, byte[] buffer) throws JMSException {
+            return ((TextMessage) message).getText().length();
+        }
+    },
+
+    STREAM {
+        @Override
+        Message create(Session session, Payload payload) throws JMSException {
+            StreamMessage message = session.createStreamMessage();
+            payload.writeTo(message);
+            return message;
+        }
+
+        @Override
+        int read(Message message, byte[] buffer) throws JMSException {
+            StreamMessage streamMessage = (StreamMessage) message;
+            int total = 0;
+            int read;
+            while ((read = streamMessage.readBytes(buffer)) > 0) {
+                total += read;
+            }
+            return total;
+        }
+    },
+
+    /**
+     * Нагрузка передаётся сериализованным массивом байт: к копированию массива добавляется Java-сериализация.
+     */
+    OBJECT {
+        @Override
+        Message create(Session session, Payload payload) throws JMSException {
+            return session.createObjectMessage(payload.toByteArray());
+        }
+
+        @Override
+        int read(Message message, byte[] buffer) throws JMSException {
+            return ((byte[]) ((ObjectMessage) message).getObject()).length;
+        }
+    };
+
+    /**
+     * Создаёт сообщение с нагрузкой в теле.
+     */
+    abstract Message create(Session session, Payload payload) throws JMSException;
+
+    /**
+     * Читает тело полученного сообщения целиком, как это сделал бы прикладной consumer.
+     *
+     * @param buffer буфер для чтения BytesMessage и StreamMessage, не меньше наибольшей нагрузки
+     * @return размер прочитанной нагрузки
+     */
+    abstract int read(Message message, byte[] buffer) throws JMSException;
+
+    /**
+     * @param value "bytes", "text", "stream" или "object"
+     */
+    public static BodyType parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
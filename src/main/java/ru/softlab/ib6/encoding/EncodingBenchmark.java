@@ -0,0 +1,229 @@
+package ru.softlab.ib6.encoding;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.command.ActiveMQMessage;
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.metrics.Delivery;
+import ru.softlab.ib6.payload.Payload;
+import ru.softlab.ib6.payload.PayloadProvider;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сравнение сжатия и типов тела сообщения: producer одного датацентра отправляет сообщения consumer'у другого,
+ * поэтому каждое сообщение проходит через сетевой мост.
+ *
+ * Размер сообщения на проводе - длина тела и свойств в том виде, в котором они пришли consumer'у (после сжатия,
+ * если оно включено), без заголовков OpenWire. Процессорное время измеряется в потоке producer'а на создание
+ * и отправку сообщения (сериализация и сжатие выполняются при отправке) и в потоке consumer'а на чтение тела
+ * (распаковка выполняется при первом чтении).
+ *
+ * Перед измерением отправляются сообщения прогрева, которые не учитываются.
+ *
+ * @author Andrey Grigorov
+ */
+public class EncodingBenchmark {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final DataCenter producerDataCenter;
+    private final DataCenter consumerDataCenter;
+    private final BodyType bodyType;
+    private final boolean compression;
+    private final PayloadProvider payloads;
+    private final int messages;
+    private final int warmUpMessages;
+    private final long timeoutMillis;
+
+    private EncodingBenchmark(Builder builder) {
+        this.producerDataCenter = builder.producerDataCenter;
+        this.consumerDataCenter = builder.consumerDataCenter;
+        this.bodyType = builder.bodyType;
+        this.compression = builder.compression;
+        this.payloads = builder.payloads;
+        this.messages = builder.messages;
+        this.warmUpMessages = builder.warmUpMessages;
+        this.timeoutMillis = builder.timeoutMillis;
+    }
+
+    public static Builder builder(DataCenter producerDataCenter, DataCenter consumerDataCenter) {
+        return new Builder(producerDataCenter, consumerDataCenter);
+    }
+
+    public EncodingResult run() throws Exception {
+        String queue = "dynamicQueues/encoding." + Long.toString(System.currentTimeMillis(), 36);
+        final byte[] readBuffer = new byte[payloads.getSizeDistribution().max()];
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong wireBytes = new AtomicLong();
+        final AtomicLong payloadBytes = new AtomicLong();
+        final AtomicLong consumerCpuNanos = new AtomicLong();
+        final AtomicLong lastReceiveMicros = new AtomicLong();
+
+        // Connection из JMS 1.1 не AutoCloseable: закрываются все соединения, которые успели создать
+        List<Connection> connections = new ArrayList<>();
+        try {
+            Connection consumerConnection = consumerDataCenter.getConnectionFactory().createConnection();
+            connections.add(consumerConnection);
+            Connection producerConnection = producerDataCenter.getConnectionFactory().createConnection();
+            connections.add(producerConnection);
+            // сжатие включается на соединении producer'а: consumer распаковывает сообщения независимо от своей настройки
+            ((ActiveMQConnection) producerConnection).setUseCompression(compression);
+
+            Session consumerSession = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = consumerSession.createConsumer(consumerDataCenter.lookup(queue));
+            consumer.setMessageListener(message -> {
+                long size = wireSize(message);
+                long cpuStart = THREADS.getCurrentThreadCpuTime();
+                try {
+                    int read = bodyType.read(message, readBuffer);
+                    consumerCpuNanos.addAndGet(THREADS.getCurrentThreadCpuTime() - cpuStart);
+                    wireBytes.addAndGet(size);
+                    payloadBytes.addAndGet(read);
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+                lastReceiveMicros.set(Clock.epochMicros());
+                received.incrementAndGet();
+            });
+            consumerConnection.start();
+
+            Session producerSession = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = producerSession.createProducer(producerDataCenter.lookup(queue));
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+
+            send(producerSession, producer, warmUpMessages);
+            if (!Delivery.await(received, warmUpMessages, timeoutMillis)) {
+                throw new IllegalStateException("Warm-up messages were not delivered in " + timeoutMillis + " ms");
+            }
+            received.set(0);
+            wireBytes.set(0);
+            payloadBytes.set(0);
+            consumerCpuNanos.set(0);
+
+            long startMicros = Clock.epochMicros();
+            long producerCpuNanos = send(producerSession, producer, messages);
+            boolean completed = Delivery.await(received, messages, timeoutMillis);
+            long elapsedMicros = Math.max(1, lastReceiveMicros.get() - startMicros);
+
+            EncodingResult result = new EncodingResult(bodyType, compression, payloads, messages, received.get(),
+                    completed, wireBytes.get(), payloadBytes.get(), producerCpuNanos, consumerCpuNanos.get(),
+                    elapsedMicros);
+            result.print(System.out);
+            return result;
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return процессорное время потока producer'а на создание и отправку сообщений
+     */
+    private long send(Session session, MessageProducer producer, int count) throws JMSException {
+        long cpuNanos = 0;
+        for (int i = 0; i < count; i++) {
+            Payload payload = payloads.next();
+            long cpuStart = THREADS.getCurrentThreadCpuTime();
+            Message message = bodyType.create(session, payload);
+            message.setLongProperty(Messages.SEND_TIME_PROPERTY, Clock.epochMicros());
+            producer.send(message);
+            cpuNanos += THREADS.getCurrentThreadCpuTime() - cpuStart;
+        }
+        return cpuNanos;
+    }
+
+    /**
+     * @return длина тела и свойств полученного сообщения до его чтения, то есть в том виде, в каком они пришли
+     */
+    private static long wireSize(Message message) {
+        if (!(message instanceof ActiveMQMessage)) {
+            return 0;
+        }
+        ActiveMQMessage activeMQMessage = (ActiveMQMessage) message;
+        long size = 0;
+        if (activeMQMessage.getContent() != null) {
+            size += activeMQMessage.getContent().getLength();
+        }
+        if (activeMQMessage.getMarshalledProperties() != null) {
+            size += activeMQMessage.getMarshalledProperties().getLength();
+        }
+        return size;
+    }
+
+    public static class Builder {
+
+        private final DataCenter producerDataCenter;
+        private final DataCenter consumerDataCenter;
+        private BodyType bodyType = BodyType.BYTES;
+        private boolean compression;
+        private PayloadProvider payloads = Messages.getPayloadProvider();
+        private int messages = 2000;
+        private int warmUpMessages = 200;
+        private long timeoutMillis = 60000;
+
+        private Builder(DataCenter producerDataCenter, DataCenter consumerDataCenter) {
+            this.producerDataCenter = producerDataCenter;
+            this.consumerDataCenter = consumerDataCenter;
+        }
+
+        public Builder bodyType(BodyType bodyType) {
+            this.bodyType = bodyType;
+            return this;
+        }
+
+        /**
+         * @param compression jms.useCompression соединения producer'а
+         */
+        public Builder compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder payloads(PayloadProvider payloads) {
+            this.payloads = payloads;
+            return this;
+        }
+
+        /**
+         * @param messages       число измеряемых сообщений
+         * @param warmUpMessages число сообщений прогрева
+         */
+        public Builder messages(int messages, int warmUpMessages) {
+            this.messages = messages;
+            this.warmUpMessages = warmUpMessages;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis максимальное время ожидания доставки
+         */
+        public Builder timeout(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        public EncodingBenchmark build() {
+            if (messages < 1 || warmUpMessages < 0) {
+                throw new IllegalStateException("messages must be positive: " + messages + ", " + warmUpMessages);
+            }
+            return new EncodingBenchmark(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.softlab.ib6.encoding;
+
+import ru.softlab.ib6.payload.PayloadProvider;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Результат сравнения для одного сочетания сжатия, типа тела и нагрузки.
+ *
+ * @author Andrey Grigorov
+ */
+public class EncodingResult {
+
+    private final BodyType bodyType;
+    private final boolean compression;
+    private final String payload;
+    private final long sent;
+    private final long received;
+    private final boolean completed;
+    private final long wireBytes;
+    private final long payloadBytes;
+    private final long producerCpuNanos;
+    private final long consumerCpuNanos;
+    private final long elapsedMicros;
+
+    EncodingResult(BodyType bodyType, boolean compression, PayloadProvider payloads, long sent, long received,
+                   boolean completed, long wireBytes, long payloadBytes, long producerCpuNanos, long consumerCpuNanos,
+                   long elapsedMicros) {
+        this.bodyType = bodyType;
+        this.compression = compression;
+        this.payload = payloads.toString();
+        this.sent = sent;
+        this.received = received;
+        this.completed = completed;
+        this.wireBytes = wireBytes;
+        this.payloadBytes = payloadBytes;
+        this.producerCpuNanos = producerCpuNanos;
+        this.consumerCpuNanos = consumerCpuNanos;
+        this.elapsedMicros = elapsedMicros;
+    }
+
+    public static void printHeader(PrintStream out) {
+        out.println(String.format("%-6s %-11s %-24s %12s %7s %14s %14s %10s %8s",
+                "body", "compression", "payload", "wire B/msg", "ratio", "send CPU us", "read CPU us", "msg/s", "MB/s"));
+    }
+
+    public BodyType getBodyType() {
+        return bodyType;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return средний размер тела и свойств сообщения на проводе
+     */
+    public double getWireBytesPerMessage() {
+        return received == 0 ? 0 : wireBytes / (double) received;
+    }
+
+    /**
+     * @return отношение размера на проводе к размеру нагрузки
+     */
+    public double getCompressionRatio() {
+        return payloadBytes == 0 ? 0 : wireBytes / (double) payloadBytes;
+    }
+
+    /**
+     * @return процессорное время producer'а на одно отправленное сообщение в микросекундах
+     */
+    public double getProducerCpuMicros() {
+        return sent == 0 ? 0 : producerCpuNanos / 1000.0 / sent;
+    }
+
+    /**
+     * @return процессорное время consumer'а на чтение одного сообщения в микросекундах
+     */
+    public double getConsumerCpuMicros() {
+        return received == 0 ? 0 : consumerCpuNanos / 1000.0 / received;
+    }
+
+    public double getThroughput() {
+        return received * 1e6 / elapsedMicros;
+    }
+
+    public void print(PrintStream out) {
+        out.println(String.format("%-6s %-11s %-24s %12.0f %7.2f %14.1f %14.1f %10.1f %8.2f%s",
+                bodyType.name().toLowerCase(Locale.ROOT), compression ? "on" : "off", payload, getWireBytesPerMessage(),
+                getCompressionRatio(), getProducerCpuMicros(), getConsumerCpuMicros(), getThroughput(),
+                payloadBytes / (double) elapsedMicros, completed ? "" : " TIMEOUT"));
+    }
+}
@@ -0,0 +1,21 @@
+package ru.softlab.ib6.failover;
+
+/**
+ * Управление брокером, который останавливается во время сценария отказа.
+ *
+ * @author Andrey Grigorov
+ */
+public interface BrokerControl {
+
+    /**
+     * @return имя брокера для вывода результатов
+     */
+    String getName();
+
+    void stop() throws Exception;
+
+    /**
+     * Запускает брокер на том же адресе, на котором он работал до остановки.
+     */
+    void start() throws Exception;
+}
@@ -0,0 +1,49 @@
+package ru.softlab.ib6.failover;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Останавливает и запускает внешний брокер командами операционной системы, например
+ * "docker-compose -f docker/docker-compose.yml stop amq01" и "... start amq01".
+ *
+ * Команда разбивается на аргументы по пробелам, её вывод передаётся в вывод текущего процесса.
+ *
+ * @author Andrey Grigorov
+ */
+public class CommandBrokerControl implements BrokerControl {
+
+    private final String name;
+    private final String stopCommand;
+    private final String startCommand;
+
+    public CommandBrokerControl(String name, String stopCommand, String startCommand) {
+        this.name = name;
+        this.stopCommand = stopCommand;
+        this.startCommand = startCommand;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        execute(stopCommand);
+    }
+
+    @Override
+    public void start() throws Exception {
+        execute(startCommand);
+    }
+
+    private static void execute(String command) throws Exception {
+        List<String> arguments = Arrays.asList(command.trim().split("\\s+"));
+        Process process = new ProcessBuilder(arguments).inheritIO().start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("Command '" + command + "' exited with code " + exitCode);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ru.softlab.ib6.failover;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.transport.failover.FailoverTransport;
+
+import javax.jms.Connection;
+import java.net.URI;
+
+/**
+ * Следит за тем, к какому брокеру подключено failover-соединение.
+ *
+ * Состояние транспорта опрашивается по {@link #sample(long)} с небольшим периодом, поэтому моменты отключения
+ * и переподключения известны с точностью до этого периода. Основным считается брокер, к которому соединение
+ * было подключено при создании монитора (с randomize=false - первый адрес failover URL).
+ *
+ * @author Andrey Grigorov
+ */
+class ConnectionMonitor {
+
+    private final String name;
+    private final FailoverTransport transport;
+    private final URI priorityUri;
+    private long disconnectedMicros = -1;
+    private long reconnectedMicros = -1;
+    private URI reconnectedUri;
+    private long leftPriorityMicros = -1;
+    private long backOnPriorityMicros = -1;
+
+    ConnectionMonitor(String name, Connection connection) {
+        this.name = name;
+        FailoverTransport failover = ((ActiveMQConnection) connection).getTransport().narrow(FailoverTransport.class);
+        if (failover == null) {
+            throw new IllegalArgumentException(name + " is not a failover connection");
+        }
+        this.transport = failover;
+        this.priorityUri = failover.getConnectedTransportURI();
+    }
+
+    /**
+     * @param nowMicros время опроса, {@link ru.softlab.ib6.metrics.Clock#epochMicros()}
+     */
+    synchronized void sample(long nowMicros) {
+        URI connectedUri = transport.isConnected() ? transport.getConnectedTransportURI() : null;
+        if (connectedUri == null) {
+            if (disconnectedMicros < 0) {
+                disconnectedMicros = nowMicros;
+            }
+        } else if (disconnectedMicros >= 0 && reconnectedMicros < 0) {
+            reconnectedMicros = nowMicros;
+            reconnectedUri = connectedUri;
+        }
+        boolean onPriority = priorityUri != null && priorityUri.equals(connectedUri);
+        if (!onPriority && leftPriorityMicros < 0) {
+            leftPriorityMicros = nowMicros;
+        } else if (onPriority && leftPriorityMicros >= 0 && backOnPriorityMicros < 0) {
+            backOnPriorityMicros = nowMicros;
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    URI getPriorityUri() {
+        return priorityUri;
+    }
+
+    /**
+     * @return первый момент, когда соединение было не подключено ни к одному брокеру, или -1
+     */
+    synchronized long getDisconnectedMicros() {
+        return disconnectedMicros;
+    }
+
+    /**
+     * @return момент переподключения после первого отключения или -1
+     */
+    synchronized long getReconnectedMicros() {
+        return reconnectedMicros;
+    }
+
+    /**
+     * @return брокер, к которому соединение переподключилось после первого отключения
+     */
+    synchronized URI getReconnectedUri() {
+        return reconnectedUri;
+    }
+
+    /**
+     * @return момент возврата на основной брокер после того, как соединение его покинуло, или -1
+     */
+    synchronized long getBackOnPriorityMicros() {
+        return backOnPriorityMicros;
+    }
+}
@@ -0,0 +1,104 @@
+package ru.softlab.ib6.failover;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Учёт отправленных и полученных сообщений по correlation ID: какие подтверждённые брокером сообщения
+ * не дошли до consumer'ов и какие были получены несколько раз.
+ *
+ * @author Andrey Grigorov
+ */
+class DeliveryLedger {
+
+    private final long startMicros;
+    private final Set<String> sent = ConcurrentHashMap.newKeySet();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicInteger> deliveries = new ConcurrentHashMap<>();
+    private final AtomicLongArray receivedPerSecond;
+
+    /**
+     * @param startMicros момент начала отправки, от которого считаются секунды
+     * @param seconds     сколько секунд учитывать в посекундной скорости получения
+     */
+    DeliveryLedger(long startMicros, int seconds) {
+        this.startMicros = startMicros;
+        this.receivedPerSecond = new AtomicLongArray(seconds);
+    }
+
+    /**
+     * Отправка завершилась без исключения: брокер подтвердил сообщение.
+     */
+    void sent(String correlationId) {
+        sent.add(correlationId);
+    }
+
+    /**
+     * Отправка завершилась исключением: сообщение могло как дойти до брокера, так и потеряться.
+     */
+    void failed(String correlationId) {
+        failed.add(correlationId);
+    }
+
+    void received(String correlationId, long receiveMicros) {
+        deliveries.computeIfAbsent(correlationId, id -> new AtomicInteger()).incrementAndGet();
+        int second = (int) ((receiveMicros - startMicros) / 1000000);
+        if (second >= 0 && second < receivedPerSecond.length()) {
+            receivedPerSecond.incrementAndGet(second);
+        }
+    }
+
+    long getSent() {
+        return sent.size();
+    }
+
+    long getFailed() {
+        return failed.size();
+    }
+
+    long getReceivedUnique() {
+        return deliveries.size();
+    }
+
+    /**
+     * @return подтверждённые брокером сообщения, которые не получил ни один consumer
+     */
+    long getLost() {
+        long lost = 0;
+        for (String correlationId : sent) {
+            if (!deliveries.containsKey(correlationId)) {
+                lost++;
+            }
+        }
+        return lost;
+    }
+
+    /**
+     * @return повторные получения сообщений сверх первого
+     */
+    long getDuplicates() {
+        long duplicates = 0;
+        for (AtomicInteger count : deliveries.values()) {
+            duplicates += count.get() - 1;
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return true, если получены все подтверждённые брокером сообщения
+     */
+    boolean isComplete() {
+        return getLost() == 0;
+    }
+
+    long[] getReceivedPerSecond() {
+        long[] result = new long[receivedPerSecond.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = receivedPerSecond.get(i);
+        }
+        return result;
+    }
+}
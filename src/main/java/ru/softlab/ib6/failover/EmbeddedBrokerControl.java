@@ -0,0 +1,37 @@
+package ru.softlab.ib6.failover;
+
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+
+/**
+ * Останавливает и запускает брокер сети, запущенной внутри JVM.
+ *
+ * @author Andrey Grigorov
+ */
+public class EmbeddedBrokerControl implements BrokerControl {
+
+    private final EmbeddedBrokerNetwork network;
+    private final int index;
+
+    /**
+     * @param index номер брокера в сети, начиная с 0
+     */
+    public EmbeddedBrokerControl(EmbeddedBrokerNetwork network, int index) {
+        this.network = network;
+        this.index = index;
+    }
+
+    @Override
+    public String getName() {
+        return network.getBroker(index).getBrokerName();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        network.stopBroker(index);
+    }
+
+    @Override
+    public void start() throws Exception {
+        network.restartBroker(index);
+    }
+}
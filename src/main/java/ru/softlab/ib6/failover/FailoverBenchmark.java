@@ -0,0 +1,221 @@
+package ru.softlab.ib6.failover;
+
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сценарий отказа брокера под постоянной нагрузкой.
+ *
+ * В каждом датацентре producer отправляет сообщения в очередь с постоянной интенсивностью, а consumer их получает.
+ * После разгона брокер останавливается, через заданное время запускается снова, и нагрузка продолжается ещё
+ * некоторое время. Для producer'ов и consumer'ов измеряется, сколько соединение было без брокера и когда
+ * вернулось на основной брокер; для отправки - самая долгая блокировка; для получения - посекундная скорость.
+ * По correlation ID считаются потерянные и повторно полученные сообщения.
+ *
+ * @author Andrey Grigorov
+ */
+public class FailoverBenchmark {
+
+    private static final long SAMPLE_MILLIS = 10;
+    private static final long POLL_MILLIS = 100;
+
+    private final String options;
+    private final List<DataCenter> dataCenters;
+    private final BrokerControl broker;
+    private final int rate;
+    private final long warmUpMillis;
+    private final long outageMillis;
+    private final long recoveryMillis;
+    private final long drainTimeoutMillis;
+    private final long stallThresholdMillis;
+
+    private FailoverBenchmark(Builder builder) {
+        this.options = builder.options;
+        this.dataCenters = builder.dataCenters;
+        this.broker = builder.broker;
+        this.rate = builder.rate;
+        this.warmUpMillis = builder.warmUpMillis;
+        this.outageMillis = builder.outageMillis;
+        this.recoveryMillis = builder.recoveryMillis;
+        this.drainTimeoutMillis = builder.drainTimeoutMillis;
+        this.stallThresholdMillis = builder.stallThresholdMillis;
+    }
+
+    /**
+     * @param options     параметры failover-транспорта, с которыми созданы подключения датацентров; только для вывода
+     * @param dataCenters датацентры с producer'ом и consumer'ом в каждом
+     * @param broker      брокер, который останавливается во время сценария
+     */
+    public static Builder builder(String options, List<DataCenter> dataCenters, BrokerControl broker) {
+        return new Builder(options, dataCenters, broker);
+    }
+
+    public FailoverResult run() throws Exception {
+        String queue = "dynamicQueues/failover." + Long.toString(System.currentTimeMillis(), 36);
+        long startMicros = Clock.epochMicros();
+        int seconds = (int) TimeUnit.MILLISECONDS.toSeconds(warmUpMillis + outageMillis + recoveryMillis
+                + drainTimeoutMillis) + 60;
+        final DeliveryLedger ledger = new DeliveryLedger(startMicros, seconds);
+        final List<ConnectionMonitor> monitors = new ArrayList<>();
+        List<FailoverProducer> producers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<Connection> connections = new ArrayList<>();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (DataCenter dataCenter : dataCenters) {
+                Destination destination = dataCenter.lookup(queue);
+                Connection consumerConnection = dataCenter.getConnectionFactory().createConnection();
+                connections.add(consumerConnection);
+                Session session = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageConsumer consumer = session.createConsumer(destination);
+                consumer.setMessageListener(message -> {
+                    try {
+                        ledger.received(message.getJMSCorrelationID(), Clock.epochMicros());
+                    } catch (JMSException e) {
+                        e.printStackTrace();
+                    }
+                });
+                consumerConnection.start();
+                monitors.add(new ConnectionMonitor(dataCenter.getName() + " consumer", consumerConnection));
+
+                Connection producerConnection = dataCenter.getConnectionFactory().createConnection();
+                connections.add(producerConnection);
+                producerConnection.start();
+                monitors.add(new ConnectionMonitor(dataCenter.getName() + " producer", producerConnection));
+                producers.add(new FailoverProducer(dataCenter.getName(), producerConnection, destination, rate,
+                        stallThresholdMillis, ledger));
+            }
+            sampler.scheduleAtFixedRate(() -> {
+                long now = Clock.epochMicros();
+                for (ConnectionMonitor monitor : monitors) {
+                    monitor.sample(now);
+                }
+            }, 0, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+            for (FailoverProducer producer : producers) {
+                Thread thread = new Thread(producer, producer.getName() + " producer");
+                threads.add(thread);
+                thread.start();
+            }
+
+            Thread.sleep(warmUpMillis);
+            long stopMicros = Clock.epochMicros();
+            broker.stop();
+            Thread.sleep(outageMillis);
+            broker.start();
+            long restartMicros = Clock.epochMicros();
+            Thread.sleep(recoveryMillis);
+
+            for (FailoverProducer producer : producers) {
+                producer.stop();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long sendEndMicros = Clock.epochMicros();
+            awaitDelivery(ledger);
+            sampler.shutdown();
+
+            FailoverResult result = new FailoverResult(options, broker.getName(), startMicros, stopMicros,
+                    restartMicros, sendEndMicros, monitors, producers, ledger);
+            result.print(System.out);
+            return result;
+        } finally {
+            sampler.shutdownNow();
+            for (FailoverProducer producer : producers) {
+                producer.stop();
+            }
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ждёт получения всех подтверждённых сообщений; сообщения, которые не пришли за drainTimeout, считаются
+     * потерянными.
+     */
+    private void awaitDelivery(DeliveryLedger ledger) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        while (!ledger.isComplete() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    public static class Builder {
+
+        private final String options;
+        private final List<DataCenter> dataCenters;
+        private final BrokerControl broker;
+        private int rate = 200;
+        private long warmUpMillis = 5000;
+        private long outageMillis = 5000;
+        private long recoveryMillis = 10000;
+        private long drainTimeoutMillis = 15000;
+        private long stallThresholdMillis = 100;
+
+        private Builder(String options, List<DataCenter> dataCenters, BrokerControl broker) {
+            this.options = options;
+            this.dataCenters = new ArrayList<>(dataCenters);
+            this.broker = broker;
+        }
+
+        /**
+         * @param rate сообщений в секунду от producer'а каждого датацентра
+         */
+        public Builder rate(int rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        /**
+         * @param warmUpMillis   нагрузка до остановки брокера
+         * @param outageMillis   сколько брокер остаётся остановленным
+         * @param recoveryMillis нагрузка после запуска брокера
+         */
+        public Builder timeline(long warmUpMillis, long outageMillis, long recoveryMillis) {
+            this.warmUpMillis = warmUpMillis;
+            this.outageMillis = outageMillis;
+            this.recoveryMillis = recoveryMillis;
+            return this;
+        }
+
+        /**
+         * @param drainTimeoutMillis сколько ждать недоставленные сообщения после окончания отправки
+         */
+        public Builder drainTimeout(long drainTimeoutMillis) {
+            this.drainTimeoutMillis = drainTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param stallThresholdMillis отправка дольше этого времени считается остановкой producer'а
+         */
+        public Builder stallThreshold(long stallThresholdMillis) {
+            this.stallThresholdMillis = stallThresholdMillis;
+            return this;
+        }
+
+        public FailoverBenchmark build() {
+            if (dataCenters.isEmpty() || rate < 1) {
+                throw new IllegalStateException("data centers and rate must be positive");
+            }
+            return new FailoverBenchmark(this);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ru.softlab.ib6.failover;
+
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Producer с постоянной интенсивностью отправки. Если отправка блокируется, пока failover-транспорт ищет
+ * брокер, следующие сообщения уходят сразу после неё, пока producer не догонит график.
+ *
+ * @author Andrey Grigorov
+ */
+class FailoverProducer implements Runnable {
+
+    private final String name;
+    private final Connection connection;
+    private final Destination destination;
+    private final long intervalNanos;
+    private final long stallThresholdNanos;
+    private final DeliveryLedger ledger;
+    private volatile boolean running = true;
+    private volatile long sent;
+    private volatile long maxSendNanos;
+    private volatile long maxSendStartMicros;
+    private volatile long stalledNanos;
+
+    FailoverProducer(String name, Connection connection, Destination destination, int rate,
+                     long stallThresholdMillis, DeliveryLedger ledger) {
+        this.name = name;
+        this.connection = connection;
+        this.destination = destination;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(stallThresholdMillis);
+        this.ledger = ledger;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            try {
+                MessageProducer producer = session.createProducer(destination);
+                producer.setTimeToLive(Messages.TIME_TO_LIVE);
+                long startNanos = System.nanoTime();
+                for (long i = 0; running; i++) {
+                    long delay = startNanos + i * intervalNanos - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                    send(session, producer, name + "-" + i);
+                }
+            } finally {
+                session.close();
+            }
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void send(Session session, MessageProducer producer, String correlationId) throws JMSException {
+        BytesMessage message = Messages.createBytesMessage(session, correlationId, null);
+        long startMicros = Clock.epochMicros();
+        long start = System.nanoTime();
+        try {
+            producer.send(message);
+            ledger.sent(correlationId);
+            sent++;
+        } catch (JMSException e) {
+            ledger.failed(correlationId);
+        }
+        long duration = System.nanoTime() - start;
+        if (duration > maxSendNanos) {
+            maxSendNanos = duration;
+            maxSendStartMicros = startMicros;
+        }
+        if (duration > stallThresholdNanos) {
+            stalledNanos += duration;
+        }
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getSent() {
+        return sent;
+    }
+
+    long getMaxSendMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxSendNanos);
+    }
+
+    /**
+     * @return начало самой долгой отправки
+     */
+    long getMaxSendStartMicros() {
+        return maxSendStartMicros;
+    }
+
+    /**
+     * @return суммарное время отправок, заблокированных дольше порога
+     */
+    long getStalledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stalledNanos);
+    }
+}
@@ -0,0 +1,197 @@
+package ru.softlab.ib6.failover;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат сценария отказа брокера.
+ *
+ * @author Andrey Grigorov
+ */
+public class FailoverResult {
+
+    private final String options;
+    private final String broker;
+    private final long startMicros;
+    private final long stopMicros;
+    private final long restartMicros;
+    private final long sendEndMicros;
+    private final List<ConnectionMonitor> monitors;
+    private final List<FailoverProducer> producers;
+    private final long sent;
+    private final long failed;
+    private final long receivedUnique;
+    private final long lost;
+    private final long duplicates;
+    private final long[] receivedPerSecond;
+
+    FailoverResult(String options, String broker, long startMicros, long stopMicros, long restartMicros,
+                   long sendEndMicros, List<ConnectionMonitor> monitors, List<FailoverProducer> producers,
+                   DeliveryLedger ledger) {
+        this.options = options;
+        this.broker = broker;
+        this.startMicros = startMicros;
+        this.stopMicros = stopMicros;
+        this.restartMicros = restartMicros;
+        this.sendEndMicros = sendEndMicros;
+        this.monitors = Collections.unmodifiableList(new ArrayList<>(monitors));
+        this.producers = Collections.unmodifiableList(new ArrayList<>(producers));
+        this.sent = ledger.getSent();
+        this.failed = ledger.getFailed();
+        this.receivedUnique = ledger.getReceivedUnique();
+        this.lost = ledger.getLost();
+        this.duplicates = ledger.getDuplicates();
+        this.receivedPerSecond = ledger.getReceivedPerSecond();
+    }
+
+    public String getOptions() {
+        return options;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return подтверждённые брокером сообщения, которые не получил ни один consumer
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return наибольшее время без брокера среди всех соединений или -1, если ни одно не отключалось
+     */
+    public long getMaxReconnectMillis() {
+        long max = -1;
+        for (ConnectionMonitor monitor : monitors) {
+            if (monitor.getReconnectedMicros() >= 0) {
+                max = Math.max(max, (monitor.getReconnectedMicros() - monitor.getDisconnectedMicros()) / 1000);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return наибольшее время от запуска брокера до возврата соединения на основной брокер или -1, если ни одно
+     * соединение не вернулось
+     */
+    public long getMaxBackOnPriorityMillis() {
+        long max = -1;
+        for (ConnectionMonitor monitor : monitors) {
+            if (monitor.getBackOnPriorityMicros() >= 0) {
+                max = Math.max(max, Math.max(0, monitor.getBackOnPriorityMicros() - restartMicros) / 1000);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return самая долгая блокировка отправки среди всех producer'ов
+     */
+    public long getMaxSendStallMillis() {
+        long max = 0;
+        for (FailoverProducer producer : producers) {
+            max = Math.max(max, producer.getMaxSendMillis());
+        }
+        return max;
+    }
+
+    /**
+     * @return средняя скорость получения до остановки брокера без первой секунды разгона
+     */
+    public double getBaselineRate() {
+        int stopSecond = second(stopMicros);
+        long total = 0;
+        int seconds = 0;
+        for (int i = 1; i < stopSecond && i < receivedPerSecond.length; i++) {
+            total += receivedPerSecond[i];
+            seconds++;
+        }
+        return seconds == 0 ? 0 : total / (double) seconds;
+    }
+
+    /**
+     * @return наименьшая скорость получения за полные секунды от остановки брокера до конца отправки
+     */
+    public long getMinRate() {
+        long min = Long.MAX_VALUE;
+        for (int i = second(stopMicros); i < second(sendEndMicros) && i < receivedPerSecond.length; i++) {
+            min = Math.min(min, receivedPerSecond[i]);
+        }
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * @return число секунд от остановки брокера до конца отправки, в которые скорость получения была ниже
+     * половины исходной
+     */
+    public int getDipSeconds() {
+        double threshold = getBaselineRate() / 2;
+        int dip = 0;
+        for (int i = second(stopMicros); i < second(sendEndMicros) && i < receivedPerSecond.length; i++) {
+            if (receivedPerSecond[i] < threshold) {
+                dip++;
+            }
+        }
+        return dip;
+    }
+
+    private int second(long micros) {
+        return (int) ((micros - startMicros) / 1000000);
+    }
+
+    private double seconds(long micros) {
+        return (micros - startMicros) / 1e6;
+    }
+
+    public void print(PrintStream out) {
+        out.println();
+        out.println("Failover options: " + options);
+        out.println(String.format("%s stopped at %.1f s, restarted at %.1f s, sending ended at %.1f s",
+                broker, seconds(stopMicros), seconds(restartMicros), seconds(sendEndMicros)));
+        for (ConnectionMonitor monitor : monitors) {
+            StringBuilder line = new StringBuilder(String.format("  %-28s", monitor.getName()));
+            if (monitor.getDisconnectedMicros() < 0) {
+                line.append(" stayed connected to ").append(monitor.getPriorityUri());
+            } else {
+                line.append(String.format(" disconnected at %.2f s", seconds(monitor.getDisconnectedMicros())));
+                if (monitor.getReconnectedMicros() >= 0) {
+                    line.append(String.format(", reconnected after %d ms to %s",
+                            (monitor.getReconnectedMicros() - monitor.getDisconnectedMicros()) / 1000,
+                            monitor.getReconnectedUri()));
+                } else {
+                    line.append(", not reconnected");
+                }
+                if (monitor.getBackOnPriorityMicros() >= 0) {
+                    line.append(String.format(", back on priority broker %d ms after restart",
+                            Math.max(0, monitor.getBackOnPriorityMicros() - restartMicros) / 1000));
+                } else {
+                    line.append(", not back on priority broker");
+                }
+            }
+            out.println(line);
+        }
+        for (FailoverProducer producer : producers) {
+            out.println(String.format("  %-28s sent %d, longest send %d ms at %.2f s, stalled %d ms in total",
+                    producer.getName() + " producer", producer.getSent(), producer.getMaxSendMillis(),
+                    seconds(producer.getMaxSendStartMicros()), producer.getStalledMillis()));
+        }
+        out.println(String.format("Received per second: baseline %.0f msg/s, min %d msg/s after stop, "
+                + "%d s below half of baseline", getBaselineRate(), getMinRate(), getDipSeconds()));
+        StringBuilder timeline = new StringBuilder(" ");
+        int last = Math.min(receivedPerSecond.length - 1, second(sendEndMicros));
+        for (int i = 0; i <= last; i++) {
+            timeline.append(' ').append(receivedPerSecond[i]);
+        }
+        out.println(timeline);
+        out.println(String.format("Sent %d (failed %d), received %d unique, lost %d, duplicates %d",
+                sent, failed, receivedUnique, lost, duplicates));
+    }
+}
@@ -0,0 +1,251 @@
+package ru.softlab.ib6.fanout;
+
+import ru.softlab.ib6.bridge.BridgeStatistics;
+import ru.softlab.ib6.bridge.BridgeStatisticsSource;
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка через топик множеству подписчиков на нескольких брокерах.
+ *
+ * К каждому брокеру подключается одинаковое число подписчиков, publisher'ы распределяются по брокерам по кругу
+ * и отправляют сообщения одновременно. Первые slowSubscribers подписчиков обрабатывают сообщения медленно:
+ * когда у такого подписчика накапливается больше сообщений, чем позволяет constantPendingMessageLimitStrategy
+ * брокера, старые сообщения отбрасываются, и подписчик их не получает.
+ *
+ * Доставка считается законченной, когда все подписчики получили все сообщения или число полученных сообщений
+ * не меняется дольше idleTimeout.
+ *
+ * @author Andrey Grigorov
+ */
+public class FanOutBenchmark {
+
+    static final String PUBLISHER_PROPERTY = "publisher";
+    static final String SEQUENCE_PROPERTY = "sequence";
+
+    private static final long DEMAND_TIMEOUT_MILLIS = 30000;
+    private static final long POLL_MILLIS = 100;
+
+    private final String topology;
+    private final List<DataCenter> brokers;
+    private final int publishers;
+    private final int subscribersPerBroker;
+    private final int messagesPerPublisher;
+    private final int slowSubscribers;
+    private final long slowDelayMillis;
+    private final long idleTimeoutMillis;
+    private final BridgeStatisticsSource statistics;
+
+    private FanOutBenchmark(Builder builder) {
+        this.topology = builder.topology;
+        this.brokers = builder.brokers;
+        this.publishers = builder.publishers;
+        this.subscribersPerBroker = builder.subscribersPerBroker;
+        this.messagesPerPublisher = builder.messagesPerPublisher;
+        this.slowSubscribers = builder.slowSubscribers;
+        this.slowDelayMillis = builder.slowDelayMillis;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.statistics = builder.statistics;
+    }
+
+    /**
+     * @param topology название топологии для вывода результатов
+     * @param brokers  брокеры сети; подписчики и publisher'ы подключаются к каждому из них
+     */
+    public static Builder builder(String topology, List<DataCenter> brokers) {
+        return new Builder(topology, brokers);
+    }
+
+    public FanOutResult run() throws Exception {
+        String topicName = "dynamicTopics/fanout." + Long.toString(System.currentTimeMillis(), 36);
+        FanOutLatency latency = new FanOutLatency();
+        List<Subscriber> subscribers = new ArrayList<>();
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (DataCenter broker : brokers) {
+                Connection connection = broker.getConnectionFactory().createConnection();
+                connections.add(connection);
+                for (int s = 0; s < subscribersPerBroker; s++) {
+                    Subscriber subscriber = new Subscriber(broker.getName() + " subscriber " + (s + 1), publishers,
+                            subscribers.size() < slowSubscribers ? slowDelayMillis : 0, latency);
+                    subscribers.add(subscriber);
+                    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                    MessageConsumer consumer = session.createConsumer(broker.lookup(topicName));
+                    consumer.setMessageListener(subscriber);
+                }
+                connection.start();
+            }
+            if (statistics != null) {
+                // кроме локальных подписчиков на каждом брокере должна появиться хотя бы одна подписка моста
+                if (!statistics.awaitStableConsumers(topicName.substring(topicName.indexOf('/') + 1),
+                        subscribersPerBroker + 1, DEMAND_TIMEOUT_MILLIS)) {
+                    throw new IllegalStateException("Subscriptions to " + topicName + " did not reach every broker in "
+                            + DEMAND_TIMEOUT_MILLIS + " ms");
+                }
+            }
+
+            BridgeStatistics before = statistics != null ? statistics.snapshot() : null;
+            long startMicros = Clock.epochMicros();
+            List<Thread> threads = new ArrayList<>();
+            final List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+            for (int p = 0; p < publishers; p++) {
+                final int publisher = p;
+                final DataCenter broker = brokers.get(p % brokers.size());
+                final Connection connection = connections.get(p % brokers.size());
+                Thread thread = new Thread(() -> {
+                    try {
+                        publish(broker, connection, topicName, publisher);
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }, "publisher " + (p + 1));
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long publishMillis = TimeUnit.MICROSECONDS.toMillis(Clock.epochMicros() - startMicros);
+            for (Exception failure : failures) {
+                failure.printStackTrace();
+            }
+
+            long expected = (long) publishers * messagesPerPublisher * subscribers.size();
+            awaitDelivery(subscribers, expected);
+            long bridgeForwards = -1;
+            if (before != null) {
+                bridgeForwards = statistics.snapshot().minus(before).getForwarded();
+            }
+
+            FanOutResult result = new FanOutResult(topology, brokers.size(), publishers,
+                    (long) publishers * messagesPerPublisher, publishMillis, startMicros, subscribers,
+                    latency, bridgeForwards);
+            result.print(System.out);
+            return result;
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void publish(DataCenter broker, Connection connection, String topicName, int publisher) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageProducer producer = session.createProducer(broker.lookup(topicName));
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+            for (int i = 0; i < messagesPerPublisher; i++) {
+                BytesMessage message = Messages.createBytesMessage(session,
+                        broker.getName() + " publisher " + (publisher + 1) + " - " + i, null);
+                message.setIntProperty(PUBLISHER_PROPERTY, publisher);
+                message.setIntProperty(SEQUENCE_PROPERTY, i);
+                producer.send(message);
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    private void awaitDelivery(List<Subscriber> subscribers, long expected) throws InterruptedException {
+        long lastTotal = -1;
+        long lastChange = System.currentTimeMillis();
+        while (true) {
+            long total = 0;
+            for (Subscriber subscriber : subscribers) {
+                total += subscriber.getUnique();
+            }
+            if (total >= expected) {
+                return;
+            }
+            if (total != lastTotal) {
+                lastTotal = total;
+                lastChange = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastChange > idleTimeoutMillis) {
+                return;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    public static class Builder {
+
+        private final String topology;
+        private final List<DataCenter> brokers;
+        private int publishers = 2;
+        private int subscribersPerBroker = 4;
+        private int messagesPerPublisher = 1000;
+        private int slowSubscribers = 0;
+        private long slowDelayMillis = 5;
+        private long idleTimeoutMillis = 3000;
+        private BridgeStatisticsSource statistics;
+
+        private Builder(String topology, List<DataCenter> brokers) {
+            this.topology = topology;
+            this.brokers = new ArrayList<>(brokers);
+        }
+
+        public Builder publishers(int publishers) {
+            this.publishers = publishers;
+            return this;
+        }
+
+        public Builder subscribersPerBroker(int subscribersPerBroker) {
+            this.subscribersPerBroker = subscribersPerBroker;
+            return this;
+        }
+
+        public Builder messagesPerPublisher(int messagesPerPublisher) {
+            this.messagesPerPublisher = messagesPerPublisher;
+            return this;
+        }
+
+        /**
+         * @param slowSubscribers число медленных подписчиков
+         * @param delayMillis     время обработки одного сообщения медленным подписчиком
+         */
+        public Builder slowSubscribers(int slowSubscribers, long delayMillis) {
+            this.slowSubscribers = slowSubscribers;
+            this.slowDelayMillis = delayMillis;
+            return this;
+        }
+
+        /**
+         * @param idleTimeoutMillis сколько ждать новых сообщений, прежде чем считать недоставленные потерянными
+         */
+        public Builder idleTimeout(long idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param statistics источник счётчиков мостов; без него не измеряется число пересылок между брокерами
+         */
+        public Builder statistics(BridgeStatisticsSource statistics) {
+            this.statistics = statistics;
+            return this;
+        }
+
+        public FanOutBenchmark build() {
+            if (brokers.isEmpty() || publishers < 1 || subscribersPerBroker < 1 || messagesPerPublisher < 1) {
+                throw new IllegalStateException("brokers, publishers, subscribers and messages must be positive");
+            }
+            return new FanOutBenchmark(this);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ru.softlab.ib6.fanout;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Гистограммы задержки доставки по числу сетевых мостов, которые прошло сообщение.
+ *
+ * @author Andrey Grigorov
+ */
+class FanOutLatency {
+
+    private final Map<Integer, Histogram> byHops = new ConcurrentHashMap<>();
+
+    void record(int hops, long latencyMicros) {
+        byHops.computeIfAbsent(hops, key -> new ConcurrentHistogram(3)).recordValue(Math.max(0, latencyMicros));
+    }
+
+    /**
+     * @return копии гистограмм, упорядоченные по числу мостов
+     */
+    Map<Integer, Histogram> getByHops() {
+        Map<Integer, Histogram> copy = new TreeMap<>();
+        for (Map.Entry<Integer, Histogram> entry : byHops.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,101 @@
+package ru.softlab.ib6.fanout;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат рассылки через топик.
+ *
+ * @author Andrey Grigorov
+ */
+public class FanOutResult {
+
+    private final String topology;
+    private final int brokers;
+    private final int publishers;
+    private final long published;
+    private final long publishMillis;
+    private final long startMicros;
+    private final List<Subscriber> subscribers;
+    private final Map<Integer, Histogram> latencyByHops;
+    private final long bridgeForwards;
+
+    FanOutResult(String topology, int brokers, int publishers, long published, long publishMillis, long startMicros,
+                 List<Subscriber> subscribers, FanOutLatency latency, long bridgeForwards) {
+        this.topology = topology;
+        this.brokers = brokers;
+        this.publishers = publishers;
+        this.published = published;
+        this.publishMillis = publishMillis;
+        this.startMicros = startMicros;
+        this.subscribers = Collections.unmodifiableList(new ArrayList<>(subscribers));
+        this.latencyByHops = Collections.unmodifiableMap(latency.getByHops());
+        this.bridgeForwards = bridgeForwards;
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    public long getDuplicates() {
+        long duplicates = 0;
+        for (Subscriber subscriber : subscribers) {
+            duplicates += subscriber.getDuplicates();
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return сообщения, которые не получил хотя бы один подписчик, суммарно по подписчикам
+     */
+    public long getDropped() {
+        long dropped = 0;
+        for (Subscriber subscriber : subscribers) {
+            dropped += published - subscriber.getUnique();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return число пересылок сообщений между брокерами на одно опубликованное сообщение или -1, если счётчики
+     * мостов недоступны
+     */
+    public double getBridgeForwardsPerMessage() {
+        return bridgeForwards < 0 ? -1 : bridgeForwards / (double) published;
+    }
+
+    /**
+     * @return задержка доставки по числу пройденных сетевых мостов
+     */
+    public Map<Integer, Histogram> getLatencyByHops() {
+        return latencyByHops;
+    }
+
+    public void print(PrintStream out) {
+        out.println();
+        out.println(String.format("%s, %d brokers, %d publishers, %d subscribers: published %d messages in %d ms",
+                topology, brokers, publishers, subscribers.size(), published, publishMillis));
+        for (Subscriber subscriber : subscribers) {
+            long elapsedMicros = Math.max(1, subscriber.getLastReceiveMicros() - startMicros);
+            out.println(String.format("  %-32s%s received %6d, duplicates %4d, dropped %6d, %8.1f msg/s",
+                    subscriber.getName(), subscriber.isSlow() ? " (slow)" : "       ", subscriber.getUnique(),
+                    subscriber.getDuplicates(), published - subscriber.getUnique(),
+                    subscriber.getUnique() * 1e6 / elapsedMicros));
+        }
+        out.println(String.format("Total: duplicates %d, dropped %d%s", getDuplicates(), getDropped(),
+                bridgeForwards < 0 ? "" : String.format(", bridge forwards %d (%.2f per published message)",
+                        bridgeForwards, getBridgeForwardsPerMessage())));
+        out.println("Latency by network hops, ms:");
+        for (Map.Entry<Integer, Histogram> entry : latencyByHops.entrySet()) {
+            Histogram histogram = entry.getValue();
+            out.println(String.format("  %d hops: %8d msgs, p50 %8.3f, p99 %8.3f, max %8.3f", entry.getKey(),
+                    histogram.getTotalCount(), histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getMaxValue() / 1000.0));
+        }
+    }
+}
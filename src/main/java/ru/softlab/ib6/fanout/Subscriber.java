@@ -0,0 +1,86 @@
+package ru.softlab.ib6.fanout;
+
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.metrics.ForwardingMatrix;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import java.util.BitSet;
+
+/**
+ * Подписчик топика: считает уникальные сообщения каждого publisher'а, повторные доставки и задержку по числу
+ * пройденных сетевых мостов.
+ *
+ * Сообщения одного подписчика обрабатываются в потоке его сессии по одному, но результаты читаются из другого
+ * потока, поэтому методы синхронизированы.
+ *
+ * @author Andrey Grigorov
+ */
+class Subscriber implements MessageListener {
+
+    private final String name;
+    private final long processingDelayMillis;
+    private final BitSet[] seen;
+    private final FanOutLatency latency;
+    private long unique;
+    private long duplicates;
+    private long lastReceiveMicros;
+
+    Subscriber(String name, int publishers, long processingDelayMillis, FanOutLatency latency) {
+        this.name = name;
+        this.processingDelayMillis = processingDelayMillis;
+        this.latency = latency;
+        this.seen = new BitSet[publishers];
+        for (int i = 0; i < publishers; i++) {
+            seen[i] = new BitSet();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        long receiveMicros = Clock.epochMicros();
+        try {
+            int publisher = message.getIntProperty(FanOutBenchmark.PUBLISHER_PROPERTY);
+            int sequence = message.getIntProperty(FanOutBenchmark.SEQUENCE_PROPERTY);
+            latency.record(ForwardingMatrix.hops(message), receiveMicros - message.getLongProperty(Messages.SEND_TIME_PROPERTY));
+            synchronized (this) {
+                if (seen[publisher].get(sequence)) {
+                    duplicates++;
+                } else {
+                    seen[publisher].set(sequence);
+                    unique++;
+                }
+                lastReceiveMicros = receiveMicros;
+            }
+            if (processingDelayMillis > 0) {
+                Thread.sleep(processingDelayMillis);
+            }
+        } catch (JMSException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isSlow() {
+        return processingDelayMillis > 0;
+    }
+
+    synchronized long getUnique() {
+        return unique;
+    }
+
+    synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    synchronized long getLastReceiveMicros() {
+        return lastReceiveMicros;
+    }
+}
@@ -0,0 +1,224 @@
+package ru.softlab.ib6.large;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.util.ByteSequence;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Сборка нагрузки, отправленной {@link ChunkedSender}'ом, в файлы: каждая часть записывается в файл группы
+ * по своему смещению.
+ *
+ * Тело несжатого сообщения ActiveMQ записывается в файл прямо из буфера, в котором оно пришло из сети, без
+ * промежуточного копирования в массив приложения. Сообщение без JMSXGroupID считается нагрузкой из одной части
+ * с идентификатором, равным correlation ID.
+ *
+ * @author Andrey Grigorov
+ */
+public class ChunkAssembler implements MessageListener {
+
+    private final Path directory;
+    private final Map<String, AssembledFile> files = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory каталог, в котором создаются собранные файлы
+     */
+    public ChunkAssembler(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        try {
+            String groupId = message.getStringProperty(ChunkedSender.GROUP_ID_PROPERTY);
+            if (groupId == null) {
+                groupId = message.getJMSCorrelationID();
+            }
+            ByteBuffer body = body((BytesMessage) message);
+            long totalSize = message.propertyExists(ChunkedSender.TOTAL_SIZE_PROPERTY)
+                    ? message.getLongProperty(ChunkedSender.TOTAL_SIZE_PROPERTY) : body.remaining();
+            long offset = message.propertyExists(ChunkedSender.OFFSET_PROPERTY)
+                    ? message.getLongProperty(ChunkedSender.OFFSET_PROPERTY) : 0;
+            long expectedChecksum = message.propertyExists(ChunkedSender.CHECKSUM_PROPERTY)
+                    ? message.getLongProperty(ChunkedSender.CHECKSUM_PROPERTY) : -1;
+
+            AssembledFile file = files.computeIfAbsent(groupId,
+                    id -> new AssembledFile(directory.resolve(id), totalSize));
+            file.write(offset, body, expectedChecksum);
+        } catch (JMSException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return тело сообщения без копирования, если это возможно
+     */
+    private static ByteBuffer body(BytesMessage message) throws JMSException {
+        if (message instanceof ActiveMQBytesMessage && !((ActiveMQBytesMessage) message).isCompressed()) {
+            ByteSequence content = ((ActiveMQBytesMessage) message).getContent();
+            if (content != null) {
+                return ByteBuffer.wrap(content.getData(), content.getOffset(), content.getLength());
+            }
+        }
+        byte[] bytes = new byte[(int) message.getBodyLength()];
+        message.readBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Ждёт, пока файл группы будет собран целиком.
+     *
+     * @return файл группы или null, если ни одна часть не пришла до истечения таймаута
+     */
+    public AssembledFile await(String groupId, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        AssembledFile file;
+        while ((file = files.get(groupId)) == null) {
+            if (System.currentTimeMillis() > deadline) {
+                return null;
+            }
+            Thread.sleep(10);
+        }
+        file.awaitComplete(deadline - System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Забывает о собранном файле и удаляет его.
+     */
+    public void remove(String groupId) throws IOException {
+        AssembledFile file = files.remove(groupId);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Файл, собираемый из частей одной группы.
+     */
+    public static class AssembledFile {
+
+        private final Path path;
+        private final long totalSize;
+        private final CRC32 checksum = new CRC32();
+        private final Set<Long> offsets = new HashSet<>();
+        private FileChannel channel;
+        private long received;
+        private int duplicateChunks;
+        private int corruptChunks;
+        private IOException failure;
+
+        AssembledFile(Path path, long totalSize) {
+            this.path = path;
+            this.totalSize = totalSize;
+        }
+
+        synchronized void write(long offset, ByteBuffer body, long expectedChecksum) throws IOException {
+            // повторно доставленная часть уже записана и не должна учитываться в полученных байтах второй раз
+            if (!offsets.add(offset)) {
+                duplicateChunks++;
+                return;
+            }
+            if (expectedChecksum >= 0) {
+                checksum.reset();
+                checksum.update(body.duplicate());
+                if (checksum.getValue() != expectedChecksum) {
+                    corruptChunks++;
+                }
+            }
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                }
+                long position = offset;
+                while (body.hasRemaining()) {
+                    position += channel.write(body, position);
+                }
+                received += position - offset;
+                if (received >= totalSize) {
+                    channel.close();
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                failure = e;
+                notifyAll();
+                throw e;
+            }
+        }
+
+        synchronized void awaitComplete(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!isComplete() && failure == null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                wait(remaining);
+            }
+        }
+
+        synchronized void delete() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+            path.toFile().delete();
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        public synchronized long getReceived() {
+            return received;
+        }
+
+        /**
+         * @return число различных полученных частей
+         */
+        public synchronized int getChunks() {
+            return offsets.size();
+        }
+
+        /**
+         * @return повторно доставленные части, которые не записывались
+         */
+        public synchronized int getDuplicateChunks() {
+            return duplicateChunks;
+        }
+
+        /**
+         * @return части, CRC32 которых не совпал с переданным отправителем
+         */
+        public synchronized int getCorruptChunks() {
+            return corruptChunks;
+        }
+
+        public synchronized boolean isComplete() {
+            return received >= totalSize;
+        }
+
+        /**
+         * @return true, если файл собран целиком и все части прошли проверку CRC32
+         */
+        public synchronized boolean isVerified() {
+            return isComplete() && corruptChunks == 0 && failure == null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.softlab.ib6.large;
+
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Отправка большой нагрузки группой сообщений (JMSXGroupID): поток читается частями в один буфер размером
+ * с часть, поэтому память producer'а не зависит от размера нагрузки.
+ *
+ * Брокер доставляет все сообщения группы одному consumer'у по порядку. Последняя часть отправляется
+ * с JMSXGroupSeq = -1, что закрывает группу на брокере. В каждой части передаются её смещение в нагрузке,
+ * общий размер нагрузки и CRC32 части, чтобы consumer мог собрать нагрузку в файл и проверить её.
+ *
+ * @author Andrey Grigorov
+ */
+public class ChunkedSender {
+
+    public static final String GROUP_ID_PROPERTY = "JMSXGroupID";
+    public static final String GROUP_SEQUENCE_PROPERTY = "JMSXGroupSeq";
+    public static final String OFFSET_PROPERTY = "chunkOffset";
+    public static final String TOTAL_SIZE_PROPERTY = "totalSize";
+    public static final String CHECKSUM_PROPERTY = "chunkCrc32";
+
+    private final Session session;
+    private final MessageProducer producer;
+    private final byte[] chunk;
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * @param chunkSize размер части в байтах
+     */
+    public ChunkedSender(Session session, MessageProducer producer, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.session = session;
+        this.producer = producer;
+        this.chunk = new byte[chunkSize];
+    }
+
+    /**
+     * Отправляет size байт из потока.
+     *
+     * @return идентификатор группы, по которому consumer собирает нагрузку
+     */
+    public String send(InputStream in, long size) throws JMSException, IOException {
+        String groupId = UUID.randomUUID().toString();
+        long offset = 0;
+        int sequence = 1;
+        do {
+            int length = (int) Math.min(chunk.length, size - offset);
+            readFully(in, chunk, length);
+            checksum.reset();
+            checksum.update(chunk, 0, length);
+
+            BytesMessage message = session.createBytesMessage();
+            message.writeBytes(chunk, 0, length);
+            message.setStringProperty(GROUP_ID_PROPERTY, groupId);
+            message.setIntProperty(GROUP_SEQUENCE_PROPERTY, offset + length < size ? sequence : -1);
+            message.setLongProperty(OFFSET_PROPERTY, offset);
+            message.setLongProperty(TOTAL_SIZE_PROPERTY, size);
+            message.setLongProperty(CHECKSUM_PROPERTY, checksum.getValue());
+            message.setLongProperty(Messages.SEND_TIME_PROPERTY, Clock.epochMicros());
+            producer.send(message);
+
+            offset += length;
+            sequence++;
+        } while (offset < size);
+        return groupId;
+    }
+
+    static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int position = 0;
+        while (position < length) {
+            int read = in.read(buffer, position, length - position);
+            if (read < 0) {
+                throw new EOFException("Stream ended after " + position + " of " + length + " bytes");
+            }
+            position += read;
+        }
+    }
+}
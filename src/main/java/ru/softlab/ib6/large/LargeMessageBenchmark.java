@@ -0,0 +1,256 @@
+package ru.softlab.ib6.large;
+
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.payload.PayloadInputStream;
+import ru.softlab.ib6.payload.PayloadProvider;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Передача больших нагрузок из одного датацентра в другой одним сообщением и группой сообщений по частям.
+ * Consumer собирает нагрузку в файл {@link ChunkAssembler}'ом.
+ *
+ * Для каждой передачи выводятся время отправки и доставки, пропускная способность и пиковый прирост занятой
+ * памяти heap относительно состояния после сборки мусора перед передачей. Память опрашивается раз в 10 мс
+ * и включает ещё не собранный мусор, а с брокерами, запущенными внутри JVM, - и память брокеров и моста.
+ *
+ * @author Andrey Grigorov
+ */
+public class LargeMessageBenchmark {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final long HEAP_SAMPLE_MILLIS = 10;
+
+    /**
+     * Запас на заголовки и свойства сообщения в кадре OpenWire.
+     */
+    private static final long FRAME_OVERHEAD = 64 * 1024;
+
+    /**
+     * Сколько копий нагрузки одновременно находится в heap при отправке одним сообщением: массив нагрузки,
+     * буфер тела BytesMessage и его сериализованное содержимое.
+     */
+    private static final int SINGLE_MESSAGE_COPIES = 3;
+
+    private final DataCenter producerDataCenter;
+    private final DataCenter consumerDataCenter;
+    private final List<Long> sizes;
+    private final List<TransferMode> modes;
+    private final int chunkSize;
+    private final PayloadProvider payloads;
+    private final long timeoutMillis;
+    private final long maxFrameSize;
+
+    private LargeMessageBenchmark(Builder builder) {
+        this.producerDataCenter = builder.producerDataCenter;
+        this.consumerDataCenter = builder.consumerDataCenter;
+        this.sizes = builder.sizes;
+        this.modes = builder.modes;
+        this.chunkSize = builder.chunkSize;
+        this.payloads = builder.payloads;
+        this.timeoutMillis = builder.timeoutMillis;
+        this.maxFrameSize = builder.maxFrameSize;
+    }
+
+    public static Builder builder(DataCenter producerDataCenter, DataCenter consumerDataCenter) {
+        return new Builder(producerDataCenter, consumerDataCenter);
+    }
+
+    public List<LargeMessageResult> run() throws Exception {
+        String queue = "dynamicQueues/large." + Long.toString(System.currentTimeMillis(), 36);
+        Path directory = Files.createTempDirectory("large-messages");
+        ChunkAssembler assembler = new ChunkAssembler(directory);
+        List<LargeMessageResult> results = new ArrayList<>();
+
+        Connection consumerConnection = consumerDataCenter.getConnectionFactory().createConnection();
+        Connection producerConnection = producerDataCenter.getConnectionFactory().createConnection();
+        try {
+            Session consumerSession = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = consumerSession.createConsumer(consumerDataCenter.lookup(queue));
+            consumer.setMessageListener(assembler);
+            consumerConnection.start();
+
+            Session producerSession = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = producerSession.createProducer(producerDataCenter.lookup(queue));
+            ChunkedSender chunkedSender = new ChunkedSender(producerSession, producer, chunkSize);
+
+            LargeMessageResult.printHeader(System.out);
+            for (long size : sizes) {
+                for (TransferMode mode : modes) {
+                    LargeMessageResult result = transfer(assembler, producerSession, producer, chunkedSender, mode, size);
+                    result.print(System.out);
+                    results.add(result);
+                }
+            }
+            return results;
+        } finally {
+            producerConnection.close();
+            consumerConnection.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    private LargeMessageResult transfer(ChunkAssembler assembler, Session session, MessageProducer producer,
+                                        ChunkedSender chunkedSender, TransferMode mode, long size) throws Exception {
+        if (mode == TransferMode.SINGLE && size + FRAME_OVERHEAD > maxFrameSize) {
+            // брокер закрывает соединение на слишком большом кадре, а failover-транспорт переподключается
+            // и отправляет сообщение заново, поэтому такая отправка не завершается никогда
+            return LargeMessageResult.failed(mode, size, "exceeds wireFormat.maxFrameSize " + maxFrameSize);
+        }
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        if (mode == TransferMode.SINGLE && size > maxHeap / SINGLE_MESSAGE_COPIES) {
+            // не доводим до OutOfMemoryError: после него состояние JVM и брокеров внутри неё не гарантировано
+            return LargeMessageResult.failed(mode, size, "needs " + SINGLE_MESSAGE_COPIES
+                    + " copies in heap of " + maxHeap + " bytes");
+        }
+        System.gc();
+        TimeUnit.MILLISECONDS.sleep(200);
+        long baselineHeap = MEMORY.getHeapMemoryUsage().getUsed();
+        final AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(MEMORY.getHeapMemoryUsage().getUsed(), Math::max),
+                0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        String groupId = null;
+        try {
+            long startMicros = Clock.epochMicros();
+            try (InputStream in = new PayloadInputStream(payloads, size)) {
+                groupId = mode == TransferMode.CHUNKED
+                        ? chunkedSender.send(in, size)
+                        : sendSingle(session, producer, in, size);
+            } catch (JMSException e) {
+                return LargeMessageResult.failed(mode, size, e.toString());
+            }
+            long sendMicros = Clock.epochMicros() - startMicros;
+            ChunkAssembler.AssembledFile file = assembler.await(groupId, timeoutMillis);
+            long totalMicros = Clock.epochMicros() - startMicros;
+            return new LargeMessageResult(mode, size, file, sendMicros, totalMicros, peakHeap.get() - baselineHeap);
+        } finally {
+            sampler.shutdownNow();
+            if (groupId != null) {
+                assembler.remove(groupId);
+            }
+        }
+    }
+
+    /**
+     * Отправляет нагрузку одним сообщением, собирая её в массив целиком.
+     */
+    private static String sendSingle(Session session, MessageProducer producer, InputStream in,
+                                     long size) throws JMSException, IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new JMSException("Payload of " + size + " bytes does not fit into one message");
+        }
+        byte[] payload = new byte[(int) size];
+        ChunkedSender.readFully(in, payload, payload.length);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload, 0, payload.length);
+
+        String groupId = UUID.randomUUID().toString();
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(payload);
+        message.setJMSCorrelationID(groupId);
+        message.setLongProperty(ChunkedSender.CHECKSUM_PROPERTY, checksum.getValue());
+        message.setLongProperty(Messages.SEND_TIME_PROPERTY, Clock.epochMicros());
+        producer.send(message);
+        return groupId;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    public static class Builder {
+
+        private final DataCenter producerDataCenter;
+        private final DataCenter consumerDataCenter;
+        private final List<Long> sizes = new ArrayList<>();
+        private final List<TransferMode> modes = new ArrayList<>();
+        private int chunkSize = 256 * 1024;
+        private PayloadProvider payloads = Messages.getPayloadProvider();
+        private long timeoutMillis = 120000;
+        private long maxFrameSize = 104857600;
+
+        private Builder(DataCenter producerDataCenter, DataCenter consumerDataCenter) {
+            this.producerDataCenter = producerDataCenter;
+            this.consumerDataCenter = consumerDataCenter;
+        }
+
+        /**
+         * @param size размер нагрузки в байтах
+         */
+        public Builder size(long size) {
+            sizes.add(size);
+            return this;
+        }
+
+        public Builder mode(TransferMode mode) {
+            modes.add(mode);
+            return this;
+        }
+
+        /**
+         * @param chunkSize размер части в байтах для {@link TransferMode#CHUNKED}
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder payloads(PayloadProvider payloads) {
+            this.payloads = payloads;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis максимальное время ожидания доставки одной нагрузки
+         */
+        public Builder timeout(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param maxFrameSize wireFormat.maxFrameSize транспортного коннектора брокера (в docker/activemq.xml - 100 МБ);
+         *                     нагрузка, которая не помещается в кадр, одним сообщением не отправляется
+         */
+        public Builder maxFrameSize(long maxFrameSize) {
+            this.maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        public LargeMessageBenchmark build() {
+            if (sizes.isEmpty() || modes.isEmpty() || chunkSize < 1) {
+                throw new IllegalStateException("sizes, modes and chunkSize must be set");
+            }
+            return new LargeMessageBenchmark(this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.softlab.ib6.large;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Результат передачи одной большой нагрузки.
+ *
+ * @author Andrey Grigorov
+ */
+public class LargeMessageResult {
+
+    private static final double MB = 1024 * 1024;
+
+    private final TransferMode mode;
+    private final long size;
+    private final int chunks;
+    private final boolean verified;
+    private final long sendMicros;
+    private final long totalMicros;
+    private final long peakHeapBytes;
+    private final String failure;
+
+    LargeMessageResult(TransferMode mode, long size, ChunkAssembler.AssembledFile file, long sendMicros,
+                       long totalMicros, long peakHeapBytes) {
+        this.mode = mode;
+        this.size = size;
+        this.chunks = file != null ? file.getChunks() : 0;
+        this.verified = file != null && file.isVerified();
+        this.sendMicros = sendMicros;
+        this.totalMicros = totalMicros;
+        this.peakHeapBytes = peakHeapBytes;
+        this.failure = file == null || !file.isComplete() ? "not delivered" : null;
+    }
+
+    private LargeMessageResult(TransferMode mode, long size, String failure) {
+        this.mode = mode;
+        this.size = size;
+        this.chunks = 0;
+        this.verified = false;
+        this.sendMicros = 0;
+        this.totalMicros = 0;
+        this.peakHeapBytes = 0;
+        this.failure = failure;
+    }
+
+    static LargeMessageResult failed(TransferMode mode, long size, String failure) {
+        return new LargeMessageResult(mode, size, failure);
+    }
+
+    public static void printHeader(PrintStream out) {
+        out.println(String.format("%10s %-8s %7s %10s %10s %8s %14s  %s",
+                "size MB", "mode", "chunks", "send ms", "total ms", "MB/s", "peak heap +MB", "result"));
+    }
+
+    public TransferMode getMode() {
+        return mode;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return true, если нагрузка собрана целиком и все части прошли проверку CRC32
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public double getThroughputMBps() {
+        return totalMicros == 0 ? 0 : size / MB / (totalMicros / 1e6);
+    }
+
+    /**
+     * @return пиковый прирост занятой памяти heap во время передачи
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public void print(PrintStream out) {
+        out.println(String.format("%10.1f %-8s %7d %10d %10d %8.1f %14.1f  %s",
+                size / MB, mode.name().toLowerCase(Locale.ROOT), chunks, sendMicros / 1000, totalMicros / 1000,
+                getThroughputMBps(), peakHeapBytes / MB,
+                failure != null ? failure : verified ? "verified" : "CRC mismatch"));
+    }
+}
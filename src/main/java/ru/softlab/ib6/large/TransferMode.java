@@ -0,0 +1,28 @@
+package ru.softlab.ib6.large;
+
+import java.util.Locale;
+
+/**
+ * Способ передачи большой нагрузки.
+ *
+ * @author Andrey Grigorov
+ */
+public enum TransferMode {
+
+    /**
+     * Одно сообщение с нагрузкой целиком: producer собирает нагрузку в массив, как sendMessage.
+     */
+    SINGLE,
+
+    /**
+     * Группа сообщений по частям через {@link ChunkedSender}.
+     */
+    CHUNKED;
+
+    /**
+     * @param value "single" или "chunked"
+     */
+    public static TransferMode parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
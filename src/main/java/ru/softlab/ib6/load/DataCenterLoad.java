@@ -0,0 +1,143 @@
+package ru.softlab.ib6.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Статистика нагрузки на один датацентр.
+ *
+ * Время отправки считается от запланированного момента, а не от фактического начала вызова send:
+ * если producer отстаёт от графика, ожидание тоже попадает в задержку (поправка на coordinated omission).
+ * Отправка, которая длилась дольше порога, считается остановкой из-за producer flow control брокера.
+ *
+ * @author Andrey Grigorov
+ */
+public class DataCenterLoad {
+
+    private final String name;
+    private final List<LoadPhase> phases;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong stallNanos = new AtomicLong();
+    private final AtomicLongArray sentByPhase;
+    private final Histogram sendLatency = new ConcurrentHistogram(3);
+    private volatile long queueDepth = -1;
+
+    DataCenterLoad(String name, List<LoadPhase> phases) {
+        this.name = name;
+        this.phases = phases;
+        // последний элемент - отправки, завершившиеся уже после окончания графика
+        this.sentByPhase = new AtomicLongArray(phases.size() + 1);
+    }
+
+    /**
+     * @param phase        фаза, в которой завершилась отправка, или phases.size(), если график уже закончился
+     * @param latencyNanos время от запланированного момента отправки до её завершения
+     */
+    void sent(int phase, long latencyNanos) {
+        sent.incrementAndGet();
+        sentByPhase.incrementAndGet(phase);
+        sendLatency.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    void stalled(long durationNanos) {
+        stalls.incrementAndGet();
+        stallNanos.addAndGet(durationNanos);
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+    }
+
+    void received() {
+        received.incrementAndGet();
+    }
+
+    void queueDepth(long queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return сообщения, полученные consumer'ами, подключенными к этому датацентру
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return сообщения, которые хранились в очереди на брокере этого датацентра при последнем замере, или -1,
+     * если счётчики брокеров недоступны
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    public long getStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stallNanos.get());
+    }
+
+    /**
+     * @return отправки, завершившиеся после окончания графика нагрузки, - producer'ы не успели за графиком
+     */
+    public long getSentAfterSchedule() {
+        return sentByPhase.get(phases.size());
+    }
+
+    /**
+     * @return достигнутая интенсивность отправки в фазе (по времени завершения отправок), сообщений в секунду
+     */
+    public double getAchievedRate(int phase) {
+        return sentByPhase.get(phase) * (double) TimeUnit.SECONDS.toNanos(1) / phases.get(phase).getDurationNanos();
+    }
+
+    /**
+     * @return задержки отправки в микросекундах с поправкой на coordinated omission
+     */
+    public Histogram getSendLatency() {
+        return sendLatency.copy();
+    }
+
+    public void print(PrintStream out) {
+        out.println(name + ": sent " + getSent() + ", received by local consumers " + getReceived()
+                + ", failed " + getFailed() + ", flow control stalls " + getStalls() + " (" + getStallMillis() + " ms)"
+                + (queueDepth >= 0 ? ", queue depth " + queueDepth : ""));
+        for (int i = 0; i < phases.size(); i++) {
+            LoadPhase phase = phases.get(i);
+            out.println(String.format("  %-8s target %8.1f msg/s, achieved %8.1f msg/s",
+                    phase.getName(), phase.getAverageRate(), getAchievedRate(i)));
+        }
+        if (getSentAfterSchedule() > 0) {
+            out.println("  sent after the schedule ended: " + getSentAfterSchedule());
+        }
+        Histogram latency = sendLatency.copy();
+        if (latency.getTotalCount() > 0) {
+            out.println(String.format("  send latency, ms: p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f",
+                    latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getValueAtPercentile(99.9) / 1000.0, latency.getMaxValue() / 1000.0));
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package ru.softlab.ib6.load;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.command.ActiveMQDestination;
+import ru.softlab.ib6.bridge.BridgeStatistics;
+import ru.softlab.ib6.bridge.BridgeStatisticsSource;
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.metrics.LatencyRecorder;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+import ru.softlab.ib6.verify.SequenceVerifier;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки с открытым циклом: в каждом датацентре несколько потоков отправляют сообщения по графику,
+ * который задаётся фазами нагрузки и не зависит от того, как быстро брокер отвечает на предыдущие отправки.
+ *
+ * Каждый поток отправляет свою долю интенсивности. Если отправка задержалась, следующее сообщение не сдвигается,
+ * а уходит сразу, пока поток не догонит график; задержка при этом считается от запланированного момента
+ * (поправка на coordinated omission), и тем же моментом помечается время отправки в сообщении.
+ *
+ * Раз в секунду выводятся достигнутая интенсивность по датацентрам, отставание consumer'ов (отправлено, но ещё
+ * не получено) и число остановок отправки из-за producer flow control. Если заданы счётчики брокеров, выводится
+ * и глубина очереди на брокере каждого датацентра - брокере, к которому подключены его consumer'ы.
+ *
+ * Каждый поток нумерует свои сообщения, и после прогона {@link SequenceVerifier} сообщает для каждого потока
+ * пропущенные, повторно полученные и полученные не по порядку сообщения.
+ *
+ * @author Andrey Grigorov
+ */
+public class LoadGenerator {
+
+    private static final long START_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<DataCenter> dataCenters;
+    private final String destination;
+    private final int threadsPerDataCenter;
+    private final int consumersPerDataCenter;
+    private final List<LoadPhase> phases;
+    private final long stallThresholdNanos;
+    private final long drainTimeoutMillis;
+    private final boolean verifySequences;
+    private final BridgeStatisticsSource statistics;
+
+    private LoadGenerator(Builder builder) {
+        this.dataCenters = builder.dataCenters;
+        this.destination = builder.destination;
+        this.threadsPerDataCenter = builder.threadsPerDataCenter;
+        this.consumersPerDataCenter = builder.consumersPerDataCenter;
+        this.phases = Collections.unmodifiableList(new ArrayList<>(builder.phases));
+        this.stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(builder.stallThresholdMillis);
+        this.drainTimeoutMillis = builder.drainTimeoutMillis;
+        this.verifySequences = builder.verifySequences;
+        this.statistics = builder.statistics;
+    }
+
+    public static Builder builder(List<DataCenter> dataCenters, String destination) {
+        return new Builder(dataCenters, destination);
+    }
+
+    public LoadResult run() throws Exception {
+        System.out.println();
+        System.out.println(dataCenters.size() + " Active MQ, " + threadsPerDataCenter + " producer threads and "
+                + consumersPerDataCenter + " consumers per data center, phases " + phases);
+
+        final List<DataCenterLoad> loads = new ArrayList<>();
+        final LatencyRecorder latency = new LatencyRecorder();
+        List<String> producerNames = new ArrayList<>();
+        for (DataCenter dataCenter : dataCenters) {
+            for (int t = 0; t < threadsPerDataCenter; t++) {
+                producerNames.add(dataCenter.getName() + " - " + (t + 1));
+            }
+        }
+        final SequenceVerifier verifier = verifySequences ? new SequenceVerifier(producerNames) : null;
+        List<Connection> connections = new ArrayList<>();
+        final List<ActiveMQConnection> consumerConnections = new ArrayList<>();
+        String queue = null;
+        List<Thread> producerThreads = new ArrayList<>();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (DataCenter dataCenter : dataCenters) {
+                final DataCenterLoad load = new DataCenterLoad(dataCenter.getName(), phases);
+                loads.add(load);
+
+                Connection consumerConnection = dataCenter.getConnectionFactory().createConnection();
+                connections.add(consumerConnection);
+                consumerConnections.add((ActiveMQConnection) consumerConnection);
+                Destination consumerDestination = dataCenter.lookup(destination);
+                queue = ((ActiveMQDestination) consumerDestination).getQualifiedName();
+                for (int i = 0; i < consumersPerDataCenter; i++) {
+                    Session session = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                    MessageConsumer consumer = session.createConsumer(consumerDestination);
+                    final SequenceVerifier.Consumer sequences = verifier != null ? verifier.consumer() : null;
+                    consumer.setMessageListener(message -> {
+                        latency.record(message);
+                        if (sequences != null) {
+                            sequences.record(message);
+                        }
+                        load.received();
+                    });
+                }
+                consumerConnection.start();
+            }
+
+            final long startNanos = System.nanoTime() + START_DELAY_NANOS;
+            for (int d = 0; d < dataCenters.size(); d++) {
+                DataCenter dataCenter = dataCenters.get(d);
+                Connection producerConnection = dataCenter.getConnectionFactory().createConnection();
+                connections.add(producerConnection);
+                producerConnection.start();
+                for (int t = 0; t < threadsPerDataCenter; t++) {
+                    Thread thread = new Thread(new ProducerLoop(dataCenter, producerConnection, loads.get(d), t,
+                            d * threadsPerDataCenter + t, verifier, startNanos),
+                            dataCenter.getName() + " producer " + (t + 1));
+                    producerThreads.add(thread);
+                    thread.start();
+                }
+            }
+
+            final long[] lastSent = new long[loads.size()];
+            final String queueName = queue;
+            reporter.scheduleAtFixedRate(() -> report(loads, consumerConnections, queueName, lastSent, startNanos),
+                    1, 1, TimeUnit.SECONDS);
+
+            for (Thread thread : producerThreads) {
+                thread.join();
+            }
+            reporter.shutdown();
+            long sendingNanos = System.nanoTime() - startNanos;
+
+            // ждём, пока consumer'ы заберут отставание
+            long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+            while (backlog(loads) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            if (statistics != null) {
+                sampleQueueDepth(loads, consumerConnections, queue);
+            }
+
+            LoadResult result = new LoadResult(loads, latency, backlog(loads), TimeUnit.NANOSECONDS.toMillis(sendingNanos),
+                    verifier != null ? verifier.report() : Collections.emptyList(),
+                    verifier != null ? verifier.getUnverified() : 0);
+            result.print(System.out);
+            System.out.println();
+            return result;
+        } finally {
+            reporter.shutdownNow();
+            for (Thread thread : producerThreads) {
+                thread.interrupt();
+            }
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void report(List<DataCenterLoad> loads, List<ActiveMQConnection> consumerConnections, String queue,
+                        long[] lastSent, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        StringBuilder line = new StringBuilder(String.format("%6.1f s %-8s", elapsedNanos / 1e9, phaseName(elapsedNanos)));
+        long stalls = 0;
+        for (int i = 0; i < loads.size(); i++) {
+            DataCenterLoad load = loads.get(i);
+            long sent = load.getSent();
+            line.append(String.format(" | %s %6d msg/s", load.getName(), sent - lastSent[i]));
+            lastSent[i] = sent;
+            stalls += load.getStalls();
+        }
+        line.append(" | backlog ").append(Math.max(0, backlog(loads)));
+        if (statistics != null && sampleQueueDepth(loads, consumerConnections, queue)) {
+            line.append(" (queue depth");
+            for (DataCenterLoad load : loads) {
+                line.append(' ').append(load.getName()).append(' ').append(load.getQueueDepth());
+            }
+            line.append(')');
+        }
+        line.append(", stalls ").append(stalls);
+        System.out.println(line);
+    }
+
+    /**
+     * Запоминает у каждого датацентра число сообщений в очереди на брокере, к которому подключены его consumer'ы.
+     * Брокер определяется по соединению consumer'ов, поэтому после переключения failover'а замер идёт уже
+     * на новом брокере.
+     *
+     * @param queue полное имя очереди, например "queue://test"
+     * @return true, если счётчики удалось прочитать
+     */
+    private boolean sampleQueueDepth(List<DataCenterLoad> loads, List<ActiveMQConnection> consumerConnections,
+                                     String queue) {
+        try {
+            Map<String, Long> depthByBroker = new HashMap<>();
+            for (BridgeStatistics.DestinationCounters counters : statistics.snapshot().getDestinations()) {
+                if (counters.getDestination().equals(queue)) {
+                    depthByBroker.merge(counters.getBroker(), counters.getSize(), Long::sum);
+                }
+            }
+            for (int i = 0; i < loads.size(); i++) {
+                Long depth = depthByBroker.get(consumerConnections.get(i).getBrokerName());
+                loads.get(i).queueDepth(depth != null ? depth : 0);
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static long backlog(List<DataCenterLoad> loads) {
+        long backlog = 0;
+        for (DataCenterLoad load : loads) {
+            backlog += load.getSent() - load.getReceived();
+        }
+        return backlog;
+    }
+
+    /**
+     * @return номер фазы для момента offsetNanos от начала нагрузки или -1, если нагрузка закончилась
+     */
+    private int phaseAt(long offsetNanos) {
+        long phaseStart = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            if (offsetNanos < phaseStart + phases.get(i).getDurationNanos()) {
+                return i;
+            }
+            phaseStart += phases.get(i).getDurationNanos();
+        }
+        return -1;
+    }
+
+    private long phaseStart(int phase) {
+        long phaseStart = 0;
+        for (int i = 0; i < phase; i++) {
+            phaseStart += phases.get(i).getDurationNanos();
+        }
+        return phaseStart;
+    }
+
+    private String phaseName(long offsetNanos) {
+        int phase = phaseAt(offsetNanos);
+        return phase < 0 ? "drain" : phases.get(phase).getName();
+    }
+
+    private class ProducerLoop implements Runnable {
+
+        private final DataCenter dataCenter;
+        private final Connection connection;
+        private final DataCenterLoad load;
+        private final int index;
+        private final int producerIndex;
+        private final SequenceVerifier verifier;
+        private final long startNanos;
+
+        /**
+         * @param index         номер потока в датацентре
+         * @param producerIndex номер потока среди всех датацентров, которым помечаются сообщения для verifier'а
+         * @param verifier      проверка номеров сообщений или null
+         */
+        ProducerLoop(DataCenter dataCenter, Connection connection, DataCenterLoad load, int index, int producerIndex,
+                     SequenceVerifier verifier, long startNanos) {
+            this.dataCenter = dataCenter;
+            this.connection = connection;
+            this.load = load;
+            this.index = index;
+            this.producerIndex = producerIndex;
+            this.verifier = verifier;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void run() {
+            Session session = null;
+            try {
+                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageProducer producer = session.createProducer(dataCenter.lookup(destination));
+                producer.setTimeToLive(Messages.TIME_TO_LIVE);
+                Map<String, String> headers = Collections.singletonMap(Messages.ORIGIN_PROPERTY, dataCenter.getName());
+                String correlationIdPrefix = dataCenter.getName() + " - " + (index + 1) + "-";
+
+                // потоки равномерно распределены внутри интервала одного потока, чтобы не отправлять сообщения
+                // одновременно
+                long intended = startNanos + (long) (interval(0, 0) * index / threadsPerDataCenter);
+                long sequence = 0;
+                int phase;
+                while ((phase = phaseAt(intended - startNanos)) >= 0 && !Thread.currentThread().isInterrupted()) {
+                    long now = System.nanoTime();
+                    if (intended > now) {
+                        LockSupport.parkNanos(intended - now);
+                    }
+
+                    long sendStart = System.nanoTime();
+                    long intendedMicros = Clock.epochMicros() - TimeUnit.NANOSECONDS.toMicros(sendStart - intended);
+                    try {
+                        BytesMessage message = Messages.createBytesMessage(session, Messages.getPayloadProvider().next(),
+                                correlationIdPrefix + (++sequence), headers, intendedMicros);
+                        if (verifier != null) {
+                            SequenceVerifier.stamp(message, producerIndex, sequence);
+                            // до отправки: consumer может получить сообщение раньше, чем send вернёт управление
+                            verifier.sent(producerIndex, sequence);
+                        }
+                        producer.send(message);
+                        long sendEnd = System.nanoTime();
+                        if (sendEnd - sendStart > stallThresholdNanos) {
+                            load.stalled(sendEnd - sendStart);
+                        }
+                        int completedPhase = phaseAt(sendEnd - startNanos);
+                        load.sent(completedPhase >= 0 ? completedPhase : phases.size(), sendEnd - intended);
+                    } catch (JMSException e) {
+                        load.failed();
+                    }
+
+                    intended += (long) interval(phase, intended - startNanos - phaseStart(phase));
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                if (session != null) {
+                    try {
+                        session.close();
+                    } catch (JMSException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return интервал между отправками одного потока в наносекундах
+         */
+        private double interval(int phase, long offsetInPhaseNanos) {
+            double rate = phases.get(phase).rateAt(offsetInPhaseNanos) / threadsPerDataCenter;
+            return TimeUnit.SECONDS.toNanos(1) / rate;
+        }
+    }
+
+    public static class Builder {
+
+        private final List<DataCenter> dataCenters;
+        private final String destination;
+        private final List<LoadPhase> phases = new ArrayList<>();
+        private int threadsPerDataCenter = 4;
+        private int consumersPerDataCenter = 1;
+        private long stallThresholdMillis = 100;
+        private long drainTimeoutMillis = 30000;
+        private boolean verifySequences = true;
+        private BridgeStatisticsSource statistics;
+
+        private Builder(List<DataCenter> dataCenters, String destination) {
+            this.dataCenters = new ArrayList<>(dataCenters);
+            this.destination = destination;
+        }
+
+        public Builder threads(int threadsPerDataCenter) {
+            this.threadsPerDataCenter = threadsPerDataCenter;
+            return this;
+        }
+
+        public Builder consumers(int consumersPerDataCenter) {
+            this.consumersPerDataCenter = consumersPerDataCenter;
+            return this;
+        }
+
+        public Builder phase(LoadPhase phase) {
+            phases.add(phase);
+            return this;
+        }
+
+        /**
+         * @param stallThresholdMillis отправка дольше этого времени считается остановкой из-за flow control
+         */
+        public Builder stallThreshold(long stallThresholdMillis) {
+            this.stallThresholdMillis = stallThresholdMillis;
+            return this;
+        }
+
+        /**
+         * @param drainTimeoutMillis сколько ждать получения отставших сообщений после окончания нагрузки
+         */
+        public Builder drainTimeout(long drainTimeoutMillis) {
+            this.drainTimeoutMillis = drainTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param verifySequences нумеровать ли сообщения и проверять пропуски, повторы и порядок доставки
+         */
+        public Builder verifySequences(boolean verifySequences) {
+            this.verifySequences = verifySequences;
+            return this;
+        }
+
+        /**
+         * @param statistics источник счётчиков брокеров для замера глубины очереди на брокере каждого датацентра;
+         *                   без него выводится только общее отставание consumer'ов
+         */
+        public Builder statistics(BridgeStatisticsSource statistics) {
+            this.statistics = statistics;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (phases.isEmpty()) {
+                throw new IllegalStateException("At least one load phase is required");
+            }
+            if (threadsPerDataCenter < 1) {
+                throw new IllegalStateException("threadsPerDataCenter must be positive: " + threadsPerDataCenter);
+            }
+            return new LoadGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.softlab.ib6.load;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фаза нагрузки: интенсивность отправки линейно меняется от startRate до endRate за durationMillis.
+ * Интенсивность задаётся в сообщениях в секунду на один датацентр.
+ *
+ * @author Andrey Grigorov
+ */
+public final class LoadPhase {
+
+    private final String name;
+    private final long durationNanos;
+    private final double startRate;
+    private final double endRate;
+
+    public LoadPhase(String name, long durationMillis, double startRate, double endRate) {
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("durationMillis must be positive: " + durationMillis);
+        }
+        if (startRate <= 0 || endRate <= 0) {
+            throw new IllegalArgumentException("Rates must be positive: " + startRate + ", " + endRate);
+        }
+        this.name = name;
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        this.startRate = startRate;
+        this.endRate = endRate;
+    }
+
+    /**
+     * Плавный рост интенсивности от 10% до rate.
+     */
+    public static LoadPhase rampUp(long durationMillis, double rate) {
+        return new LoadPhase("ramp-up", durationMillis, rate / 10, rate);
+    }
+
+    public static LoadPhase steady(long durationMillis, double rate) {
+        return new LoadPhase("steady", durationMillis, rate, rate);
+    }
+
+    /**
+     * Всплеск: интенсивность rate * factor на всё время фазы.
+     */
+    public static LoadPhase burst(long durationMillis, double rate, double factor) {
+        return new LoadPhase("burst", durationMillis, rate * factor, rate * factor);
+    }
+
+    /**
+     * @param offsetNanos время от начала фазы
+     * @return интенсивность в сообщениях в секунду в этот момент
+     */
+    public double rateAt(long offsetNanos) {
+        double progress = Math.min(1, Math.max(0, offsetNanos / (double) durationNanos));
+        return startRate + (endRate - startRate) * progress;
+    }
+
+    /**
+     * @return средняя запланированная интенсивность фазы
+     */
+    public double getAverageRate() {
+        return (startRate + endRate) / 2;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d ms, %.0f -> %.0f msg/s", name, TimeUnit.NANOSECONDS.toMillis(durationNanos), startRate, endRate);
+    }
+}
@@ -0,0 +1,88 @@
+package ru.softlab.ib6.load;
+
+import ru.softlab.ib6.metrics.LatencyRecorder;
+import ru.softlab.ib6.verify.SequenceReport;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат прогона генератора нагрузки.
+ *
+ * @author Andrey Grigorov
+ */
+public class LoadResult {
+
+    private final List<DataCenterLoad> dataCenters;
+    private final LatencyRecorder latency;
+    private final long backlog;
+    private final long elapsedMillis;
+    private final List<SequenceReport> sequences;
+    private final long unverified;
+
+    LoadResult(List<DataCenterLoad> dataCenters, LatencyRecorder latency, long backlog, long elapsedMillis,
+               List<SequenceReport> sequences, long unverified) {
+        this.dataCenters = Collections.unmodifiableList(dataCenters);
+        this.latency = latency;
+        this.backlog = backlog;
+        this.elapsedMillis = elapsedMillis;
+        this.sequences = Collections.unmodifiableList(sequences);
+        this.unverified = unverified;
+    }
+
+    public List<DataCenterLoad> getDataCenters() {
+        return dataCenters;
+    }
+
+    /**
+     * @return задержка доставки от запланированного времени отправки до получения
+     */
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return сообщения, так и не полученные consumer'ами после ожидания
+     */
+    public long getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return длительность отправки
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return проверка номеров сообщений каждого потока producer'ов; пустой список, если проверка выключена
+     */
+    public List<SequenceReport> getSequences() {
+        return sequences;
+    }
+
+    public long getSent() {
+        long sent = 0;
+        for (DataCenterLoad dataCenter : dataCenters) {
+            sent += dataCenter.getSent();
+        }
+        return sent;
+    }
+
+    public void print(PrintStream out) {
+        for (DataCenterLoad dataCenter : dataCenters) {
+            dataCenter.print(out);
+        }
+        out.println("Sent " + getSent() + " messages in " + elapsedMillis + " ms, not received " + backlog);
+        latency.printSummary(out);
+        if (!sequences.isEmpty()) {
+            out.println("Sequences by producer thread"
+                    + (unverified > 0 ? " (" + unverified + " messages without a valid sequence)" : "") + ":");
+            for (SequenceReport sequence : sequences) {
+                sequence.print(out);
+            }
+        }
+    }
+}
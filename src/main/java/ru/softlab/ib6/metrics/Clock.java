@@ -0,0 +1,28 @@
+package ru.softlab.ib6.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время с микросекундной точностью, сопоставимое между процессами.
+ *
+ * System.currentTimeMillis() слишком грубый для измерения задержек внутри одной машины, а System.nanoTime()
+ * не сравним между JVM. Поэтому время отсчитывается по nanoTime от момента, привязанного к currentTimeMillis
+ * при загрузке класса. Между разными машинами результат точен настолько, насколько синхронизированы их часы.
+ *
+ * @author Andrey Grigorov
+ */
+public final class Clock {
+
+    private static final long BASE_MICROS = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private Clock() {
+    }
+
+    /**
+     * @return микросекунды с начала эпохи Unix
+     */
+    public static long epochMicros() {
+        return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+}
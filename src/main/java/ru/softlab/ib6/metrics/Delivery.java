@@ -0,0 +1,34 @@
+package ru.softlab.ib6.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ожидание доставки сообщений по счётчику, который увеличивают consumer'ы.
+ *
+ * @author Andrey Grigorov
+ */
+public final class Delivery {
+
+    private static final long POLL_MILLIS = 10;
+
+    private Delivery() {
+    }
+
+    /**
+     * Ждёт, пока счётчик received достигнет expected, но не дольше timeoutMillis.
+     *
+     * @return true, если все ожидаемые сообщения получены до истечения таймаута
+     * @throws InterruptedException
+     */
+    public static boolean await(AtomicLong received, long expected, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (received.get() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+        }
+        return true;
+    }
+}
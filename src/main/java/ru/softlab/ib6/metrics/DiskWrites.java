@@ -0,0 +1,40 @@
+package ru.softlab.ib6.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Байты, записанные текущим процессом на диск, по /proc/self/io (write_bytes).
+ *
+ * Linux учитывает запись в момент изменения страницы кэша, поэтому сюда попадает и запись без fsync, которая
+ * ещё не сброшена на диск. Запись в сокеты не учитывается.
+ *
+ * @author Andrey Grigorov
+ */
+public final class DiskWrites {
+
+    private static final Path PROC_SELF_IO = Paths.get("/proc/self/io");
+    private static final String WRITE_BYTES = "write_bytes:";
+
+    private DiskWrites() {
+    }
+
+    /**
+     * @return байты, записанные процессом на диск с момента его запуска, или -1, если счётчик недоступен
+     */
+    public static long processWriteBytes() {
+        try {
+            for (String line : Files.readAllLines(PROC_SELF_IO, StandardCharsets.US_ASCII)) {
+                if (line.startsWith(WRITE_BYTES)) {
+                    return Long.parseLong(line.substring(WRITE_BYTES.length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // не Linux или /proc недоступен
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,129 @@
+package ru.softlab.ib6.metrics;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.BrokerId;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Матрица доставки: сколько сообщений, отправленных в каждом датацентре, получили consumer'ы каждого датацентра.
+ *
+ * Датацентр отправителя берётся из свойства {@link Messages#ORIGIN_PROPERTY}, а число пересылок между брокерами -
+ * из broker path сообщения ({@link ActiveMQMessage#getBrokerPath()}): сообщение, полученное от брокера, к которому
+ * подключён producer, имеет пустой broker path.
+ *
+ * @author Andrey Grigorov
+ */
+public class ForwardingMatrix {
+
+    private static final String UNKNOWN = "unknown";
+
+    private final List<String> dataCenters;
+    private final Map<String, Map<String, AtomicLong>> counts = new ConcurrentHashMap<>();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicInteger maxHops = new AtomicInteger();
+
+    /**
+     * @param dataCenters названия датацентров в порядке вывода
+     */
+    public ForwardingMatrix(List<String> dataCenters) {
+        this.dataCenters = new ArrayList<>(dataCenters);
+    }
+
+    /**
+     * @param consumerDataCenter датацентр consumer'а, получившего сообщение
+     */
+    public void record(String consumerDataCenter, Message message) {
+        String origin = UNKNOWN;
+        try {
+            if (message.propertyExists(Messages.ORIGIN_PROPERTY)) {
+                origin = message.getStringProperty(Messages.ORIGIN_PROPERTY);
+            }
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+        counts.computeIfAbsent(origin, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(consumerDataCenter, key -> new AtomicLong())
+                .incrementAndGet();
+
+        total.incrementAndGet();
+        int hops = hops(message);
+        if (hops > 0) {
+            forwarded.incrementAndGet();
+            maxHops.accumulateAndGet(hops, Math::max);
+        }
+    }
+
+    /**
+     * @return число брокеров, через которые сообщение прошло до брокера consumer'а
+     */
+    public static int hops(Message message) {
+        if (message instanceof ActiveMQMessage) {
+            BrokerId[] brokerPath = ((ActiveMQMessage) message).getBrokerPath();
+            return brokerPath != null ? brokerPath.length : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * @return число сообщений из датацентра origin, полученных consumer'ами датацентра consumerDataCenter
+     */
+    public long get(String origin, String consumerDataCenter) {
+        Map<String, AtomicLong> row = counts.get(origin);
+        AtomicLong count = row != null ? row.get(consumerDataCenter) : null;
+        return count != null ? count.get() : 0;
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return сообщения, полученные через сетевой мост
+     */
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    public int getMaxHops() {
+        return maxHops.get();
+    }
+
+    public void print(PrintStream out) {
+        List<String> origins = new ArrayList<>(dataCenters);
+        for (String origin : counts.keySet()) {
+            if (!origins.contains(origin)) {
+                origins.add(origin);
+            }
+        }
+
+        out.println("Forwarding matrix (rows - sent in, columns - received in):");
+        StringBuilder header = new StringBuilder(String.format("  %-15s", ""));
+        for (String dataCenter : dataCenters) {
+            header.append(String.format(" %15s", dataCenter));
+        }
+        out.println(header);
+        for (String origin : origins) {
+            if (!counts.containsKey(origin)) {
+                continue;
+            }
+            StringBuilder row = new StringBuilder(String.format("  %-15s", origin));
+            for (String dataCenter : dataCenters) {
+                row.append(String.format(" %15d", get(origin, dataCenter)));
+            }
+            out.println(row);
+        }
+        out.println(String.format("  via network bridge %d of %d (%.1f%%), max hops %d", getForwarded(), getTotal(),
+                getTotal() == 0 ? 0 : 100.0 * getForwarded() / getTotal(), getMaxHops()));
+    }
+}
@@ -0,0 +1,108 @@
+package ru.softlab.ib6.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.io.PrintStream;
+
+/**
+ * Гистограммы задержки доставки сообщений от отправки до получения consumer'ом.
+ *
+ * Задержки сообщений, полученных от брокера, к которому подключён producer, и сообщений, пересланных
+ * по сетевому мосту с другого брокера, записываются раздельно. Запись в {@link ConcurrentHistogram}
+ * не использует блокировок, поэтому recorder можно разделять между consumer'ами.
+ *
+ * @author Andrey Grigorov
+ */
+public class LatencyRecorder {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final Histogram local = new ConcurrentHistogram(3);
+    private final Histogram forwarded = new ConcurrentHistogram(3);
+
+    /**
+     * Записывает задержку сообщения по его свойству {@link Messages#SEND_TIME_PROPERTY}.
+     * Сообщения без этого свойства пропускаются.
+     */
+    public void record(Message message) {
+        long receiveTime = Clock.epochMicros();
+        try {
+            if (!message.propertyExists(Messages.SEND_TIME_PROPERTY)) {
+                return;
+            }
+            record(receiveTime - message.getLongProperty(Messages.SEND_TIME_PROPERTY), isForwarded(message));
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param latencyMicros задержка в микросекундах
+     * @param forwarded     получено ли сообщение через сетевой мост
+     */
+    public void record(long latencyMicros, boolean forwarded) {
+        // при рассинхронизации часов разных машин задержка может получиться отрицательной
+        (forwarded ? this.forwarded : local).recordValue(Math.max(0, latencyMicros));
+    }
+
+    /**
+     * Сообщение, пересланное сетевым мостом, содержит в broker path идентификаторы брокеров, через которые прошло.
+     *
+     * @see ForwardingMatrix#hops(Message)
+     */
+    public static boolean isForwarded(Message message) {
+        return ForwardingMatrix.hops(message) > 0;
+    }
+
+    public Histogram getLocal() {
+        return local.copy();
+    }
+
+    public Histogram getForwarded() {
+        return forwarded.copy();
+    }
+
+    /**
+     * @return общая гистограмма задержек локальных и пересланных сообщений
+     */
+    public Histogram getAll() {
+        Histogram all = local.copy();
+        all.add(forwarded.copy());
+        return all;
+    }
+
+    /**
+     * @return доля сообщений, полученных через сетевой мост, от 0 до 1
+     */
+    public double getForwardedShare() {
+        long forwardedCount = forwarded.getTotalCount();
+        long total = local.getTotalCount() + forwardedCount;
+        return total == 0 ? 0 : forwardedCount / (double) total;
+    }
+
+    public void printSummary(PrintStream out) {
+        out.println("Latency, ms:");
+        out.println("  local     " + summary(local.copy()));
+        out.println("  forwarded " + summary(forwarded.copy()));
+    }
+
+    private static String summary(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "no messages";
+        }
+        StringBuilder result = new StringBuilder(String.format("%7d msgs", histogram.getTotalCount()));
+        for (double percentile : PERCENTILES) {
+            result.append(String.format(", p%s %8.3f", format(percentile), histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        result.append(String.format(", max %8.3f", histogram.getMaxValue() / 1000.0));
+        return result.toString();
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.softlab.ib6.payload;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.StreamMessage;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Полезная нагрузка сообщения - неизменяемый участок заранее заполненного буфера.
+ * Буфер общий для многих экземпляров, поэтому наружу он не отдаётся: нагрузку можно записать в сообщение,
+ * прочитать через буфер только для чтения или скопировать.
+ *
+ * @author Andrey Grigorov
+ */
+public final class Payload {
+
+    private final byte[] buffer;
+    private final int offset;
+    private final int length;
+
+    Payload(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Записывает нагрузку в тело сообщения без промежуточного копирования.
+     */
+    public void writeTo(BytesMessage message) throws JMSException {
+        message.writeBytes(buffer, offset, length);
+    }
+
+    /**
+     * Записывает нагрузку в поток сообщения одним элементом byte[] без промежуточного копирования.
+     */
+    public void writeTo(StreamMessage message) throws JMSException {
+        message.writeBytes(buffer, offset, length);
+    }
+
+    /**
+     * @return нагрузка без копирования, в буфере только для чтения; позиция и предел у каждого вызова свои
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(buffer, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return копия нагрузки
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+}
@@ -0,0 +1,57 @@
+package ru.softlab.ib6.payload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Содержимое полезной нагрузки.
+ *
+ * @author Andrey Grigorov
+ */
+public enum PayloadContent {
+
+    /**
+     * Случайные байты - практически не сжимаются.
+     */
+    RANDOM {
+        @Override
+        void fill(byte[] buffer, Random random) {
+            random.nextBytes(buffer);
+        }
+    },
+
+    /**
+     * Текст из JSON-подобных записей с повторяющимися ключами и значениями - сжимается в несколько раз,
+     * как типичные прикладные сообщения.
+     */
+    TEXT {
+        @Override
+        void fill(byte[] buffer, Random random) {
+            int position = 0;
+            while (position < buffer.length) {
+                String record = "{\"id\":" + random.nextInt(1000000)
+                        + ",\"service\":\"" + WORDS[random.nextInt(WORDS.length)]
+                        + "\",\"status\":\"" + WORDS[random.nextInt(WORDS.length)]
+                        + "\",\"amount\":" + random.nextInt(10000) + "." + random.nextInt(100) + "}\n";
+                byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+                int length = Math.min(bytes.length, buffer.length - position);
+                System.arraycopy(bytes, 0, buffer, position, length);
+                position += length;
+            }
+        }
+    };
+
+    private static final String[] WORDS = {
+            "ABC", "XYZ", "payment", "transfer", "account", "OK", "REJECTED", "PENDING", "DataCenter #1", "DataCenter #2"
+    };
+
+    abstract void fill(byte[] buffer, Random random);
+
+    /**
+     * @param name random или text, без учёта регистра
+     */
+    public static PayloadContent parse(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,55 @@
+package ru.softlab.ib6.payload;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Поток заданной длины из последовательных участков {@link PayloadProvider}: позволяет передать нагрузку
+ * в сотни мегабайт, не создавая массив такого размера.
+ *
+ * @author Andrey Grigorov
+ */
+public class PayloadInputStream extends InputStream {
+
+    private final PayloadProvider payloads;
+    private long remaining;
+    private ByteBuffer current;
+
+    /**
+     * @param payloads источник участков нагрузки
+     * @param size     длина потока в байтах
+     */
+    public PayloadInputStream(PayloadProvider payloads, long size) {
+        this.payloads = payloads;
+        this.remaining = size;
+    }
+
+    @Override
+    public int read() {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (remaining == 0) {
+            return -1;
+        }
+        int total = 0;
+        while (total < length && remaining > 0) {
+            if (current == null || !current.hasRemaining()) {
+                current = payloads.next().asReadOnlyBuffer();
+            }
+            int count = (int) Math.min(Math.min(length - total, current.remaining()), remaining);
+            current.get(buffer, offset + total, count);
+            total += count;
+            remaining -= count;
+        }
+        return total;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.softlab.ib6.payload;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Источник полезной нагрузки, не выделяющий память при отправке.
+ *
+ * При создании один раз заполняется общий буфер и из него нарезается пул участков, размеры которых
+ * выбраны по заданному распределению. {@link #next()} лишь выбирает случайный участок из пула с помощью
+ * {@link ThreadLocalRandom}, поэтому потоки не конкурируют за общий генератор случайных чисел, а под
+ * нагрузкой не создаются ни массивы, ни объекты.
+ *
+ * Параметры по умолчанию задаются системными свойствами:
+ * payload.size - распределение размеров (см. {@link SizeDistribution#parse(String)}, по умолчанию fixed:10000),
+ * payload.content - random или text (по умолчанию random).
+ *
+ * @author Andrey Grigorov
+ */
+public class PayloadProvider {
+
+    /**
+     * Размер пула по умолчанию. Достаточен, чтобы выборка размеров повторяла распределение.
+     */
+    public static final int DEFAULT_POOL_SIZE = 1024;
+
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+
+    private final SizeDistribution sizeDistribution;
+    private final PayloadContent content;
+    private final Payload[] pool;
+
+    public PayloadProvider(SizeDistribution sizeDistribution, PayloadContent content) {
+        this(sizeDistribution, content, DEFAULT_POOL_SIZE, new Random(42));
+    }
+
+    /**
+     * @param sizeDistribution распределение размеров
+     * @param content          содержимое нагрузки
+     * @param poolSize         число заранее нарезанных участков
+     * @param random           генератор для заполнения буфера; фиксированный seed делает нагрузку воспроизводимой
+     */
+    public PayloadProvider(SizeDistribution sizeDistribution, PayloadContent content, int poolSize, Random random) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        this.sizeDistribution = sizeDistribution;
+        this.content = content;
+
+        // буфер вдвое больше максимального размера, чтобы участки одного размера начинались с разных смещений
+        int maxSize = sizeDistribution.max();
+        byte[] buffer = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_BUFFER_SIZE, 2L * maxSize))];
+        content.fill(buffer, random);
+
+        this.pool = new Payload[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            int size = sizeDistribution.next(random);
+            int offset = random.nextInt(buffer.length - size + 1);
+            pool[i] = new Payload(buffer, offset, size);
+        }
+    }
+
+    /**
+     * Создаёт источник по системным свойствам payload.size и payload.content.
+     */
+    public static PayloadProvider fromSystemProperties() {
+        return new PayloadProvider(
+                SizeDistribution.parse(System.getProperty("payload.size", "fixed:10000")),
+                PayloadContent.parse(System.getProperty("payload.content", "random")));
+    }
+
+    /**
+     * @return случайный участок из пула
+     */
+    public Payload next() {
+        return pool[pool.length == 1 ? 0 : ThreadLocalRandom.current().nextInt(pool.length)];
+    }
+
+    public SizeDistribution getSizeDistribution() {
+        return sizeDistribution;
+    }
+
+    public PayloadContent getContent() {
+        return content;
+    }
+
+    @Override
+    public String toString() {
+        return sizeDistribution + ", " + content.name().toLowerCase(Locale.ROOT);
+    }
+}
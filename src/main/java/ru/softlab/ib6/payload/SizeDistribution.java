@@ -0,0 +1,160 @@
+package ru.softlab.ib6.payload;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Распределение размеров полезной нагрузки.
+ *
+ * @author Andrey Grigorov
+ */
+public abstract class SizeDistribution {
+
+    /**
+     * @return следующий размер в байтах
+     */
+    public abstract int next(Random random);
+
+    /**
+     * @return максимальный размер в байтах, который может вернуть {@link #next(Random)}
+     */
+    public abstract int max();
+
+    public static SizeDistribution fixed(final int size) {
+        checkSize(size);
+        return new SizeDistribution() {
+            @Override
+            public int next(Random random) {
+                return size;
+            }
+
+            @Override
+            public int max() {
+                return size;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed:" + size;
+            }
+        };
+    }
+
+    /**
+     * Равномерное распределение от min до max включительно.
+     */
+    public static SizeDistribution uniform(final int min, final int max) {
+        checkSize(min);
+        if (max < min) {
+            throw new IllegalArgumentException("max < min: " + max + " < " + min);
+        }
+        return new SizeDistribution() {
+            @Override
+            public int next(Random random) {
+                return min + random.nextInt(max - min + 1);
+            }
+
+            @Override
+            public int max() {
+                return max;
+            }
+
+            @Override
+            public String toString() {
+                return "uniform:" + min + "-" + max;
+            }
+        };
+    }
+
+    /**
+     * Распределение по записанной гистограмме: размер sizes[i] встречается с относительной частотой weights[i].
+     */
+    public static SizeDistribution histogram(int[] sizes, long[] weights) {
+        if (sizes.length == 0 || sizes.length != weights.length) {
+            throw new IllegalArgumentException("sizes and weights must be non-empty and of the same length");
+        }
+        final int[] values = sizes.clone();
+        final long[] cumulativeWeights = new long[weights.length];
+        long total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            checkSize(values[i]);
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Negative weight: " + weights[i]);
+            }
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Total weight is zero");
+        }
+        final long totalWeight = total;
+        final int max = Arrays.stream(values).max().getAsInt();
+        return new SizeDistribution() {
+            @Override
+            public int next(Random random) {
+                long point = (long) (random.nextDouble() * totalWeight);
+                int index = Arrays.binarySearch(cumulativeWeights, point + 1);
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                // размеры с нулевым весом имеют ту же накопленную сумму, что и предыдущий
+                while (index > 0 && cumulativeWeights[index - 1] == cumulativeWeights[index]) {
+                    index--;
+                }
+                return values[index];
+            }
+
+            @Override
+            public int max() {
+                return max;
+            }
+
+            @Override
+            public String toString() {
+                return "histogram:" + Arrays.toString(values);
+            }
+        };
+    }
+
+    /**
+     * Разбирает описание распределения:
+     * "fixed:10000", "uniform:1000-20000" или "histogram:512=50,10000=40,100000=10" (размер=вес).
+     */
+    public static SizeDistribution parse(String description) {
+        String[] parts = description.trim().split(":", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Illegal size distribution: " + description);
+        }
+        switch (parts[0]) {
+            case "fixed":
+                return fixed(Integer.parseInt(parts[1].trim()));
+            case "uniform": {
+                String[] bounds = parts[1].split("-");
+                return uniform(Integer.parseInt(bounds[0].trim()), Integer.parseInt(bounds[1].trim()));
+            }
+            case "histogram": {
+                String[] buckets = parts[1].split(",");
+                int[] sizes = new int[buckets.length];
+                long[] weights = new long[buckets.length];
+                for (int i = 0; i < buckets.length; i++) {
+                    String[] bucket = buckets[i].split("=");
+                    sizes[i] = Integer.parseInt(bucket[0].trim());
+                    weights[i] = Long.parseLong(bucket[1].trim());
+                }
+                return histogram(sizes, weights);
+            }
+            default:
+                throw new IllegalArgumentException("Illegal size distribution: " + description);
+        }
+    }
+
+    /**
+     * Пустая нагрузка не допускается: из неё нельзя прочитать ни байта, и {@link PayloadInputStream} не смог бы
+     * продвинуться.
+     */
+    private static void checkSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.softlab.ib6.persistence;
+
+import ru.softlab.ib6.embedded.BrokerStore;
+
+import javax.jms.DeliveryMode;
+import java.util.Locale;
+
+/**
+ * Сочетание режима доставки сообщений и хранилища брокеров.
+ *
+ * @author Andrey Grigorov
+ */
+public enum DurabilityMode {
+
+    /**
+     * NON_PERSISTENT: сообщения не записываются в хранилище, а клиент ActiveMQ по умолчанию отправляет их
+     * асинхронно, не дожидаясь ответа брокера.
+     */
+    NON_PERSISTENT(DeliveryMode.NON_PERSISTENT, BrokerStore.KAHADB),
+
+    /**
+     * PERSISTENT с синхронизацией журнала KahaDB при каждой записи, как сейчас.
+     */
+    PERSISTENT_SYNC(DeliveryMode.PERSISTENT, BrokerStore.KAHADB),
+
+    /**
+     * PERSISTENT без синхронизации журнала KahaDB.
+     */
+    PERSISTENT_NO_SYNC(DeliveryMode.PERSISTENT, BrokerStore.KAHADB_NO_SYNC),
+
+    /**
+     * PERSISTENT с хранилищем в памяти брокера.
+     */
+    PERSISTENT_MEMORY(DeliveryMode.PERSISTENT, BrokerStore.MEMORY);
+
+    private final int deliveryMode;
+    private final BrokerStore store;
+
+    DurabilityMode(int deliveryMode, BrokerStore store) {
+        this.deliveryMode = deliveryMode;
+        this.store = store;
+    }
+
+    /**
+     * @return режим доставки для {@link javax.jms.MessageProducer#setDeliveryMode(int)}
+     */
+    public int getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    /**
+     * @return хранилище, с которым нужно запустить брокеры
+     */
+    public BrokerStore getStore() {
+        return store;
+    }
+
+    /**
+     * @param value "non_persistent", "persistent_sync", "persistent_no_sync" или "persistent_memory"
+     */
+    public static DurabilityMode parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
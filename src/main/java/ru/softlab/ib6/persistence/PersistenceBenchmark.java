@@ -0,0 +1,167 @@
+package ru.softlab.ib6.persistence;
+
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.metrics.Delivery;
+import ru.softlab.ib6.metrics.DiskWrites;
+import ru.softlab.ib6.metrics.LatencyRecorder;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Цена надёжности доставки: producer первого датацентра отправляет сообщения в очередь, а consumer получает их
+ * в том же датацентре (локальная доставка) или в другом (через сетевой мост).
+ *
+ * Брокеры должны быть запущены внутри JVM с хранилищем {@link DurabilityMode#getStore()}: размер журналов KahaDB
+ * берётся у брокеров, а запись на диск - по счётчику текущего процесса, в который входят и брокеры.
+ *
+ * @author Andrey Grigorov
+ */
+public class PersistenceBenchmark {
+
+    private final List<DataCenter> dataCenters;
+    private final EmbeddedBrokerNetwork network;
+    private final DurabilityMode mode;
+    private final int messages;
+    private final int warmUpMessages;
+    private final long timeoutMillis;
+
+    private PersistenceBenchmark(Builder builder) {
+        this.dataCenters = builder.dataCenters;
+        this.network = builder.network;
+        this.mode = builder.mode;
+        this.messages = builder.messages;
+        this.warmUpMessages = builder.warmUpMessages;
+        this.timeoutMillis = builder.timeoutMillis;
+    }
+
+    /**
+     * @param dataCenters датацентры, подключённые к брокерам network; producer работает в первом
+     * @param network     брокеры, запущенные с хранилищем mode
+     */
+    public static Builder builder(List<DataCenter> dataCenters, EmbeddedBrokerNetwork network, DurabilityMode mode) {
+        return new Builder(dataCenters, network, mode);
+    }
+
+    /**
+     * @return результаты локальной доставки и доставки через сетевой мост
+     */
+    public List<PersistenceResult> run() throws Exception {
+        if (network.getStore() != mode.getStore()) {
+            throw new IllegalStateException(mode + " requires brokers with " + mode.getStore() + " store, but they use "
+                    + network.getStore());
+        }
+        List<PersistenceResult> results = new ArrayList<>();
+        results.add(run(dataCenters.get(0), false));
+        results.add(run(dataCenters.get(1), true));
+        return results;
+    }
+
+    private PersistenceResult run(DataCenter consumerDataCenter, boolean forwarded) throws Exception {
+        DataCenter producerDataCenter = dataCenters.get(0);
+        String queue = "dynamicQueues/persistence." + Long.toString(System.currentTimeMillis(), 36);
+        final AtomicReference<LatencyRecorder> latency = new AtomicReference<>(new LatencyRecorder());
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong lastReceiveMicros = new AtomicLong();
+
+        Connection consumerConnection = consumerDataCenter.getConnectionFactory().createConnection();
+        Connection producerConnection = producerDataCenter.getConnectionFactory().createConnection();
+        try {
+            Session consumerSession = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = consumerSession.createConsumer(consumerDataCenter.lookup(queue));
+            consumer.setMessageListener(message -> {
+                latency.get().record(message);
+                lastReceiveMicros.set(Clock.epochMicros());
+                received.incrementAndGet();
+            });
+            consumerConnection.start();
+
+            Session producerSession = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = producerSession.createProducer(producerDataCenter.lookup(queue));
+            producer.setDeliveryMode(mode.getDeliveryMode());
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+
+            send(producerSession, producer, warmUpMessages);
+            if (!Delivery.await(received, warmUpMessages, timeoutMillis)) {
+                throw new IllegalStateException("Warm-up messages were not delivered in " + timeoutMillis + " ms");
+            }
+            received.set(0);
+            latency.set(new LatencyRecorder());
+
+            long journalBefore = network.getJournalBytes();
+            long diskBefore = DiskWrites.processWriteBytes();
+            long startMicros = Clock.epochMicros();
+            send(producerSession, producer, messages);
+            boolean completed = Delivery.await(received, messages, timeoutMillis);
+            long elapsedMicros = Math.max(1, lastReceiveMicros.get() - startMicros);
+            long diskAfter = DiskWrites.processWriteBytes();
+            long journalBytes = network.getJournalBytes() - journalBefore;
+            long diskBytes = diskBefore < 0 || diskAfter < 0 ? -1 : diskAfter - diskBefore;
+
+            return new PersistenceResult(mode, forwarded, received.get(), completed, elapsedMicros,
+                    latency.get().getAll(), journalBytes, diskBytes);
+        } finally {
+            producerConnection.close();
+            consumerConnection.close();
+        }
+    }
+
+    private static void send(Session session, MessageProducer producer, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            producer.send(Messages.createBytesMessage(session, "persistence-" + i, null));
+        }
+    }
+
+    public static class Builder {
+
+        private final List<DataCenter> dataCenters;
+        private final EmbeddedBrokerNetwork network;
+        private final DurabilityMode mode;
+        private int messages = 5000;
+        private int warmUpMessages = 500;
+        private long timeoutMillis = 60000;
+
+        private Builder(List<DataCenter> dataCenters, EmbeddedBrokerNetwork network, DurabilityMode mode) {
+            this.dataCenters = new ArrayList<>(dataCenters);
+            this.network = network;
+            this.mode = mode;
+        }
+
+        /**
+         * @param messages       число измеряемых сообщений
+         * @param warmUpMessages число сообщений прогрева
+         */
+        public Builder messages(int messages, int warmUpMessages) {
+            this.messages = messages;
+            this.warmUpMessages = warmUpMessages;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis максимальное время ожидания доставки
+         */
+        public Builder timeout(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        public PersistenceBenchmark build() {
+            if (dataCenters.size() < 2) {
+                throw new IllegalStateException("two data centers are required");
+            }
+            if (messages < 1 || warmUpMessages < 0) {
+                throw new IllegalStateException("messages must be positive: " + messages + ", " + warmUpMessages);
+            }
+            return new PersistenceBenchmark(this);
+        }
+    }
+}
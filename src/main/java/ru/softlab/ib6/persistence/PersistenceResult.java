@@ -0,0 +1,89 @@
+package ru.softlab.ib6.persistence;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Результат доставки сообщений в одном режиме надёжности.
+ *
+ * @author Andrey Grigorov
+ */
+public class PersistenceResult {
+
+    private final DurabilityMode mode;
+    private final boolean forwarded;
+    private final long received;
+    private final boolean completed;
+    private final long elapsedMicros;
+    private final Histogram latency;
+    private final long journalBytes;
+    private final long diskBytes;
+
+    PersistenceResult(DurabilityMode mode, boolean forwarded, long received, boolean completed, long elapsedMicros,
+                      Histogram latency, long journalBytes, long diskBytes) {
+        this.mode = mode;
+        this.forwarded = forwarded;
+        this.received = received;
+        this.completed = completed;
+        this.elapsedMicros = elapsedMicros;
+        this.latency = latency;
+        this.journalBytes = journalBytes;
+        this.diskBytes = diskBytes;
+    }
+
+    public static void printHeader(PrintStream out) {
+        out.println(String.format("%-20s %-10s %10s %9s %9s %9s %16s %16s",
+                "mode", "delivery", "msg/s", "p50 ms", "p99 ms", "p99.9 ms", "journal B/msg", "disk B/msg"));
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return true для доставки consumer'у другого датацентра через сетевой мост
+     */
+    public boolean isForwarded() {
+        return forwarded;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public double getThroughput() {
+        return received * 1e6 / elapsedMicros;
+    }
+
+    /**
+     * @return задержка доставки в микросекундах
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return прирост журналов KahaDB всех брокеров
+     */
+    public long getJournalBytes() {
+        return journalBytes;
+    }
+
+    /**
+     * @return байты, записанные процессом на диск, или -1, если счётчик недоступен
+     */
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+
+    public void print(PrintStream out) {
+        out.println(String.format("%-20s %-10s %10.1f %9.3f %9.3f %9.3f %16.0f %16s%s",
+                mode.name().toLowerCase(Locale.ROOT), forwarded ? "forwarded" : "local", getThroughput(),
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0, journalBytes / (double) Math.max(1, received),
+                diskBytes < 0 ? "n/a" : String.format("%.0f", diskBytes / (double) Math.max(1, received)),
+                completed ? "" : " TIMEOUT"));
+    }
+}
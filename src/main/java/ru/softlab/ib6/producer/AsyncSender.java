@@ -0,0 +1,240 @@
+package ru.softlab.ib6.producer;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQMessageProducer;
+import org.apache.activemq.AsyncCallback;
+import org.apache.activemq.transport.TransportListener;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Асинхронная отправка сообщений с ограниченным числом неподтверждённых сообщений.
+ *
+ * Сообщение отправляется через {@link ActiveMQMessageProducer#send(Message, AsyncCallback)}: поток
+ * producer'а не ждёт подтверждения от брокера, а подтверждение (или ошибка) приходит в callback.
+ * Пока подтверждений нет, число сообщений "в полёте" не превышает maxInFlight - при достижении лимита
+ * отправка блокируется. jms.producerWindowSize на такую отправку не влияет: send с callback'ом не проходит
+ * через окно producer'а. Отправку, ограниченную окном, выполняет {@link WindowedSender}.
+ *
+ * При обрыве транспорта (переключении failover'а на другой брокер) запоминается, какие сообщения
+ * в этот момент ещё не были подтверждены. Failover-транспорт повторяет неподтверждённые запросы после
+ * переподключения, поэтому часть из них может быть подтверждена позже; окончательно потерянными
+ * считаются только сообщения, которые остались неподтверждёнными после {@link #awaitCompletion}.
+ *
+ * Метод send не потокобезопасен: отправлять сообщения должен один поток.
+ *
+ * @author Andrey Grigorov
+ */
+public class AsyncSender implements AutoCloseable {
+
+    /**
+     * Получатель результатов отправки. Вызывается из потока транспорта, поэтому должен работать быстро.
+     */
+    public interface CompletionListener {
+
+        void onComplete(String correlationId);
+
+        void onFailure(String correlationId, JMSException exception);
+    }
+
+    /**
+     * Сообщения, которые не были подтверждены в момент обрыва транспорта.
+     */
+    public static final class FailoverEvent {
+
+        private final long timeMillis;
+        private final List<String> unconfirmed;
+
+        FailoverEvent(long timeMillis, List<String> unconfirmed) {
+            this.timeMillis = timeMillis;
+            this.unconfirmed = unconfirmed;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public List<String> getUnconfirmed() {
+            return unconfirmed;
+        }
+    }
+
+    private final int maxInFlight;
+    private final Semaphore inFlightPermits;
+    private final ConcurrentMap<Long, String> inFlight = new ConcurrentHashMap<>();
+    private final List<FailoverEvent> failoverEvents = new CopyOnWriteArrayList<>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Connection connection;
+    private final Session session;
+    private final Map<Destination, ActiveMQMessageProducer> producers = new HashMap<>();
+    private long sequence;
+
+    /**
+     * @param connectionFactory фабрика соединений ActiveMQ
+     * @param maxInFlight       максимальное число неподтверждённых сообщений
+     * @throws JMSException
+     */
+    public AsyncSender(ConnectionFactory connectionFactory, int maxInFlight) throws JMSException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.connection = connectionFactory.createConnection();
+        try {
+            ((ActiveMQConnection) connection).addTransportListener(new FailoverTracker());
+            connection.start();
+            this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        } catch (JMSException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Отправляет сообщение, не дожидаясь подтверждения брокера. Блокируется, если неподтверждённых
+     * сообщений уже maxInFlight.
+     *
+     * @param destination   очередь или топик
+     * @param correlationId correlation ID сообщения
+     * @param headers       строковые свойства сообщения, может быть null
+     * @param listener      получатель результата отправки, может быть null
+     * @throws JMSException
+     */
+    public void send(Destination destination, String correlationId, Map<String, String> headers,
+                     final CompletionListener listener) throws JMSException {
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for the in-flight window");
+        }
+
+        final Long id = sequence++;
+        inFlight.put(id, correlationId);
+        try {
+            Message message = Messages.createBytesMessage(session, correlationId, headers);
+            producer(destination).send(message, new AsyncCallback() {
+                @Override
+                public void onSuccess() {
+                    String confirmed = inFlight.remove(id);
+                    if (confirmed != null) {
+                        inFlightPermits.release();
+                        completed.incrementAndGet();
+                        if (listener != null) {
+                            listener.onComplete(confirmed);
+                        }
+                    }
+                }
+
+                @Override
+                public void onException(JMSException exception) {
+                    String rejected = inFlight.remove(id);
+                    if (rejected != null) {
+                        inFlightPermits.release();
+                        failed.incrementAndGet();
+                        if (listener != null) {
+                            listener.onFailure(rejected, exception);
+                        }
+                    }
+                }
+            });
+        } catch (JMSException | RuntimeException e) {
+            if (inFlight.remove(id) != null) {
+                inFlightPermits.release();
+                failed.incrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ждёт подтверждения всех отправленных сообщений.
+     *
+     * @return true, если все сообщения подтверждены или отклонены до истечения таймаута
+     * @throws InterruptedException
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        if (inFlightPermits.tryAcquire(maxInFlight, timeout, unit)) {
+            inFlightPermits.release(maxInFlight);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return correlation ID сообщений, которые ещё не подтверждены брокером
+     */
+    public List<String> getUnconfirmed() {
+        return new ArrayList<>(inFlight.values());
+    }
+
+    public List<FailoverEvent> getFailoverEvents() {
+        return Collections.unmodifiableList(failoverEvents);
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    private ActiveMQMessageProducer producer(Destination destination) throws JMSException {
+        ActiveMQMessageProducer producer = producers.get(destination);
+        if (producer == null) {
+            producer = (ActiveMQMessageProducer) session.createProducer(destination);
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+            producers.put(destination, producer);
+        }
+        return producer;
+    }
+
+    @Override
+    public void close() throws JMSException {
+        try {
+            session.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private class FailoverTracker implements TransportListener {
+
+        @Override
+        public void onCommand(Object command) {
+        }
+
+        @Override
+        public void onException(IOException error) {
+        }
+
+        @Override
+        public void transportInterupted() {
+            failoverEvents.add(new FailoverEvent(System.currentTimeMillis(), getUnconfirmed()));
+        }
+
+        @Override
+        public void transportResumed() {
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package ru.softlab.ib6.producer;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетная отправка сообщений в одной транзакционной сессии.
+ *
+ * Commit выполняется после каждых batchSize сообщений либо когда с первого сообщения пакета прошло
+ * batchTimeoutMillis миллисекунд, а также в конце потока. Таймаут проверяет отдельный поток по расписанию,
+ * поэтому пакет фиксируется вовремя, даже если следующее сообщение из итератора долго не приходит.
+ *
+ * Пока пакет не зафиксирован, его сообщения хранятся в памяти. Если отправка или commit завершились ошибкой
+ * (например, failover-транспорт переподключился к другому брокеру и транзакция была откачена с
+ * TransactionRolledBackException), выполняется rollback и весь пакет отправляется заново. Если ошибка
+ * случилась при самом commit'е, брокер мог успеть его применить, поэтому повторная отправка даёт
+ * гарантию "хотя бы один раз", а не "ровно один раз".
+ *
+ * Экземпляр не потокобезопасен.
+ *
+ * @author Andrey Grigorov
+ */
+public class BatchSender implements AutoCloseable {
+
+    /**
+     * Число повторных попыток отправить пакет по умолчанию.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private final int batchSize;
+    private final long batchTimeoutNanos;
+    private final int maxRetries;
+    private final Connection connection;
+    private final Session session;
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param connectionFactory  фабрика соединений брокера
+     * @param batchSize          число сообщений в одной транзакции
+     * @param batchTimeoutMillis максимальная длительность пакета, 0 - не ограничена
+     * @throws JMSException
+     */
+    public BatchSender(ConnectionFactory connectionFactory, int batchSize, long batchTimeoutMillis) throws JMSException {
+        this(connectionFactory, batchSize, batchTimeoutMillis, DEFAULT_MAX_RETRIES);
+    }
+
+    public BatchSender(ConnectionFactory connectionFactory, int batchSize, long batchTimeoutMillis,
+                       int maxRetries) throws JMSException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.batchTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(batchTimeoutMillis);
+        this.maxRetries = maxRetries;
+        this.connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+            this.session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        } catch (JMSException e) {
+            connection.close();
+            throw e;
+        }
+        this.flusher = batchTimeoutNanos > 0 ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batch-flusher");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Отправляет все сообщения из итератора пакетами.
+     *
+     * @param destination очередь или топик
+     * @param messages    отправляемые сообщения; подходит и {@code stream.iterator()}
+     * @return статистика отправки
+     * @throws JMSException если пакет не удалось отправить за maxRetries повторов
+     */
+    public BatchStatistics send(Destination destination, Iterator<OutgoingMessage> messages) throws JMSException {
+        Transfer transfer = new Transfer(session.createProducer(destination));
+        ScheduledFuture<?> timer = null;
+        try {
+            if (flusher != null) {
+                long periodNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), batchTimeoutNanos / 4);
+                timer = flusher.scheduleWithFixedDelay(transfer::flushIfExpired, periodNanos, periodNanos,
+                        TimeUnit.NANOSECONDS);
+            }
+            while (messages.hasNext()) {
+                transfer.add(messages.next());
+            }
+            return transfer.finish();
+        } finally {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            transfer.close();
+        }
+    }
+
+    public BatchStatistics send(Destination destination, Iterable<OutgoingMessage> messages) throws JMSException {
+        return send(destination, messages.iterator());
+    }
+
+    /**
+     * Отправка одного потока сообщений. Методы синхронизированы: пакет дополняет поток, вызвавший send, а по
+     * таймауту фиксирует поток flusher'а, поэтому сессией в каждый момент пользуется только один из них.
+     */
+    private class Transfer {
+
+        private final MessageProducer producer;
+        private final List<OutgoingMessage> batch = new ArrayList<>(batchSize);
+        private final BatchStatistics statistics = new BatchStatistics(batchSize);
+        private final long startTime = System.nanoTime();
+        private long batchStartTime = startTime;
+        private JMSException flushError;
+
+        Transfer(MessageProducer producer) throws JMSException {
+            this.producer = producer;
+            try {
+                producer.setTimeToLive(Messages.TIME_TO_LIVE);
+            } catch (JMSException e) {
+                producer.close();
+                throw e;
+            }
+        }
+
+        synchronized void add(OutgoingMessage message) throws JMSException {
+            checkFlushError();
+            if (batch.isEmpty()) {
+                batchStartTime = System.nanoTime();
+            }
+            batch.add(message);
+            try {
+                send(producer, message);
+            } catch (JMSException e) {
+                // пакет будет целиком отправлен заново при commit'е
+                statistics.sendFailed();
+                resend(producer, batch, statistics, e);
+            }
+
+            if (batch.size() >= batchSize) {
+                commit(producer, batch, statistics);
+            }
+        }
+
+        /**
+         * Фиксирует пакет, если с момента его первого сообщения прошло batchTimeoutMillis. Ошибка commit'а
+         * сохраняется и выбрасывается потоку, вызвавшему send, при следующем сообщении или в конце потока.
+         */
+        synchronized void flushIfExpired() {
+            if (batch.isEmpty() || flushError != null || System.nanoTime() - batchStartTime < batchTimeoutNanos) {
+                return;
+            }
+            try {
+                commit(producer, batch, statistics);
+            } catch (JMSException e) {
+                flushError = e;
+            }
+        }
+
+        synchronized BatchStatistics finish() throws JMSException {
+            checkFlushError();
+            if (!batch.isEmpty()) {
+                commit(producer, batch, statistics);
+            }
+            statistics.finish(System.nanoTime() - startTime);
+            return statistics;
+        }
+
+        private void checkFlushError() throws JMSException {
+            if (flushError != null) {
+                throw flushError;
+            }
+        }
+
+        synchronized void close() throws JMSException {
+            producer.close();
+        }
+    }
+
+    private void commit(MessageProducer producer, List<OutgoingMessage> batch,
+                        BatchStatistics statistics) throws JMSException {
+        for (int attempt = 0; ; attempt++) {
+            long commitStartTime = System.nanoTime();
+            try {
+                session.commit();
+                statistics.batchCommitted(batch.size(), System.nanoTime() - commitStartTime);
+                batch.clear();
+                return;
+            } catch (JMSException e) {
+                if (attempt >= maxRetries) {
+                    rollbackQuietly();
+                    throw e;
+                }
+                resend(producer, batch, statistics, e);
+            }
+        }
+    }
+
+    /**
+     * Откатывает текущую транзакцию и заново отправляет все сообщения незафиксированного пакета.
+     */
+    private void resend(MessageProducer producer, List<OutgoingMessage> batch, BatchStatistics statistics,
+                        JMSException cause) throws JMSException {
+        JMSException lastError = cause;
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            statistics.batchRolledBack();
+            rollbackQuietly();
+            try {
+                for (OutgoingMessage message : batch) {
+                    send(producer, message);
+                }
+                return;
+            } catch (JMSException e) {
+                lastError = e;
+            }
+        }
+        rollbackQuietly();
+        throw lastError;
+    }
+
+    private void send(MessageProducer producer, OutgoingMessage message) throws JMSException {
+        producer.send(Messages.createBytesMessage(session, message.getCorrelationId(), message.getHeaders()));
+    }
+
+    private void rollbackQuietly() {
+        try {
+            session.rollback();
+        } catch (JMSException e) {
+            // транзакция уже откачена брокером или соединение ещё восстанавливается
+        }
+    }
+
+    @Override
+    public void close() throws JMSException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        try {
+            session.close();
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.softlab.ib6.producer;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика пакетной отправки: пропускная способность и задержка commit'ов.
+ *
+ * @author Andrey Grigorov
+ */
+public class BatchStatistics {
+
+    private final int batchSize;
+    private long messages;
+    private long batches;
+    private long failedSends;
+    private long rollbacks;
+    private long elapsedNanos;
+    private long[] commitNanos = new long[64];
+
+    BatchStatistics(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    void batchCommitted(int size, long commitDurationNanos) {
+        if (batches == commitNanos.length) {
+            commitNanos = Arrays.copyOf(commitNanos, commitNanos.length * 2);
+        }
+        commitNanos[(int) batches++] = commitDurationNanos;
+        messages += size;
+    }
+
+    void sendFailed() {
+        failedSends++;
+    }
+
+    void batchRolledBack() {
+        rollbacks++;
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+        Arrays.sort(commitNanos, 0, (int) batches);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getFailedSends() {
+        return failedSends;
+    }
+
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    public double getMessagesPerSecond() {
+        return elapsedNanos == 0 ? 0 : messages * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    public double getAverageCommitMillis() {
+        if (batches == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < batches; i++) {
+            total += commitNanos[i];
+        }
+        return total / (double) batches / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @param percentile процентиль от 0 до 100
+     * @return задержка commit'а в миллисекундах
+     */
+    public double getCommitMillis(double percentile) {
+        if (batches == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * batches) - 1;
+        return commitNanos[Math.max(0, Math.min(index, (int) batches - 1))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batch size %5d: %8.1f msg/s, %6d commits, commit avg %7.2f ms, p99 %7.2f ms, max %7.2f ms, rollbacks %d",
+                batchSize, getMessagesPerSecond(), batches, getAverageCommitMillis(), getCommitMillis(99),
+                getCommitMillis(100), rollbacks);
+    }
+}
@@ -0,0 +1,51 @@
+package ru.softlab.ib6.producer;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.Map;
+
+/**
+ * Базовый способ отправки: на каждое сообщение открываются новые Connection, Session и MessageProducer,
+ * которые закрываются сразу после commit'а.
+ * Оставлен для сравнения с {@link PooledMessageSender}.
+ *
+ * @author Andrey Grigorov
+ */
+public class ConnectionPerMessageSender implements MessageSender {
+
+    @Override
+    public void send(ConnectionFactory connectionFactory, Destination destination,
+                     String correlationId, Map<String, String> headers) throws JMSException {
+        Connection connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            try {
+                BytesMessage bytesMessage = Messages.createBytesMessage(session, correlationId, headers);
+
+                MessageProducer messageProducer = session.createProducer(destination);
+                try {
+                    messageProducer.setTimeToLive(Messages.TIME_TO_LIVE);
+                    messageProducer.send(bytesMessage);
+                } finally {
+                    messageProducer.close();
+                }
+                session.commit();
+            } finally {
+                session.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // ресурсы не удерживаются между отправками
+    }
+}
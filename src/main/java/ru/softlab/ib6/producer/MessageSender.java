@@ -0,0 +1,32 @@
+package ru.softlab.ib6.producer;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import java.util.Map;
+
+/**
+ * Способ отправки одиночного сообщения в брокер.
+ *
+ * @author Andrey Grigorov
+ */
+public interface MessageSender extends AutoCloseable {
+
+    /**
+     * Отправляет сообщение с заданным correlation ID и строковыми свойствами.
+     *
+     * @param connectionFactory фабрика соединений брокера
+     * @param destination       очередь или топик
+     * @param correlationId     correlation ID сообщения
+     * @param headers           строковые свойства сообщения, может быть null
+     * @throws JMSException
+     */
+    void send(ConnectionFactory connectionFactory, Destination destination,
+              String correlationId, Map<String, String> headers) throws JMSException;
+
+    /**
+     * Освобождает все ресурсы, удерживаемые отправителем.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,101 @@
+package ru.softlab.ib6.producer;
+
+import ru.softlab.ib6.metrics.Clock;
+import ru.softlab.ib6.payload.Payload;
+import ru.softlab.ib6.payload.PayloadProvider;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import java.util.Map;
+
+/**
+ * Построение тестовых сообщений.
+ *
+ * @author Andrey Grigorov
+ */
+public final class Messages {
+
+    /**
+     * Размер полезной нагрузки сообщения в байтах по умолчанию.
+     */
+    public static final int PAYLOAD_SIZE = 10000;
+
+    /**
+     * Время жизни отправляемых сообщений в миллисекундах.
+     */
+    public static final long TIME_TO_LIVE = 30000;
+
+    /**
+     * Свойство с временем создания сообщения в микросекундах (см. {@link Clock#epochMicros()}).
+     */
+    public static final String SEND_TIME_PROPERTY = "sendTimeMicros";
+
+    /**
+     * Свойство с названием датацентра, в котором было отправлено сообщение.
+     */
+    public static final String ORIGIN_PROPERTY = "originDataCenter";
+
+    /**
+     * Свойство с номером producer'а, который нумерует свои сообщения (см. {@link #SEQUENCE_PROPERTY}).
+     */
+    public static final String PRODUCER_PROPERTY = "producerIndex";
+
+    /**
+     * Свойство с порядковым номером сообщения у его producer'а, начиная с 1.
+     */
+    public static final String SEQUENCE_PROPERTY = "sequence";
+
+    private static volatile PayloadProvider payloadProvider = PayloadProvider.fromSystemProperties();
+
+    private Messages() {
+    }
+
+    /**
+     * @return источник полезной нагрузки, которым пользуются все отправители
+     */
+    public static PayloadProvider getPayloadProvider() {
+        return payloadProvider;
+    }
+
+    public static void setPayloadProvider(PayloadProvider payloadProvider) {
+        Messages.payloadProvider = payloadProvider;
+    }
+
+    /**
+     * Создаёт BytesMessage с нагрузкой из {@link #getPayloadProvider()}, correlation ID и строковыми свойствами.
+     *
+     * @param session       сессия, в которой создаётся сообщение
+     * @param correlationId correlation ID сообщения
+     * @param headers       строковые свойства сообщения, может быть null
+     * @return сообщение, готовое к отправке
+     * @throws JMSException
+     */
+    public static BytesMessage createBytesMessage(Session session, String correlationId,
+                                                  Map<String, String> headers) throws JMSException {
+        return createBytesMessage(session, payloadProvider.next(), correlationId, headers);
+    }
+
+    public static BytesMessage createBytesMessage(Session session, Payload payload, String correlationId,
+                                                  Map<String, String> headers) throws JMSException {
+        return createBytesMessage(session, payload, correlationId, headers, Clock.epochMicros());
+    }
+
+    /**
+     * @param sendTimeMicros время отправки, от которого считается задержка доставки; генератор нагрузки передаёт
+     *                       запланированное время отправки, чтобы задержка включала и ожидание отстающего producer'а
+     */
+    public static BytesMessage createBytesMessage(Session session, Payload payload, String correlationId,
+                                                  Map<String, String> headers, long sendTimeMicros) throws JMSException {
+        BytesMessage bytesMessage = session.createBytesMessage();
+        payload.writeTo(bytesMessage);
+        bytesMessage.setJMSCorrelationID(correlationId);
+        bytesMessage.setLongProperty(SEND_TIME_PROPERTY, sendTimeMicros);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                bytesMessage.setStringProperty(header.getKey(), header.getValue());
+            }
+        }
+        return bytesMessage;
+    }
+}
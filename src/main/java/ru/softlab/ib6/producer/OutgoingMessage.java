@@ -0,0 +1,32 @@
+package ru.softlab.ib6.producer;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Описание сообщения, которое нужно отправить: correlation ID и строковые свойства.
+ *
+ * @author Andrey Grigorov
+ */
+public final class OutgoingMessage {
+
+    private final String correlationId;
+    private final Map<String, String> headers;
+
+    public OutgoingMessage(String correlationId) {
+        this(correlationId, null);
+    }
+
+    public OutgoingMessage(String correlationId, Map<String, String> headers) {
+        this.correlationId = correlationId;
+        this.headers = headers == null ? Collections.emptyMap() : headers;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+}
@@ -0,0 +1,223 @@
+package ru.softlab.ib6.producer;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Отправитель, который переиспользует Connection, Session и MessageProducer между отправками.
+ *
+ * Для каждой ConnectionFactory открывается одно соединение и ограниченный пул транзакционных сессий.
+ * Сессия в JMS не потокобезопасна, поэтому на время отправки она забирается из пула в монопольное
+ * использование потоком, а затем возвращается обратно. Каждая сессия хранит свои MessageProducer'ы
+ * по Destination. Если потоков больше, чем сессий в пуле, лишние потоки ждут освобождения сессии.
+ *
+ * Если соединение сообщает об ошибке (ExceptionListener) или отправка падает из-за закрытого соединения, оно
+ * закрывается вместе со всеми своими сессиями, и следующая отправка открывает новое соединение.
+ *
+ * @author Andrey Grigorov
+ */
+public class PooledMessageSender implements MessageSender {
+
+    /**
+     * Размер пула сессий по умолчанию.
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 8;
+
+    private final int maxSessions;
+    private final ConcurrentMap<ConnectionFactory, SessionPool> pools = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public PooledMessageSender() {
+        this(DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * @param maxSessions максимальное число сессий на одну ConnectionFactory
+     */
+    public PooledMessageSender(int maxSessions) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+        }
+        this.maxSessions = maxSessions;
+    }
+
+    @Override
+    public void send(ConnectionFactory connectionFactory, Destination destination,
+                     String correlationId, Map<String, String> headers) throws JMSException {
+        if (closed) {
+            throw new IllegalStateException("Sender is closed");
+        }
+        SessionPool pool = pools.computeIfAbsent(connectionFactory, factory -> new SessionPool(factory, maxSessions));
+
+        PooledSession pooledSession = pool.borrow();
+        boolean broken = true;
+        try {
+            BytesMessage bytesMessage = Messages.createBytesMessage(pooledSession.session, correlationId, headers);
+            pooledSession.producer(destination).send(bytesMessage);
+            pooledSession.session.commit();
+            broken = false;
+        } catch (javax.jms.IllegalStateException e) {
+            // соединение закрыто или потеряно: его сессии больше не годятся
+            pool.discard(pooledSession.connection);
+            throw e;
+        } finally {
+            pool.release(pooledSession, broken);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (SessionPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    /**
+     * Соединение с брокером и пул сессий поверх него.
+     */
+    private static class SessionPool {
+
+        private final ConnectionFactory connectionFactory;
+        private final Semaphore permits;
+        private final BlockingQueue<PooledSession> idle = new LinkedBlockingQueue<>();
+        private Connection connection;
+
+        SessionPool(ConnectionFactory connectionFactory, int maxSessions) {
+            this.connectionFactory = connectionFactory;
+            this.permits = new Semaphore(maxSessions);
+        }
+
+        PooledSession borrow() throws JMSException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JMSException("Interrupted while waiting for a pooled session");
+            }
+            try {
+                Connection current = connection();
+                PooledSession pooledSession;
+                while ((pooledSession = idle.poll()) != null) {
+                    if (pooledSession.connection == current) {
+                        return pooledSession;
+                    }
+                    // сессия закрытого соединения
+                    pooledSession.close();
+                }
+                return new PooledSession(current, current.createSession(true, Session.SESSION_TRANSACTED));
+            } catch (JMSException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Возвращает сессию в пул. Сессия, на которой произошла ошибка, закрывается: её транзакция
+         * могла остаться в неопределённом состоянии.
+         */
+        void release(PooledSession pooledSession, boolean broken) {
+            if (broken) {
+                pooledSession.close();
+            } else {
+                idle.offer(pooledSession);
+            }
+            permits.release();
+        }
+
+        private synchronized Connection connection() throws JMSException {
+            if (connection == null) {
+                final Connection newConnection = connectionFactory.createConnection();
+                try {
+                    newConnection.setExceptionListener(e -> discard(newConnection));
+                    newConnection.start();
+                } catch (JMSException e) {
+                    newConnection.close();
+                    throw e;
+                }
+                connection = newConnection;
+            }
+            return connection;
+        }
+
+        /**
+         * Закрывает соединение, если оно ещё используется пулом; следующая отправка откроет новое.
+         * Сессии закрытого соединения отбрасываются при следующем borrow().
+         */
+        void discard(Connection failed) {
+            synchronized (this) {
+                if (connection != failed) {
+                    return;
+                }
+                connection = null;
+            }
+            try {
+                failed.close();
+            } catch (JMSException e) {
+                // соединение уже упало, close() всегда бросает "Disposed due to prior exception"
+            }
+        }
+
+        synchronized void close() {
+            PooledSession pooledSession;
+            while ((pooledSession = idle.poll()) != null) {
+                pooledSession.close();
+            }
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+                connection = null;
+            }
+        }
+    }
+
+    /**
+     * Транзакционная сессия с закэшированными MessageProducer'ами.
+     * Используется только тем потоком, который забрал её из пула.
+     */
+    private static class PooledSession {
+
+        final Connection connection;
+        final Session session;
+        private final Map<Destination, MessageProducer> producers = new HashMap<>();
+
+        PooledSession(Connection connection, Session session) {
+            this.connection = connection;
+            this.session = session;
+        }
+
+        MessageProducer producer(Destination destination) throws JMSException {
+            MessageProducer producer = producers.get(destination);
+            if (producer == null) {
+                producer = session.createProducer(destination);
+                producer.setTimeToLive(Messages.TIME_TO_LIVE);
+                producers.put(destination, producer);
+            }
+            return producer;
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.softlab.ib6.producer;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.transport.TransportListener;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронная отправка сообщений, ограниченная окном producer'а ActiveMQ.
+ *
+ * Соединение должно быть создано с jms.useAsyncSend=true и положительным jms.producerWindowSize.
+ * Сообщение отправляется обычным {@link MessageProducer#send(javax.jms.Message)}: поток producer'а не ждёт
+ * ответа брокера и блокируется, только когда ещё не подтверждённые брокером (ProducerAck) сообщения
+ * занимают больше producerWindowSize байт. В отличие от {@link AsyncSender}, подтверждения отдельных
+ * сообщений не видны, поэтому доставку проверяет получатель.
+ *
+ * Методы не потокобезопасны: отправлять сообщения должен один поток.
+ *
+ * @author Andrey Grigorov
+ */
+public class WindowedSender implements AutoCloseable {
+
+    private final AtomicInteger transportInterruptions = new AtomicInteger();
+    private final Connection connection;
+    private final Session session;
+    private final int windowSize;
+    private final Map<Destination, MessageProducer> producers = new HashMap<>();
+
+    /**
+     * @param connectionFactory фабрика соединений ActiveMQ с jms.useAsyncSend=true и jms.producerWindowSize
+     * @throws JMSException
+     * @throws IllegalArgumentException если соединение отправляет синхронно или окно не задано
+     */
+    public WindowedSender(ConnectionFactory connectionFactory) throws JMSException {
+        this.connection = connectionFactory.createConnection();
+        try {
+            ActiveMQConnection activeMQConnection = (ActiveMQConnection) connection;
+            if (!activeMQConnection.isUseAsyncSend() || activeMQConnection.getProducerWindowSize() <= 0) {
+                throw new IllegalArgumentException("Connection must have jms.useAsyncSend=true and a positive "
+                        + "jms.producerWindowSize, got useAsyncSend=" + activeMQConnection.isUseAsyncSend()
+                        + ", producerWindowSize=" + activeMQConnection.getProducerWindowSize());
+            }
+            this.windowSize = activeMQConnection.getProducerWindowSize();
+            activeMQConnection.addTransportListener(new InterruptionCounter());
+            connection.start();
+            this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        } catch (JMSException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Отправляет сообщение, не дожидаясь ответа брокера. Блокируется, пока окно producer'а заполнено.
+     *
+     * @param destination   очередь или топик
+     * @param correlationId correlation ID сообщения
+     * @param headers       строковые свойства сообщения, может быть null
+     * @throws JMSException
+     */
+    public void send(Destination destination, String correlationId, Map<String, String> headers) throws JMSException {
+        producer(destination).send(Messages.createBytesMessage(session, correlationId, headers));
+    }
+
+    /**
+     * @return jms.producerWindowSize соединения в байтах
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return сколько раз обрывался транспорт (переключался failover)
+     */
+    public int getTransportInterruptions() {
+        return transportInterruptions.get();
+    }
+
+    private MessageProducer producer(Destination destination) throws JMSException {
+        MessageProducer producer = producers.get(destination);
+        if (producer == null) {
+            producer = session.createProducer(destination);
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+            producers.put(destination, producer);
+        }
+        return producer;
+    }
+
+    @Override
+    public void close() throws JMSException {
+        try {
+            session.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private class InterruptionCounter implements TransportListener {
+
+        @Override
+        public void onCommand(Object command) {
+        }
+
+        @Override
+        public void onException(IOException error) {
+        }
+
+        @Override
+        public void transportInterupted() {
+            transportInterruptions.incrementAndGet();
+        }
+
+        @Override
+        public void transportResumed() {
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.softlab.ib6.requestreply;
+
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.Topic;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Считает advisory-сообщения о временных очередях, которые видит брокер каждого датацентра: о создании и удалении
+ * временных очередей и о consumer'ах на них. Сетевой коннектор подписан на эти же topic'и и пересылает их
+ * соседям, поэтому брокер, к которому не подключён ни requester, ни responder, тоже их получает.
+ *
+ * Advisory о consumer'ах временной очереди ActiveMQ публикует в тот же topic, что и для обычных очередей
+ * (ActiveMQ.Advisory.Consumer.Queue.&lt;имя&gt;), поэтому они отбираются по имени: имена временных очередей
+ * начинаются с ID соединения.
+ *
+ * Подписка обычная JMS, поэтому работает и с внешними брокерами.
+ *
+ * @author Andrey Grigorov
+ */
+class AdvisoryCounter implements AutoCloseable {
+
+    private static final String DESTINATION_ADVISORIES = "ActiveMQ.Advisory.TempQueue";
+    private static final String CONSUMER_ADVISORIES = "ActiveMQ.Advisory.Consumer.Queue.>";
+    private static final String TEMPORARY_CONSUMER_ADVISORY_PREFIX = "ActiveMQ.Advisory.Consumer.Queue.ID:";
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<AtomicLong> counters = new ArrayList<>();
+
+    AdvisoryCounter(List<DataCenter> dataCenters) throws JMSException {
+        try {
+            for (DataCenter dataCenter : dataCenters) {
+                Connection connection = dataCenter.getConnectionFactory().createConnection();
+                connections.add(connection);
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                final AtomicLong counter = new AtomicLong();
+                counters.add(counter);
+                MessageConsumer destinations = session.createConsumer(session.createTopic(DESTINATION_ADVISORIES));
+                destinations.setMessageListener(message -> counter.incrementAndGet());
+                MessageConsumer consumers = session.createConsumer(session.createTopic(CONSUMER_ADVISORIES));
+                consumers.setMessageListener(message -> {
+                    if (isTemporaryQueueAdvisory(message)) {
+                        counter.incrementAndGet();
+                    }
+                });
+                connection.start();
+            }
+        } catch (JMSException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static boolean isTemporaryQueueAdvisory(Message message) {
+        try {
+            return ((Topic) message.getJMSDestination()).getTopicName().startsWith(TEMPORARY_CONSUMER_ADVISORY_PREFIX);
+        } catch (JMSException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return число advisory-сообщений, полученных от брокера каждого датацентра, в порядке датацентров
+     */
+    long[] snapshot() {
+        long[] snapshot = new long[counters.size()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counters.get(i).get();
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
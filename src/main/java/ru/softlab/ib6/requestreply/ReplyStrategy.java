@@ -0,0 +1,37 @@
+package ru.softlab.ib6.requestreply;
+
+import java.util.Locale;
+
+/**
+ * Куда responder отправляет ответ и как requester находит ответ на свой запрос.
+ *
+ * @author Andrey Grigorov
+ */
+public enum ReplyStrategy {
+
+    /**
+     * Для каждого запроса создаётся временная очередь, из которой requester синхронно получает ответ, после чего
+     * очередь удаляется. Создание и удаление временной очереди и consumer'а на ней порождают advisory-сообщения,
+     * которые сетевой коннектор рассылает остальным брокерам.
+     */
+    TEMP_QUEUE_PER_REQUEST,
+
+    /**
+     * Одна временная очередь на соединение requester'а: ответы всех потоков приходят в неё, и consumer находит
+     * ожидающий запрос по correlation ID.
+     */
+    TEMP_QUEUE_PER_CONNECTION,
+
+    /**
+     * Постоянная общая очередь ответов: как и с временной очередью на соединение, ожидающий запрос находится
+     * по correlation ID, но advisory-сообщений о временных очередях нет совсем.
+     */
+    SHARED_QUEUE;
+
+    /**
+     * @param value "temp_queue_per_request", "temp_queue_per_connection" или "shared_queue"
+     */
+    public static ReplyStrategy parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,334 @@
+package ru.softlab.ib6.requestreply;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Запрос-ответ между датацентрами: несколько потоков requester'а в замкнутом цикле отправляют запрос и ждут ответа,
+ * а responder отвечает в том же или в другом датацентре. Ответ возвращается одним из способов {@link ReplyStrategy}.
+ *
+ * Так как следующий запрос потока отправляется только после ответа на предыдущий, число запросов в секунду
+ * при заданном числе потоков - наибольшая интенсивность, которую выдерживает связка брокеров и способ ответа;
+ * с ростом числа потоков она перестаёт расти, а задержка начинает. Задержка - время от отправки запроса
+ * до получения ответа потоком requester'а.
+ *
+ * Во время измерения считаются advisory-сообщения о временных очередях на брокере каждого датацентра
+ * (см. {@link AdvisoryCounter}). Ответы на запросы, отправленные во время прогрева, не учитываются, а запросы
+ * прогрева, оставшиеся без ответа, учитываются, если таймаут истёк уже во время измерения. Скорость считается
+ * за фактическое время измерения - до завершения последнего потока, включая ожидание ответов на последние запросы.
+ *
+ * Поток requester'а, который не смог создать сессию или producer'а, делает прогон неудачным: иначе меньшее число
+ * потоков выдавалось бы за результат при заданном.
+ *
+ * @author Andrey Grigorov
+ */
+public class RequestReplyBenchmark {
+
+    private final List<DataCenter> dataCenters;
+    private final DataCenter requesterDataCenter;
+    private final DataCenter responderDataCenter;
+    private final ReplyStrategy strategy;
+    private final int concurrency;
+    private final int responderSessions;
+    private final long warmUpMillis;
+    private final long durationMillis;
+    private final long replyTimeoutMillis;
+
+    private RequestReplyBenchmark(Builder builder) {
+        this.dataCenters = builder.dataCenters;
+        this.requesterDataCenter = builder.dataCenters.get(builder.requester);
+        this.responderDataCenter = builder.dataCenters.get(builder.responder);
+        this.strategy = builder.strategy;
+        this.concurrency = builder.concurrency;
+        this.responderSessions = builder.responderSessions;
+        this.warmUpMillis = builder.warmUpMillis;
+        this.durationMillis = builder.durationMillis;
+        this.replyTimeoutMillis = builder.replyTimeoutMillis;
+    }
+
+    /**
+     * @param dataCenters датацентры; advisory-сообщения считаются на брокере каждого из них
+     * @param requester   индекс датацентра requester'а
+     * @param responder   индекс датацентра responder'а
+     * @param strategy    способ возврата ответа
+     */
+    public static Builder builder(List<DataCenter> dataCenters, int requester, int responder, ReplyStrategy strategy) {
+        return new Builder(dataCenters, requester, responder, strategy);
+    }
+
+    public RequestReplyResult run() throws Exception {
+        String suffix = Long.toString(System.nanoTime(), 36);
+        String requestQueue = "dynamicQueues/requests." + suffix;
+        String replyQueue = "dynamicQueues/replies." + suffix;
+        final Histogram latency = new ConcurrentHistogram(3);
+        final Counters counters = new Counters();
+
+        try (AdvisoryCounter advisories = new AdvisoryCounter(dataCenters);
+             Responder responder = new Responder(responderDataCenter, requestQueue, responderSessions)) {
+            Connection connection = requesterDataCenter.getConnectionFactory().createConnection();
+            try {
+                final ReplyChannel channel = strategy == ReplyStrategy.TEMP_QUEUE_PER_REQUEST
+                        ? null : new ReplyChannel(connection, replyQueue, counters);
+                connection.start();
+
+                final Destination requests = requesterDataCenter.lookup(requestQueue);
+                final long measureStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmUpMillis);
+                final long end = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+                List<Thread> threads = new ArrayList<>();
+                for (int t = 0; t < concurrency; t++) {
+                    final String name = requesterDataCenter.getName() + " requester " + (t + 1);
+                    Thread thread = new Thread(() -> {
+                        try {
+                            requestLoop(connection, requests, channel, name, measureStart, end, latency, counters);
+                        } catch (JMSException | RuntimeException e) {
+                            counters.failedRequesters.incrementAndGet();
+                            e.printStackTrace();
+                        }
+                    }, name);
+                    threads.add(thread);
+                    thread.start();
+                }
+
+                long warmUpLeft = TimeUnit.NANOSECONDS.toMillis(measureStart - System.nanoTime());
+                if (warmUpLeft > 0) {
+                    Thread.sleep(warmUpLeft);
+                }
+                long[] advisoriesBefore = advisories.snapshot();
+                long replyFailuresBefore = responder.getFailed();
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long measuredMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - measureStart);
+                long[] advisoriesAfter = advisories.snapshot();
+                for (int i = 0; i < advisoriesAfter.length; i++) {
+                    advisoriesAfter[i] -= advisoriesBefore[i];
+                }
+
+                List<String> dataCenterNames = new ArrayList<>();
+                for (DataCenter dataCenter : dataCenters) {
+                    dataCenterNames.add(dataCenter.getName());
+                }
+                RequestReplyResult result = new RequestReplyResult(strategy, requesterDataCenter != responderDataCenter,
+                        concurrency, measuredMillis, counters.completed.get(), counters.timeouts.get(),
+                        counters.errors.get(), counters.late.get(), responder.getFailed() - replyFailuresBefore,
+                        counters.failedRequesters.get(), latency.copy(), dataCenterNames, advisoriesAfter);
+                result.print(System.out);
+                return result;
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    private void requestLoop(Connection connection, Destination requests, ReplyChannel channel, String name,
+                             long measureStart, long end, Histogram latency, Counters counters) throws JMSException {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageProducer producer = session.createProducer(requests);
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+            long number = 0;
+            long start;
+            while ((start = System.nanoTime()) < end) {
+                boolean measured = start >= measureStart;
+                String correlationId = name + " - " + (++number);
+                BytesMessage request = Messages.createBytesMessage(session, correlationId, null);
+                try {
+                    boolean replied = channel != null
+                            ? channel.exchange(producer, request, correlationId, replyTimeoutMillis)
+                            : exchangeWithTemporaryQueue(session, producer, request);
+                    long finish = System.nanoTime();
+                    if (replied && measured) {
+                        latency.recordValue(TimeUnit.NANOSECONDS.toMicros(finish - start));
+                        counters.completed.incrementAndGet();
+                    } else if (!replied && finish >= measureStart) {
+                        // запрос прогрева, оставшийся без ответа, тоже учитывается, если таймаут истёк при измерении
+                        counters.timeouts.incrementAndGet();
+                    }
+                } catch (JMSException e) {
+                    if (System.nanoTime() >= measureStart) {
+                        counters.errors.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Отправляет запрос с новой временной очередью в JMSReplyTo, ждёт ответа из неё и удаляет очередь.
+     *
+     * @return false, если ответ не пришёл за replyTimeout
+     */
+    private boolean exchangeWithTemporaryQueue(Session session, MessageProducer producer, Message request)
+            throws JMSException {
+        TemporaryQueue replyTo = session.createTemporaryQueue();
+        try {
+            MessageConsumer consumer = session.createConsumer(replyTo);
+            try {
+                request.setJMSReplyTo(replyTo);
+                producer.send(request);
+                return consumer.receive(replyTimeoutMillis) != null;
+            } finally {
+                consumer.close();
+            }
+        } finally {
+            replyTo.delete();
+        }
+    }
+
+    private static class Counters {
+
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong late = new AtomicLong();
+        final AtomicLong failedRequesters = new AtomicLong();
+    }
+
+    /**
+     * Очередь ответов, общая для всех потоков requester'а: временная очередь соединения или постоянная очередь.
+     * Ожидающие запросы хранятся в ConcurrentHashMap по correlation ID, и consumer очереди ответов завершает
+     * ожидание нужного потока.
+     */
+    private class ReplyChannel {
+
+        private final Destination replyTo;
+        private final Map<String, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+
+        ReplyChannel(Connection connection, String replyQueue, final Counters counters) throws Exception {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            replyTo = strategy == ReplyStrategy.TEMP_QUEUE_PER_CONNECTION
+                    ? session.createTemporaryQueue() : requesterDataCenter.lookup(replyQueue);
+            MessageConsumer consumer = session.createConsumer(replyTo);
+            consumer.setMessageListener(reply -> {
+                CompletableFuture<Message> waiting = null;
+                try {
+                    waiting = pending.remove(reply.getJMSCorrelationID());
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+                if (waiting != null) {
+                    waiting.complete(reply);
+                } else {
+                    // requester уже перестал ждать этот ответ
+                    counters.late.incrementAndGet();
+                }
+            });
+        }
+
+        /**
+         * @return false, если ответ не пришёл за replyTimeoutMillis
+         */
+        boolean exchange(MessageProducer producer, Message request, String correlationId, long replyTimeoutMillis)
+                throws JMSException {
+            CompletableFuture<Message> reply = new CompletableFuture<>();
+            pending.put(correlationId, reply);
+            try {
+                request.setJMSReplyTo(replyTo);
+                producer.send(request);
+                reply.get(replyTimeoutMillis, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                // считается ошибкой запроса, как и ошибка отправки
+                JMSException failure = new JMSException("Reply to " + correlationId + " failed: " + e.getCause());
+                failure.setLinkedException(e);
+                throw failure;
+            } finally {
+                pending.remove(correlationId);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final List<DataCenter> dataCenters;
+        private final int requester;
+        private final int responder;
+        private final ReplyStrategy strategy;
+        private int concurrency = 1;
+        private int responderSessions = 4;
+        private long warmUpMillis = 2000;
+        private long durationMillis = 5000;
+        private long replyTimeoutMillis = 5000;
+
+        private Builder(List<DataCenter> dataCenters, int requester, int responder, ReplyStrategy strategy) {
+            this.dataCenters = new ArrayList<>(dataCenters);
+            this.requester = requester;
+            this.responder = responder;
+            this.strategy = strategy;
+        }
+
+        /**
+         * @param concurrency число потоков requester'а, каждый из которых ждёт ответа перед следующим запросом
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * @param responderSessions число сессий responder'а
+         */
+        public Builder responderSessions(int responderSessions) {
+            this.responderSessions = responderSessions;
+            return this;
+        }
+
+        /**
+         * @param warmUpMillis   длительность прогрева, запросы которого не учитываются
+         * @param durationMillis длительность измерения
+         */
+        public Builder duration(long warmUpMillis, long durationMillis) {
+            this.warmUpMillis = warmUpMillis;
+            this.durationMillis = durationMillis;
+            return this;
+        }
+
+        /**
+         * @param replyTimeoutMillis сколько ждать ответа на запрос
+         */
+        public Builder replyTimeout(long replyTimeoutMillis) {
+            this.replyTimeoutMillis = replyTimeoutMillis;
+            return this;
+        }
+
+        public RequestReplyBenchmark build() {
+            if (concurrency < 1 || responderSessions < 1) {
+                throw new IllegalStateException("concurrency and responderSessions must be positive: " + concurrency
+                        + ", " + responderSessions);
+            }
+            if (durationMillis < 1 || warmUpMillis < 0 || replyTimeoutMillis < 1) {
+                throw new IllegalStateException("Invalid timing: warmUp " + warmUpMillis + ", duration "
+                        + durationMillis + ", replyTimeout " + replyTimeoutMillis);
+            }
+            return new RequestReplyBenchmark(this);
+        }
+    }
+}
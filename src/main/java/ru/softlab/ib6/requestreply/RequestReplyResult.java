@@ -0,0 +1,152 @@
+package ru.softlab.ib6.requestreply;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Результат прогона запроса-ответа с одним способом ответа и числом потоков requester'а.
+ *
+ * @author Andrey Grigorov
+ */
+public class RequestReplyResult {
+
+    private final ReplyStrategy strategy;
+    private final boolean remoteResponder;
+    private final int concurrency;
+    private final long measuredMillis;
+    private final long completed;
+    private final long timeouts;
+    private final long errors;
+    private final long late;
+    private final long replyFailures;
+    private final long failedRequesters;
+    private final Histogram latency;
+    private final List<String> dataCenters;
+    private final long[] advisories;
+
+    RequestReplyResult(ReplyStrategy strategy, boolean remoteResponder, int concurrency, long measuredMillis,
+                       long completed, long timeouts, long errors, long late, long replyFailures, long failedRequesters,
+                       Histogram latency, List<String> dataCenters, long[] advisories) {
+        this.strategy = strategy;
+        this.remoteResponder = remoteResponder;
+        this.concurrency = concurrency;
+        this.measuredMillis = measuredMillis;
+        this.completed = completed;
+        this.timeouts = timeouts;
+        this.errors = errors;
+        this.late = late;
+        this.replyFailures = replyFailures;
+        this.failedRequesters = failedRequesters;
+        this.latency = latency;
+        this.dataCenters = Collections.unmodifiableList(new ArrayList<>(dataCenters));
+        this.advisories = advisories.clone();
+    }
+
+    public static void printHeader(PrintStream out, List<String> dataCenters) {
+        out.println(String.format("%-26s %-9s %7s %10s %9s %9s %9s %9s %9s  %s",
+                "strategy", "responder", "threads", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "failed",
+                "temp queue advisories per request (" + String.join(" / ", dataCenters) + ")"));
+    }
+
+    public ReplyStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return true, если responder подключён к брокеру другого датацентра
+     */
+    public boolean isRemoteResponder() {
+        return remoteResponder;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return запросы, на которые пришёл ответ, в секунду за фактическое время измерения
+     */
+    public double getRate() {
+        return completed * 1000.0 / Math.max(1, measuredMillis);
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return запросы без ответа за replyTimeout
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return запросы, при отправке которых или создании временной очереди возникла ошибка
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return ответы, пришедшие в общую очередь ответов после того, как requester перестал их ждать
+     */
+    public long getLate() {
+        return late;
+    }
+
+    /**
+     * @return ответы, которые responder не смог отправить
+     */
+    public long getReplyFailures() {
+        return replyFailures;
+    }
+
+    /**
+     * @return потоки requester'а, завершившиеся с ошибкой, например не сумевшие создать сессию
+     */
+    public long getFailedRequesters() {
+        return failedRequesters;
+    }
+
+    /**
+     * @return true, если все потоки requester'а отработали и на каждый запрос вовремя пришёл ответ
+     */
+    public boolean isSuccessful() {
+        return completed > 0 && timeouts == 0 && errors == 0 && replyFailures == 0 && failedRequesters == 0;
+    }
+
+    /**
+     * @return время от отправки запроса до получения ответа в микросекундах
+     */
+    public Histogram getLatency() {
+        return latency.copy();
+    }
+
+    /**
+     * @return advisory-сообщения о временных очередях, полученные брокером каждого датацентра за время измерения
+     */
+    public long[] getAdvisories() {
+        return advisories.clone();
+    }
+
+    public void print(PrintStream out) {
+        StringBuilder advisoriesPerRequest = new StringBuilder();
+        for (int i = 0; i < advisories.length; i++) {
+            advisoriesPerRequest.append(i == 0 ? "" : " / ")
+                    .append(String.format("%.2f", completed == 0 ? 0 : advisories[i] / (double) completed));
+        }
+        long failed = timeouts + errors + replyFailures;
+        out.println(String.format("%-26s %-9s %7d %10.1f %9.3f %9.3f %9.3f %9.3f %9d  %s%s%s",
+                strategy.name().toLowerCase(Locale.ROOT), remoteResponder ? "remote" : "local", concurrency, getRate(),
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0, latency.getMaxValue() / 1000.0, failed,
+                advisoriesPerRequest, late > 0 ? " (late replies " + late + ")" : "",
+                failedRequesters > 0 ? " (FAILED requester threads " + failedRequesters + ")" : ""));
+    }
+}
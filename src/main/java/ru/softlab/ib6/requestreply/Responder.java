@@ -0,0 +1,70 @@
+package ru.softlab.ib6.requestreply;
+
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сервис, отвечающий на запросы: несколько сессий читают очередь запросов и отправляют пустой ответ
+ * с correlation ID запроса в его JMSReplyTo.
+ *
+ * @author Andrey Grigorov
+ */
+class Responder implements AutoCloseable {
+
+    private final Connection connection;
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param dataCenter датацентр, к брокеру которого подключается сервис
+     * @param queue      JNDI-имя очереди запросов
+     * @param sessions   число сессий, каждая со своим consumer'ом
+     */
+    Responder(DataCenter dataCenter, String queue, int sessions) throws Exception {
+        connection = dataCenter.getConnectionFactory().createConnection();
+        try {
+            for (int i = 0; i < sessions; i++) {
+                final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                final MessageProducer producer = session.createProducer(null);
+                producer.setTimeToLive(Messages.TIME_TO_LIVE);
+                MessageConsumer consumer = session.createConsumer(dataCenter.lookup(queue));
+                consumer.setMessageListener(request -> reply(session, producer, request));
+            }
+            connection.start();
+        } catch (Exception e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private void reply(Session session, MessageProducer producer, Message request) {
+        try {
+            BytesMessage reply = session.createBytesMessage();
+            reply.setJMSCorrelationID(request.getJMSCorrelationID());
+            producer.send(request.getJMSReplyTo(), reply);
+        } catch (JMSException e) {
+            // например, временная очередь requester'а уже удалена или ещё неизвестна этому брокеру
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return ответы, которые не удалось отправить
+     */
+    long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() throws JMSException {
+        connection.close();
+    }
+}
@@ -0,0 +1,101 @@
+package ru.softlab.ib6.results;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Сравнение прогона с эталонным: сценарии сопоставляются по названию, регрессией считаются падение пропускной
+ * способности или рост p50/p99 задержки больше допустимой доли, а также новые потерянные или повторные сообщения
+ * и сценарий, не завершившийся вовремя. Сценарий эталона, которого нет в прогоне, тоже считается регрессией:
+ * иначе прогон, в котором сценарий упал или был пропущен, проходил бы проверку. Сценарии, которых нет в эталоне,
+ * только выводятся.
+ *
+ * @author Andrey Grigorov
+ */
+public class RegressionCheck {
+
+    private final double maxThroughputDrop;
+    private final double maxLatencyGrowth;
+
+    /**
+     * @param maxThroughputDrop допустимое падение пропускной способности, доля эталона (0.1 - на 10%)
+     * @param maxLatencyGrowth  допустимый рост p50 и p99 задержки, доля эталона
+     */
+    public RegressionCheck(double maxThroughputDrop, double maxLatencyGrowth) {
+        if (maxThroughputDrop < 0 || maxLatencyGrowth < 0) {
+            throw new IllegalArgumentException("thresholds must not be negative: " + maxThroughputDrop + ", "
+                    + maxLatencyGrowth);
+        }
+        this.maxThroughputDrop = maxThroughputDrop;
+        this.maxLatencyGrowth = maxLatencyGrowth;
+    }
+
+    /**
+     * Выводит сравнение каждого сценария с эталоном.
+     *
+     * @return описания регрессий; пустой список, если их нет
+     */
+    public List<String> check(List<ScenarioMetrics> baseline, List<ScenarioMetrics> current, PrintStream out) {
+        Map<String, ScenarioMetrics> baselineByName = new LinkedHashMap<>();
+        for (ScenarioMetrics metrics : baseline) {
+            baselineByName.put(metrics.getScenario(), metrics);
+        }
+
+        List<String> regressions = new ArrayList<>();
+        Set<String> currentNames = new HashSet<>();
+        out.println(String.format("%21s %21s %21s  %s", "msg/s", "p50, ms", "p99, ms", "Scenario"));
+        for (ScenarioMetrics metrics : current) {
+            currentNames.add(metrics.getScenario());
+            ScenarioMetrics expected = baselineByName.get(metrics.getScenario());
+            if (expected == null) {
+                out.println(String.format("%65s  %s", "no baseline", metrics.getScenario()));
+                continue;
+            }
+            out.println(String.format("%21s %21s %21s  %s",
+                    change(expected.getThroughput(), metrics.getThroughput()),
+                    change(expected.getP50(), metrics.getP50()),
+                    change(expected.getP99(), metrics.getP99()), metrics.getScenario()));
+
+            String name = "\"" + metrics.getScenario() + "\"";
+            if (expected.isCompleted() && !metrics.isCompleted()) {
+                regressions.add(name + ": not completed before timeout");
+            }
+            if (metrics.getThroughput() < expected.getThroughput() * (1 - maxThroughputDrop)) {
+                regressions.add(String.format("%s: throughput %.1f msg/s, baseline %.1f msg/s", name,
+                        metrics.getThroughput(), expected.getThroughput()));
+            }
+            if (metrics.getP50() > expected.getP50() * (1 + maxLatencyGrowth)) {
+                regressions.add(String.format("%s: p50 latency %.3f ms, baseline %.3f ms", name,
+                        metrics.getP50(), expected.getP50()));
+            }
+            if (metrics.getP99() > expected.getP99() * (1 + maxLatencyGrowth)) {
+                regressions.add(String.format("%s: p99 latency %.3f ms, baseline %.3f ms", name,
+                        metrics.getP99(), expected.getP99()));
+            }
+            if (metrics.getLost() > expected.getLost()) {
+                regressions.add(name + ": lost " + metrics.getLost() + " messages, baseline " + expected.getLost());
+            }
+            if (metrics.getDuplicates() > expected.getDuplicates()) {
+                regressions.add(name + ": " + metrics.getDuplicates() + " duplicates, baseline "
+                        + expected.getDuplicates());
+            }
+        }
+        for (String scenario : baselineByName.keySet()) {
+            if (!currentNames.contains(scenario)) {
+                out.println(String.format("%65s  %s", "missing", scenario));
+                regressions.add("\"" + scenario + "\": missing from the run");
+            }
+        }
+        return regressions;
+    }
+
+    private static String change(double baseline, double current) {
+        String percent = baseline == 0 ? "n/a" : String.format("%+.0f%%", (current - baseline) * 100 / baseline);
+        return String.format("%9.1f (%s)", current, percent);
+    }
+}
@@ -0,0 +1,154 @@
+package ru.softlab.ib6.results;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Запись метрик сценариев в JSON и CSV и чтение CSV эталонного прогона.
+ *
+ * JSON - массив объектов с полями из {@link #COLUMNS} для внешних инструментов. CSV с заголовком из тех же колонок
+ * служит и эталоном для следующих прогонов: при чтении колонки ищутся по заголовку.
+ *
+ * @author Andrey Grigorov
+ */
+public final class ResultsFiles {
+
+    public static final List<String> COLUMNS = Arrays.asList("scenario", "completed", "elapsedMillis", "expected",
+            "received", "lost", "duplicates", "throughput", "p50", "p90", "p99", "p999", "max", "forwardedShare");
+
+    private ResultsFiles() {
+    }
+
+    public static void writeJson(Path file, List<ScenarioMetrics> metrics) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("[");
+            for (int i = 0; i < metrics.size(); i++) {
+                out.write(i == 0 ? "\n  {" : ",\n  {");
+                List<String> values = values(metrics.get(i));
+                for (int column = 0; column < COLUMNS.size(); column++) {
+                    String value = values.get(column);
+                    out.write((column == 0 ? "" : ", ") + quoteJson(COLUMNS.get(column)) + ": "
+                            + (column == 0 ? quoteJson(value) : value));
+                }
+                out.write("}");
+            }
+            out.write("\n]\n");
+        }
+    }
+
+    public static void writeCsv(Path file, List<ScenarioMetrics> metrics) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(String.join(",", COLUMNS) + "\n");
+            for (ScenarioMetrics scenario : metrics) {
+                List<String> values = values(scenario);
+                values.set(0, quoteCsv(values.get(0)));
+                out.write(String.join(",", values) + "\n");
+            }
+        }
+    }
+
+    public static List<ScenarioMetrics> readCsv(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException("Empty results file: " + file);
+        }
+        List<String> header = parseCsvLine(lines.get(0));
+        if (!header.containsAll(COLUMNS)) {
+            throw new IOException("Results file " + file + " must have columns " + COLUMNS + ", found " + header);
+        }
+        List<ScenarioMetrics> metrics = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).trim().isEmpty()) {
+                continue;
+            }
+            List<String> values = parseCsvLine(lines.get(i));
+            if (values.size() != header.size()) {
+                throw new IOException(file + ":" + (i + 1) + ": expected " + header.size() + " values, found "
+                        + values.size());
+            }
+            Map<String, String> row = new HashMap<>();
+            for (int column = 0; column < header.size(); column++) {
+                row.put(header.get(column), values.get(column));
+            }
+            metrics.add(new ScenarioMetrics(row.get("scenario"), Boolean.parseBoolean(row.get("completed")),
+                    Long.parseLong(row.get("elapsedMillis")), Long.parseLong(row.get("expected")),
+                    Long.parseLong(row.get("received")), Long.parseLong(row.get("lost")),
+                    Long.parseLong(row.get("duplicates")), Double.parseDouble(row.get("throughput")),
+                    Double.parseDouble(row.get("p50")), Double.parseDouble(row.get("p90")),
+                    Double.parseDouble(row.get("p99")), Double.parseDouble(row.get("p999")),
+                    Double.parseDouble(row.get("max")), Double.parseDouble(row.get("forwardedShare"))));
+        }
+        return metrics;
+    }
+
+    /**
+     * @return значения в порядке {@link #COLUMNS}; числа - с точкой независимо от локали
+     */
+    private static List<String> values(ScenarioMetrics metrics) {
+        return new ArrayList<>(Arrays.asList(metrics.getScenario(), String.valueOf(metrics.isCompleted()),
+                String.valueOf(metrics.getElapsedMillis()), String.valueOf(metrics.getExpected()),
+                String.valueOf(metrics.getReceived()), String.valueOf(metrics.getLost()),
+                String.valueOf(metrics.getDuplicates()), format(metrics.getThroughput()), format(metrics.getP50()),
+                format(metrics.getP90()), format(metrics.getP99()), format(metrics.getP999()),
+                format(metrics.getMax()), format(metrics.getForwardedShare())));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quoteJson(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    private static String quoteCsv(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
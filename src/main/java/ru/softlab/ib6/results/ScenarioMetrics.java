@@ -0,0 +1,122 @@
+package ru.softlab.ib6.results;
+
+import org.HdrHistogram.Histogram;
+import ru.softlab.ib6.scenario.ScenarioResult;
+
+/**
+ * Метрики одного сценария, которые сохраняются в файлы результатов и сравниваются с эталонным прогоном.
+ * Задержки - в миллисекундах, по всем полученным сообщениям, локальным и пересланным.
+ *
+ * @author Andrey Grigorov
+ */
+public class ScenarioMetrics {
+
+    private final String scenario;
+    private final boolean completed;
+    private final long elapsedMillis;
+    private final long expected;
+    private final long received;
+    private final long lost;
+    private final long duplicates;
+    private final double throughput;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double p999;
+    private final double max;
+    private final double forwardedShare;
+
+    public ScenarioMetrics(String scenario, boolean completed, long elapsedMillis, long expected, long received,
+                           long lost, long duplicates, double throughput, double p50, double p90, double p99,
+                           double p999, double max, double forwardedShare) {
+        this.scenario = scenario;
+        this.completed = completed;
+        this.elapsedMillis = elapsedMillis;
+        this.expected = expected;
+        this.received = received;
+        this.lost = lost;
+        this.duplicates = duplicates;
+        this.throughput = throughput;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+        this.forwardedShare = forwardedShare;
+    }
+
+    public static ScenarioMetrics of(ScenarioResult result) {
+        Histogram latency = result.getLatency().getAll();
+        return new ScenarioMetrics(result.getTitle(), result.isCompleted(), result.getElapsedMillis(),
+                result.getExpectedTotal(), result.getReceivedTotal(), result.getLostTotal(),
+                result.getDuplicateTotal(), result.getThroughput(),
+                percentile(latency, 50), percentile(latency, 90), percentile(latency, 99), percentile(latency, 99.9),
+                latency.getMaxValue() / 1000.0, result.getLatency().getForwardedShare());
+    }
+
+    private static double percentile(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getExpected() {
+        return expected;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getLost() {
+        return lost;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return полученные сообщения в секунду
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return доля сообщений, полученных через сетевой мост, от 0 до 1
+     */
+    public double getForwardedShare() {
+        return forwardedShare;
+    }
+}
@@ -0,0 +1,346 @@
+package ru.softlab.ib6.routing;
+
+import ru.softlab.ib6.bridge.BridgeStatistics;
+import ru.softlab.ib6.bridge.BridgeStatisticsSource;
+import ru.softlab.ib6.metrics.LatencyRecorder;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сравнение способов маршрутизации сообщений по сервисам при большом числе сервисов.
+ *
+ * Сервисы с consumer'ами распределяются по датацентрам поровну, сообщения каждому сервису отправляют
+ * producer'ы обоих датацентров. У части сервисов consumer'а нет - их сообщения никто не заберёт (как сообщения
+ * "XYZ" в сценарии с селектором). Измеряются скорость доставки сообщений, у которых есть consumer, пиковая
+ * занятая брокерами память и число сообщений, оставшихся в destination'ах прогона.
+ *
+ * @author Andrey Grigorov
+ */
+public class RoutingBenchmark {
+
+    /**
+     * Свойство сообщения с именем сервиса.
+     */
+    public static final String SERVICE_PROPERTY = "service";
+
+    private static final long SAMPLE_PERIOD_MILLIS = 200;
+    private static final long DEMAND_TIMEOUT_MILLIS = 30000;
+    private static final long PROBE_PERIOD_MILLIS = 500;
+
+    /**
+     * Свойство пробного сообщения, которым без счётчиков брокеров проверяется готовность маршрутов.
+     */
+    private static final String PROBE_PROPERTY = "routingProbe";
+
+    private final List<DataCenter> dataCenters;
+    private final RoutingStrategy strategy;
+    private final int services;
+    private final double consumedShare;
+    private final int messagesPerService;
+    private final long timeoutMillis;
+    private final BridgeStatisticsSource statistics;
+
+    private RoutingBenchmark(Builder builder) {
+        this.dataCenters = builder.dataCenters;
+        this.strategy = builder.strategy;
+        this.services = builder.services;
+        this.consumedShare = builder.consumedShare;
+        this.messagesPerService = builder.messagesPerService;
+        this.timeoutMillis = builder.timeoutMillis;
+        this.statistics = builder.statistics;
+    }
+
+    public static Builder builder(List<DataCenter> dataCenters, RoutingStrategy strategy) {
+        return new Builder(dataCenters, strategy);
+    }
+
+    public RoutingResult run() throws Exception {
+        // у каждого прогона свои destination'ы, чтобы не видеть сообщения предыдущих прогонов
+        String prefix = "routing." + Long.toString(System.currentTimeMillis(), 36);
+        List<String> consumed = new ArrayList<>();
+        List<String> allServices = new ArrayList<>();
+        for (int i = 0; i < services; i++) {
+            String service = String.format("S%04d", i);
+            allServices.add(service);
+            // сервисы с consumer'ами равномерно перемешаны с сервисами без них
+            if ((long) ((i + 1) * consumedShare) > (long) (i * consumedShare)) {
+                consumed.add(service);
+            }
+        }
+        int expected = consumed.size() * messagesPerService;
+
+        final LatencyRecorder latency = new LatencyRecorder();
+        final CountDownLatch delivered = new CountDownLatch(expected);
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong misrouted = new AtomicLong();
+        final Map<String, Long> peakMemory = new ConcurrentHashMap<>();
+        final AtomicLong peakBacklog = new AtomicLong();
+        final Map<String, Set<String>> probed = new ConcurrentHashMap<>();
+        List<Connection> connections = new ArrayList<>();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        boolean completed;
+        long sendMillis;
+        long elapsedMillis;
+        try {
+            for (DataCenter dataCenter : dataCenters) {
+                Connection connection = dataCenter.getConnectionFactory().createConnection();
+                connections.add(connection);
+                connection.start();
+            }
+            for (int i = 0; i < consumed.size(); i++) {
+                final String service = consumed.get(i);
+                int dataCenterIndex = i % dataCenters.size();
+                DataCenter dataCenter = dataCenters.get(dataCenterIndex);
+                Session session = connections.get(dataCenterIndex).createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageConsumer consumer = session.createConsumer(
+                        dataCenter.lookup(strategy.consumerDestination(prefix, service)), strategy.selector(service));
+                consumer.setMessageListener(message -> {
+                    try {
+                        if (message.propertyExists(PROBE_PROPERTY)) {
+                            probed.computeIfAbsent(service, key -> ConcurrentHashMap.newKeySet())
+                                    .add(message.getStringProperty(Messages.ORIGIN_PROPERTY));
+                            return;
+                        }
+                        if (!service.equals(message.getStringProperty(SERVICE_PROPERTY))) {
+                            misrouted.incrementAndGet();
+                        }
+                    } catch (JMSException e) {
+                        e.printStackTrace();
+                    }
+                    latency.record(message);
+                    received.incrementAndGet();
+                    delivered.countDown();
+                });
+            }
+            if (!awaitDemand(prefix, connections, consumed, probed)) {
+                throw new IllegalStateException("Routes to consumers of " + prefix + " are not ready after "
+                        + DEMAND_TIMEOUT_MILLIS + " ms");
+            }
+
+            if (statistics != null) {
+                sampler.scheduleAtFixedRate(() -> sample(prefix, peakMemory, peakBacklog),
+                        0, SAMPLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            long startTime = System.nanoTime();
+            for (int d = 0; d < dataCenters.size(); d++) {
+                send(dataCenters.get(d), connections.get(d), d, prefix, allServices);
+            }
+            sendMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            completed = delivered.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        } finally {
+            sampler.shutdownNow();
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // остаток считается после закрытия соединений, когда брокеры уже получили все подтверждения
+        long backlog = -1;
+        if (statistics != null) {
+            backlog = sample(prefix, peakMemory, peakBacklog);
+        }
+        RoutingResult result = new RoutingResult(strategy, services, consumed.size(), services * messagesPerService,
+                expected, received.get(), misrouted.get(), completed, sendMillis, elapsedMillis, latency,
+                backlog, peakBacklog.get(), new HashMap<>(peakMemory));
+        result.print(System.out);
+        return result;
+    }
+
+    /**
+     * Ждёт появления подписок сетевых мостов: без них сообщение не будет переслано на удалённый брокер,
+     * а в случае виртуального топика - вообще никуда не попадёт. Без счётчиков брокеров каждый датацентр
+     * повторяет пробные сообщения сервисам, пока consumer каждого сервиса не получит пробу из каждого датацентра.
+     *
+     * @param probed датацентры, пробы которых получил consumer сервиса, по сервисам
+     * @return true, если маршруты готовы до истечения таймаута
+     */
+    private boolean awaitDemand(String prefix, List<Connection> connections, List<String> consumed,
+                                Map<String, Set<String>> probed) throws Exception {
+        if (statistics != null) {
+            return statistics.awaitStableConsumers(prefix, DEMAND_TIMEOUT_MILLIS);
+        }
+        long deadline = System.currentTimeMillis() + DEMAND_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            boolean ready = true;
+            for (int d = 0; d < dataCenters.size(); d++) {
+                DataCenter dataCenter = dataCenters.get(d);
+                List<String> waiting = new ArrayList<>();
+                for (String service : consumed) {
+                    Set<String> origins = probed.get(service);
+                    if (origins == null || !origins.contains(dataCenter.getName())) {
+                        waiting.add(service);
+                    }
+                }
+                if (!waiting.isEmpty()) {
+                    ready = false;
+                    sendProbes(dataCenter, connections.get(d), prefix, waiting);
+                }
+            }
+            if (ready) {
+                return true;
+            }
+            Thread.sleep(PROBE_PERIOD_MILLIS);
+        }
+        return false;
+    }
+
+    private void sendProbes(DataCenter dataCenter, Connection connection, String prefix,
+                            List<String> services) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageProducer producer = session.createProducer(null);
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+            for (String service : services) {
+                Message probe = session.createMessage();
+                probe.setBooleanProperty(PROBE_PROPERTY, true);
+                probe.setStringProperty(SERVICE_PROPERTY, service);
+                probe.setStringProperty(Messages.ORIGIN_PROPERTY, dataCenter.getName());
+                producer.send(dataCenter.lookup(strategy.producerDestination(prefix, service)), probe);
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Запоминает пиковую память брокеров и пиковое число сообщений в destination'ах прогона.
+     *
+     * @return число сообщений в destination'ах прогона на всех брокерах или -1, если счётчики не удалось прочитать
+     */
+    private long sample(String prefix, Map<String, Long> peakMemory, AtomicLong peakBacklog) {
+        try {
+            BridgeStatistics snapshot = statistics.snapshot();
+            for (BridgeStatistics.BrokerUsage broker : snapshot.getBrokers()) {
+                peakMemory.merge(broker.getBroker(), broker.getMemoryUsage(), Math::max);
+            }
+            long backlog = 0;
+            for (BridgeStatistics.DestinationCounters destination : snapshot.getDestinations()) {
+                if (destination.getDestination().contains(prefix)) {
+                    backlog += destination.getSize();
+                }
+            }
+            peakBacklog.accumulateAndGet(backlog, Math::max);
+            return backlog;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Датацентр с номером dataCenterIndex отправляет свою долю сообщений каждого сервиса.
+     */
+    private void send(DataCenter dataCenter, Connection connection, int dataCenterIndex, String prefix,
+                      List<String> allServices) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageProducer producer = session.createProducer(null);
+            producer.setTimeToLive(Messages.TIME_TO_LIVE);
+            Map<String, Destination> destinations = new HashMap<>();
+            Map<String, String> headers = new HashMap<>();
+            headers.put(Messages.ORIGIN_PROPERTY, dataCenter.getName());
+            int sequence = 0;
+            for (int m = 0; m < messagesPerService; m++) {
+                for (int i = 0; i < allServices.size(); i++) {
+                    if ((i + m) % dataCenters.size() != dataCenterIndex) {
+                        continue;
+                    }
+                    String service = allServices.get(i);
+                    String destinationName = strategy.producerDestination(prefix, service);
+                    Destination destination = destinations.get(destinationName);
+                    if (destination == null) {
+                        destination = dataCenter.lookup(destinationName);
+                        destinations.put(destinationName, destination);
+                    }
+                    headers.put(SERVICE_PROPERTY, service);
+                    producer.send(destination, Messages.createBytesMessage(session,
+                            dataCenter.getName() + " - " + (++sequence), headers));
+                }
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    public static class Builder {
+
+        private final List<DataCenter> dataCenters;
+        private final RoutingStrategy strategy;
+        private int services = 200;
+        private double consumedShare = 0.5;
+        private int messagesPerService = 10;
+        private long timeoutMillis = 60000;
+        private BridgeStatisticsSource statistics;
+
+        private Builder(List<DataCenter> dataCenters, RoutingStrategy strategy) {
+            this.dataCenters = new ArrayList<>(dataCenters);
+            this.strategy = strategy;
+        }
+
+        public Builder services(int services) {
+            this.services = services;
+            return this;
+        }
+
+        /**
+         * @param consumedShare доля сервисов, у которых есть consumer, от 0 до 1
+         */
+        public Builder consumedShare(double consumedShare) {
+            this.consumedShare = consumedShare;
+            return this;
+        }
+
+        public Builder messagesPerService(int messagesPerService) {
+            this.messagesPerService = messagesPerService;
+            return this;
+        }
+
+        public Builder timeout(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param statistics источник счётчиков брокеров для измерения памяти и отставания; без него измеряется
+         *                   только скорость доставки
+         */
+        public Builder statistics(BridgeStatisticsSource statistics) {
+            this.statistics = statistics;
+            return this;
+        }
+
+        public RoutingBenchmark build() {
+            if (services < 1 || messagesPerService < 1) {
+                throw new IllegalStateException("services and messagesPerService must be positive");
+            }
+            if (consumedShare <= 0 || consumedShare > 1) {
+                throw new IllegalStateException("consumedShare must be in (0, 1]: " + consumedShare);
+            }
+            return new RoutingBenchmark(this);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.softlab.ib6.routing;
+
+import ru.softlab.ib6.metrics.LatencyRecorder;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Результат прогона одного способа маршрутизации.
+ *
+ * @author Andrey Grigorov
+ */
+public class RoutingResult {
+
+    private final RoutingStrategy strategy;
+    private final int services;
+    private final int consumedServices;
+    private final long sent;
+    private final long expected;
+    private final long received;
+    private final long misrouted;
+    private final boolean completed;
+    private final long sendMillis;
+    private final long elapsedMillis;
+    private final LatencyRecorder latency;
+    private final long backlog;
+    private final long peakBacklog;
+    private final Map<String, Long> peakMemory;
+
+    RoutingResult(RoutingStrategy strategy, int services, int consumedServices, long sent, long expected,
+                  long received, long misrouted, boolean completed, long sendMillis, long elapsedMillis,
+                  LatencyRecorder latency, long backlog, long peakBacklog, Map<String, Long> peakMemory) {
+        this.strategy = strategy;
+        this.services = services;
+        this.consumedServices = consumedServices;
+        this.sent = sent;
+        this.expected = expected;
+        this.received = received;
+        this.misrouted = misrouted;
+        this.completed = completed;
+        this.sendMillis = sendMillis;
+        this.elapsedMillis = elapsedMillis;
+        this.latency = latency;
+        this.backlog = backlog;
+        this.peakBacklog = peakBacklog;
+        this.peakMemory = Collections.unmodifiableMap(new TreeMap<>(peakMemory));
+    }
+
+    public RoutingStrategy getStrategy() {
+        return strategy;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return сообщения, полученные consumer'ом чужого сервиса
+     */
+    public long getMisrouted() {
+        return misrouted;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return скорость доставки сообщений, у которых есть consumer, от начала отправки до последнего получения
+     */
+    public double getThroughput() {
+        return received * 1000.0 / Math.max(1, elapsedMillis);
+    }
+
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return сообщения, оставшиеся в destination'ах прогона на всех брокерах, или -1, если счётчики брокеров
+     * недоступны
+     */
+    public long getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return наибольшее число сообщений в destination'ах прогона во время прогона; сообщения без consumer'а
+     * истекают через {@link ru.softlab.ib6.producer.Messages#TIME_TO_LIVE}, поэтому итоговый остаток может быть
+     * меньше пикового
+     */
+    public long getPeakBacklog() {
+        return peakBacklog;
+    }
+
+    /**
+     * @return пиковая занятая сообщениями память по брокерам в байтах
+     */
+    public Map<String, Long> getPeakMemory() {
+        return peakMemory;
+    }
+
+    public void print(PrintStream out) {
+        out.println();
+        out.println(strategy + ": " + services + " services (" + consumedServices + " with consumers), sent "
+                + sent + " messages in " + sendMillis + " ms");
+        out.println(String.format("%sreceived %d of %d in %d ms: %.1f msg/s, misrouted %d",
+                completed ? "" : "TIMEOUT: ", received, expected, elapsedMillis, getThroughput(), misrouted));
+        if (backlog >= 0) {
+            StringBuilder memory = new StringBuilder();
+            for (Map.Entry<String, Long> entry : peakMemory.entrySet()) {
+                memory.append(String.format(", %s %.1f MB", entry.getKey(), entry.getValue() / (1024.0 * 1024)));
+            }
+            out.println("backlog " + backlog + " messages (peak " + peakBacklog + "), peak broker memory" + memory);
+        }
+        latency.printSummary(out);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.softlab.ib6.routing;
+
+import java.util.Locale;
+
+/**
+ * Способ доставки сообщений сервиса его consumer'у.
+ *
+ * @author Andrey Grigorov
+ */
+public enum RoutingStrategy {
+
+    /**
+     * Все сервисы пишут в одну очередь, consumer каждого сервиса выбирает свои сообщения селектором.
+     * Сообщения сервисов без consumer'а остаются в очереди, и брокер просматривает их при каждой диспетчеризации.
+     */
+    SELECTOR,
+
+    /**
+     * У каждого сервиса своя очередь, селекторы не нужны.
+     */
+    QUEUE_PER_SERVICE,
+
+    /**
+     * Producer'ы пишут в один виртуальный топик, у каждого сервиса своя очередь Consumer.&lt;сервис&gt;.VirtualTopic...
+     * с селектором. Без selectorAware на брокере в каждую такую очередь копируются сообщения всех сервисов.
+     */
+    VIRTUAL_TOPIC;
+
+    /**
+     * @param prefix   префикс имён destination'ов прогона
+     * @param service  сервис, которому адресовано сообщение
+     * @return JNDI-имя destination'а, в который отправляется сообщение
+     */
+    String producerDestination(String prefix, String service) {
+        switch (this) {
+            case SELECTOR:
+                return "dynamicQueues/" + prefix + ".shared";
+            case QUEUE_PER_SERVICE:
+                return "dynamicQueues/" + prefix + ".service." + service;
+            default:
+                return "dynamicTopics/VirtualTopic." + prefix;
+        }
+    }
+
+    /**
+     * @return JNDI-имя очереди, из которой получает сообщения consumer сервиса
+     */
+    String consumerDestination(String prefix, String service) {
+        switch (this) {
+            case SELECTOR:
+            case QUEUE_PER_SERVICE:
+                return producerDestination(prefix, service);
+            default:
+                return "dynamicQueues/Consumer." + service + ".VirtualTopic." + prefix;
+        }
+    }
+
+    /**
+     * @return селектор consumer'а сервиса или null
+     */
+    String selector(String service) {
+        return this == QUEUE_PER_SERVICE ? null : RoutingBenchmark.SERVICE_PROPERTY + " = '" + service + "'";
+    }
+
+    /**
+     * @param value "selector", "queue_per_service" или "virtual_topic"
+     */
+    public static RoutingStrategy parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,63 @@
+package ru.softlab.ib6.scenario;
+
+/**
+ * Число сообщений, полученных consumer'ом сценария.
+ *
+ * @author Andrey Grigorov
+ */
+public class ConsumerResult {
+
+    private final String name;
+    private final int expected;
+    private final int received;
+    private final int duplicates;
+
+    ConsumerResult(String name, int expected, int received, int duplicates) {
+        this.name = name;
+        this.expected = expected;
+        this.received = received;
+        this.duplicates = duplicates;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return ожидаемое число сообщений или {@link ConsumerSpec#ANY}
+     */
+    public int getExpected() {
+        return expected;
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    /**
+     * @return повторно полученные сообщения с уже полученным correlation ID; входят в {@link #getReceived()}
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return ожидаемые, но не полученные сообщения; 0 для consumer'а без ожидаемого числа сообщений
+     */
+    public int getLost() {
+        return expected == ConsumerSpec.ANY ? 0 : Math.max(0, expected - (received - duplicates));
+    }
+
+    public boolean isAsExpected() {
+        return expected == ConsumerSpec.ANY || expected == received;
+    }
+
+    @Override
+    public String toString() {
+        String duplicatesText = duplicates > 0 ? ", " + duplicates + " duplicates" : "";
+        return expected == ConsumerSpec.ANY
+                ? name + ": " + received + " messages" + duplicatesText
+                : name + ": " + received + " of " + expected + " messages" + duplicatesText
+                + (isAsExpected() ? "" : " (MISMATCH)");
+    }
+}
@@ -0,0 +1,78 @@
+package ru.softlab.ib6.scenario;
+
+/**
+ * Описание consumer'а сценария.
+ *
+ * @author Andrey Grigorov
+ */
+public class ConsumerSpec {
+
+    /**
+     * Число сообщений, которые получит consumer, заранее неизвестно (например, когда несколько consumer'ов
+     * делят одну очередь).
+     */
+    public static final int ANY = -1;
+
+    private final String name;
+    private final int dataCenter;
+    private final String destination;
+    private String selector;
+    private long processingDelayMillis;
+    private int expected = ANY;
+
+    /**
+     * @param name        имя consumer'а для вывода, например "Consumer 1"
+     * @param dataCenter  номер датацентра, начиная с 0
+     * @param destination JNDI-имя очереди или топика
+     */
+    public ConsumerSpec(String name, int dataCenter, String destination) {
+        this.name = name;
+        this.dataCenter = dataCenter;
+        this.destination = destination;
+    }
+
+    public ConsumerSpec selector(String selector) {
+        this.selector = selector;
+        return this;
+    }
+
+    /**
+     * @param processingDelayMillis время обработки одного сообщения
+     */
+    public ConsumerSpec processingDelay(long processingDelayMillis) {
+        this.processingDelayMillis = processingDelayMillis;
+        return this;
+    }
+
+    /**
+     * @param expected сколько сообщений должен получить consumer
+     */
+    public ConsumerSpec expect(int expected) {
+        this.expected = expected;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDataCenter() {
+        return dataCenter;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public long getProcessingDelayMillis() {
+        return processingDelayMillis;
+    }
+
+    public int getExpected() {
+        return expected;
+    }
+}
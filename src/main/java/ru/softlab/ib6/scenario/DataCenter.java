@@ -0,0 +1,50 @@
+package ru.softlab.ib6.scenario;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.Properties;
+
+/**
+ * Датацентр: брокер, к которому подключаются его producer'ы и consumer'ы, и JNDI-контекст для подключения к нему.
+ *
+ * @author Andrey Grigorov
+ */
+public class DataCenter {
+
+    private final String name;
+    private final InitialContext context;
+    private final ConnectionFactory connectionFactory;
+
+    /**
+     * @param name       название датацентра, например "DataCenter #1"
+     * @param properties параметры JNDI-контекста ActiveMQ
+     * @throws NamingException
+     */
+    public DataCenter(String name, Properties properties) throws NamingException {
+        this.name = name;
+        this.context = new InitialContext(properties);
+        this.connectionFactory = (ConnectionFactory) context.lookup("ConnectionFactory");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    /**
+     * @param destinationName JNDI-имя очереди или топика, например "dynamicQueues/test"
+     */
+    public Destination lookup(String destinationName) throws NamingException {
+        return (Destination) context.lookup(destinationName);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,51 @@
+package ru.softlab.ib6.scenario;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Описание producer'а сценария: куда и сколько сообщений отправить.
+ * Сообщения получают correlation ID вида "DataCenter #1 - 5".
+ *
+ * @author Andrey Grigorov
+ */
+public class ProducerSpec {
+
+    private final int dataCenter;
+    private final String destination;
+    private final int count;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    /**
+     * @param dataCenter  номер датацентра, начиная с 0
+     * @param destination JNDI-имя очереди или топика
+     * @param count       число отправляемых сообщений
+     */
+    public ProducerSpec(int dataCenter, String destination, int count) {
+        this.dataCenter = dataCenter;
+        this.destination = destination;
+        this.count = count;
+    }
+
+    public ProducerSpec header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public int getDataCenter() {
+        return dataCenter;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+}
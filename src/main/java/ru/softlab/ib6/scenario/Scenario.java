@@ -0,0 +1,95 @@
+package ru.softlab.ib6.scenario;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Сценарий эксперимента: consumer'ы, producer'ы и число сообщений, которые должны быть доставлены.
+ *
+ * @author Andrey Grigorov
+ */
+public class Scenario {
+
+    private final String title;
+    private final List<ConsumerSpec> consumers;
+    private final List<ProducerSpec> producers;
+    private final int expectedTotal;
+
+    private Scenario(Builder builder) {
+        this.title = builder.title;
+        this.consumers = Collections.unmodifiableList(new ArrayList<>(builder.consumers));
+        this.producers = Collections.unmodifiableList(new ArrayList<>(builder.producers));
+        this.expectedTotal = builder.expectedTotal >= 0 ? builder.expectedTotal : sumOfExpected(consumers);
+    }
+
+    public static Builder builder(String title) {
+        return new Builder(title);
+    }
+
+    private static int sumOfExpected(List<ConsumerSpec> consumers) {
+        int total = 0;
+        for (ConsumerSpec consumer : consumers) {
+            if (consumer.getExpected() == ConsumerSpec.ANY) {
+                throw new IllegalStateException("Consumer " + consumer.getName()
+                        + " has no expected count, so the scenario must declare expectTotal");
+            }
+            total += consumer.getExpected();
+        }
+        return total;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<ConsumerSpec> getConsumers() {
+        return consumers;
+    }
+
+    public List<ProducerSpec> getProducers() {
+        return producers;
+    }
+
+    /**
+     * @return сколько всего доставок ожидается всеми consumer'ами вместе
+     */
+    public int getExpectedTotal() {
+        return expectedTotal;
+    }
+
+    public static class Builder {
+
+        private final String title;
+        private final List<ConsumerSpec> consumers = new ArrayList<>();
+        private final List<ProducerSpec> producers = new ArrayList<>();
+        private int expectedTotal = -1;
+
+        private Builder(String title) {
+            this.title = title;
+        }
+
+        public Builder consumer(ConsumerSpec consumer) {
+            consumers.add(consumer);
+            return this;
+        }
+
+        public Builder producer(ProducerSpec producer) {
+            producers.add(producer);
+            return this;
+        }
+
+        /**
+         * Задаёт общее число доставок, если число сообщений хотя бы у одного consumer'а заранее неизвестно.
+         * По умолчанию - сумма ожидаемых сообщений всех consumer'ов.
+         */
+        public Builder expectTotal(int expectedTotal) {
+            this.expectedTotal = expectedTotal;
+            return this;
+        }
+
+        public Scenario build() {
+            return new Scenario(this);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.softlab.ib6.scenario;
+
+import ru.softlab.ib6.bridge.BridgeStatistics;
+import ru.softlab.ib6.metrics.ForwardingMatrix;
+import ru.softlab.ib6.metrics.LatencyRecorder;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат выполнения сценария.
+ *
+ * @author Andrey Grigorov
+ */
+public class ScenarioResult {
+
+    private final String title;
+    private final boolean completed;
+    private final long elapsedMillis;
+    private final int expectedTotal;
+    private final List<ConsumerResult> consumers;
+    private final LatencyRecorder latency;
+    private final ForwardingMatrix forwarding;
+    private final BridgeStatistics bridges;
+
+    ScenarioResult(String title, boolean completed, long elapsedMillis, int expectedTotal,
+                   List<ConsumerResult> consumers, LatencyRecorder latency, ForwardingMatrix forwarding,
+                   BridgeStatistics bridges) {
+        this.title = title;
+        this.completed = completed;
+        this.elapsedMillis = elapsedMillis;
+        this.expectedTotal = expectedTotal;
+        this.consumers = Collections.unmodifiableList(consumers);
+        this.latency = latency;
+        this.forwarding = forwarding;
+        this.bridges = bridges;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return true, если все ожидаемые сообщения доставлены до истечения таймаута
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return время от начала отправки до доставки последнего ожидаемого сообщения или до таймаута
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public int getExpectedTotal() {
+        return expectedTotal;
+    }
+
+    public int getReceivedTotal() {
+        int total = 0;
+        for (ConsumerResult consumer : consumers) {
+            total += consumer.getReceived();
+        }
+        return total;
+    }
+
+    /**
+     * @return повторно полученные сообщения всех consumer'ов
+     */
+    public int getDuplicateTotal() {
+        int total = 0;
+        for (ConsumerResult consumer : consumers) {
+            total += consumer.getDuplicates();
+        }
+        return total;
+    }
+
+    /**
+     * @return ожидаемые сообщения, которые не получил ни один consumer, без учёта повторных
+     */
+    public int getLostTotal() {
+        return Math.max(0, expectedTotal - (getReceivedTotal() - getDuplicateTotal()));
+    }
+
+    /**
+     * @return полученные сообщения в секунду от начала отправки до доставки последнего ожидаемого сообщения
+     */
+    public double getThroughput() {
+        return getReceivedTotal() * 1000.0 / Math.max(1, elapsedMillis);
+    }
+
+    public List<ConsumerResult> getConsumers() {
+        return consumers;
+    }
+
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+    public ForwardingMatrix getForwarding() {
+        return forwarding;
+    }
+
+    /**
+     * @return изменение счётчиков сетевых мостов за время сценария или null, если счётчики брокеров недоступны
+     */
+    public BridgeStatistics getBridges() {
+        return bridges;
+    }
+
+    /**
+     * @return true, если сценарий завершился вовремя и каждый consumer получил ожидаемое число сообщений
+     */
+    public boolean isSuccessful() {
+        if (!completed || getReceivedTotal() != expectedTotal) {
+            return false;
+        }
+        for (ConsumerResult consumer : consumers) {
+            if (!consumer.isAsExpected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void print(PrintStream out) {
+        for (ConsumerResult consumer : consumers) {
+            out.println(consumer);
+        }
+        out.println((completed ? "Delivered " : "TIMEOUT: delivered ") + getReceivedTotal() + " of " + expectedTotal
+                + " messages in " + elapsedMillis + " ms");
+        latency.printSummary(out);
+        forwarding.print(out);
+        if (bridges != null) {
+            bridges.print(out, elapsedMillis);
+        }
+    }
+}
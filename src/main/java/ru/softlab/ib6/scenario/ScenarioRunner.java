@@ -0,0 +1,269 @@
+package ru.softlab.ib6.scenario;
+
+import ru.softlab.ib6.bridge.BridgeStatistics;
+import ru.softlab.ib6.bridge.BridgeStatisticsSource;
+import ru.softlab.ib6.metrics.ForwardingMatrix;
+import ru.softlab.ib6.metrics.LatencyRecorder;
+import ru.softlab.ib6.producer.MessageSender;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Выполняет сценарии: подключает consumer'ов, отправляет сообщения и ждёт, пока не будут доставлены все ожидаемые
+ * сообщения или не истечёт таймаут. Вместо фиксированной паузы доставки отсчитываются {@link CountDownLatch},
+ * поэтому сценарий завершается сразу после получения последнего ожидаемого сообщения.
+ *
+ * @author Andrey Grigorov
+ */
+public class ScenarioRunner {
+
+    /**
+     * Таймаут ожидания доставки по умолчанию.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private final List<DataCenter> dataCenters;
+    private final MessageSender sender;
+    private final long timeoutMillis;
+    private final boolean verbose;
+    private BridgeStatisticsSource bridgeStatistics;
+
+    /**
+     * @param dataCenters   датацентры; номера датацентров в сценариях - индексы в этом списке
+     * @param sender        способ отправки сообщений
+     * @param timeoutMillis максимальное время ожидания доставки
+     */
+    public ScenarioRunner(List<DataCenter> dataCenters, MessageSender sender, long timeoutMillis) {
+        this(dataCenters, sender, timeoutMillis, true);
+    }
+
+    /**
+     * @param verbose выводить ли каждое обработанное сообщение и результат сценария; при false вывод остаётся
+     *                вызывающему коду, например при многократном прогоне сценариев с разными параметрами
+     */
+    public ScenarioRunner(List<DataCenter> dataCenters, MessageSender sender, long timeoutMillis, boolean verbose) {
+        this.dataCenters = new ArrayList<>(dataCenters);
+        this.sender = sender;
+        this.timeoutMillis = timeoutMillis;
+        this.verbose = verbose;
+    }
+
+    /**
+     * @param bridgeStatistics источник счётчиков сетевых мостов; если задан, перед отправкой сообщений
+     *                         сценария ожидаются подписки мостов на его destination'ы, а для каждого сценария
+     *                         выводится изменение счётчиков мостов и destination'ов
+     */
+    public ScenarioRunner bridgeStatistics(BridgeStatisticsSource bridgeStatistics) {
+        this.bridgeStatistics = bridgeStatistics;
+        return this;
+    }
+
+    public ScenarioResult run(Scenario scenario) throws Exception {
+        if (verbose) {
+            System.out.println();
+            System.out.println(scenario.getTitle());
+        }
+
+        LatencyRecorder latency = new LatencyRecorder();
+        List<String> dataCenterNames = new ArrayList<>();
+        for (DataCenter dataCenter : dataCenters) {
+            dataCenterNames.add(dataCenter.getName());
+        }
+        ForwardingMatrix forwarding = new ForwardingMatrix(dataCenterNames);
+        CountDownLatch delivered = new CountDownLatch(scenario.getExpectedTotal());
+        List<Connection> connections = new ArrayList<>();
+        List<Session> sessions = new ArrayList<>();
+        List<AtomicInteger> counters = new ArrayList<>();
+        List<AtomicInteger> duplicateCounters = new ArrayList<>();
+        // сообщение очереди, повторно доставленное другому consumer'у (например, после переподключения или
+        // пересылки мостом), тоже повтор, поэтому consumer'ы одной очереди с одним селектором ведут общий учёт;
+        // подписчики топика получают каждый свою копию и учитывают повторы по отдельности
+        Map<String, Set<String>> correlationIdsByQueue = new HashMap<>();
+        try {
+            for (ConsumerSpec spec : scenario.getConsumers()) {
+                DataCenter dataCenter = dataCenters.get(spec.getDataCenter());
+                Connection connection = dataCenter.getConnectionFactory().createConnection();
+                connections.add(connection);
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                sessions.add(session);
+                Destination destination = dataCenter.lookup(spec.getDestination());
+                MessageConsumer consumer = session.createConsumer(destination, spec.getSelector());
+                Set<String> correlationIds;
+                if (destination instanceof Queue) {
+                    String key = ((Queue) destination).getQueueName() + "?" + spec.getSelector();
+                    correlationIds = correlationIdsByQueue.computeIfAbsent(key, name -> ConcurrentHashMap.newKeySet());
+                } else {
+                    correlationIds = ConcurrentHashMap.newKeySet();
+                }
+
+                AtomicInteger counter = new AtomicInteger();
+                counters.add(counter);
+                AtomicInteger duplicates = new AtomicInteger();
+                duplicateCounters.add(duplicates);
+                consumer.setMessageListener(new CountingListener(spec, dataCenter.getName(), counter, duplicates,
+                        correlationIds, delivered, latency, forwarding, verbose));
+            }
+            for (Connection connection : connections) {
+                connection.start();
+            }
+            if (bridgeStatistics != null) {
+                awaitDemand(scenario);
+            }
+
+            BridgeStatistics bridgesBefore = bridgeStatistics != null ? bridgeStatistics.snapshot() : null;
+            long startTime = System.nanoTime();
+            for (ProducerSpec spec : scenario.getProducers()) {
+                send(spec);
+            }
+            boolean completed = delivered.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            BridgeStatistics bridges = bridgesBefore != null ? bridgeStatistics.snapshot().minus(bridgesBefore) : null;
+
+            List<ConsumerResult> consumerResults = new ArrayList<>();
+            for (int i = 0; i < scenario.getConsumers().size(); i++) {
+                ConsumerSpec spec = scenario.getConsumers().get(i);
+                consumerResults.add(new ConsumerResult(spec.getName(), spec.getExpected(), counters.get(i).get(),
+                        duplicateCounters.get(i).get()));
+            }
+            ScenarioResult result = new ScenarioResult(scenario.getTitle(), completed, elapsedMillis,
+                    scenario.getExpectedTotal(), consumerResults, latency, forwarding, bridges);
+            if (verbose) {
+                result.print(System.out);
+                System.out.println();
+            }
+            return result;
+        } finally {
+            for (Session session : sessions) {
+                closeQuietly(session);
+            }
+            for (Connection connection : connections) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Ждёт, пока consumer'ы destination'ов сценария, локальные или подписки сетевых мостов, появятся на каждом
+     * брокере. Мост подписывается на удалённом брокере асинхронно, и сообщение топика, отправленное туда раньше,
+     * теряется, а сообщение очереди задерживается до появления подписки.
+     */
+    private void awaitDemand(Scenario scenario) throws Exception {
+        Set<String> destinations = new LinkedHashSet<>();
+        for (ConsumerSpec spec : scenario.getConsumers()) {
+            destinations.add(spec.getDestination().substring(spec.getDestination().indexOf('/') + 1));
+        }
+        for (String destination : destinations) {
+            if (!bridgeStatistics.awaitStableConsumers(destination, 1, timeoutMillis)) {
+                System.out.println("Consumers of " + destination + " did not reach every broker in "
+                        + timeoutMillis + " ms");
+            }
+        }
+    }
+
+    private void send(ProducerSpec spec) throws Exception {
+        DataCenter dataCenter = dataCenters.get(spec.getDataCenter());
+        ConnectionFactory connectionFactory = dataCenter.getConnectionFactory();
+        Destination destination = dataCenter.lookup(spec.getDestination());
+
+        Map<String, String> headers = new HashMap<>(spec.getHeaders());
+        headers.put(Messages.ORIGIN_PROPERTY, dataCenter.getName());
+        for (int i = 1; i <= spec.getCount(); i++) {
+            sender.send(connectionFactory, destination, dataCenter.getName() + " - " + i, headers);
+        }
+    }
+
+    private static void closeQuietly(Session session) {
+        try {
+            session.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class CountingListener implements MessageListener {
+
+        private final ConsumerSpec spec;
+        private final String dataCenter;
+        private final AtomicInteger counter;
+        private final AtomicInteger duplicates;
+        private final Set<String> correlationIds;
+        private final CountDownLatch delivered;
+        private final LatencyRecorder latency;
+        private final ForwardingMatrix forwarding;
+        private final boolean verbose;
+
+        /**
+         * @param correlationIds уже полученные correlation ID; общий набор для consumer'ов одной очереди
+         */
+        CountingListener(ConsumerSpec spec, String dataCenter, AtomicInteger counter, AtomicInteger duplicates,
+                         Set<String> correlationIds, CountDownLatch delivered, LatencyRecorder latency,
+                         ForwardingMatrix forwarding, boolean verbose) {
+            this.spec = spec;
+            this.dataCenter = dataCenter;
+            this.counter = counter;
+            this.duplicates = duplicates;
+            this.correlationIds = correlationIds;
+            this.delivered = delivered;
+            this.latency = latency;
+            this.forwarding = forwarding;
+            this.verbose = verbose;
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            latency.record(message);
+            forwarding.record(dataCenter, message);
+            try {
+                String correlationId = message.getJMSCorrelationID();
+                if (correlationId != null && !correlationIds.add(correlationId)) {
+                    duplicates.incrementAndGet();
+                }
+                if (spec.getProcessingDelayMillis() > 0) {
+                    Thread.sleep(spec.getProcessingDelayMillis());
+                }
+                if (verbose) {
+                    String service = message.getStringProperty("service");
+                    System.out.println(spec.getName() + " processed message \"" + correlationId + "\""
+                            + (service != null ? "; service = " + service : ""));
+                }
+            } catch (JMSException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            // сообщения сверх ожидаемого числа не приближают завершение сценария
+            int received = counter.incrementAndGet();
+            if (spec.getExpected() == ConsumerSpec.ANY || received <= spec.getExpected()) {
+                delivered.countDown();
+            }
+        }
+    }
+}
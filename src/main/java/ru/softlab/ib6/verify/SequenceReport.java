@@ -0,0 +1,119 @@
+package ru.softlab.ib6.verify;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат проверки номеров сообщений одного producer'а.
+ *
+ * @author Andrey Grigorov
+ */
+public class SequenceReport {
+
+    /**
+     * Сколько диапазонов пропущенных номеров сохраняется для вывода.
+     */
+    static final int MAX_GAPS = 10;
+
+    private final String producer;
+    private final long sent;
+    private final long received;
+    private final long missing;
+    private final List<long[]> gaps;
+    private final long gapCount;
+    private final long duplicates;
+    private final long reordered;
+    private final long maxReorderDistance;
+
+    SequenceReport(String producer, long sent, long received, long missing, List<long[]> gaps, long gapCount,
+                   long duplicates, long reordered, long maxReorderDistance) {
+        this.producer = producer;
+        this.sent = sent;
+        this.received = received;
+        this.missing = missing;
+        this.gaps = Collections.unmodifiableList(new ArrayList<>(gaps));
+        this.gapCount = gapCount;
+        this.duplicates = duplicates;
+        this.reordered = reordered;
+        this.maxReorderDistance = maxReorderDistance;
+    }
+
+    public String getProducer() {
+        return producer;
+    }
+
+    /**
+     * @return последний отправленный номер
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return полученные номера без повторов
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return отправленные, но не полученные номера
+     */
+    public long getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return первые {@value #MAX_GAPS} диапазонов пропущенных номеров: {первый, последний}
+     */
+    public List<long[]> getGaps() {
+        return gaps;
+    }
+
+    /**
+     * @return число диапазонов пропущенных номеров
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return сообщения, полученные сессией после сообщения того же producer'а с большим номером
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /**
+     * @return на сколько номеров сообщение отстало от уже полученного сессией больше всего
+     */
+    public long getMaxReorderDistance() {
+        return maxReorderDistance;
+    }
+
+    public boolean isExactlyOnceInOrder() {
+        return missing == 0 && duplicates == 0 && reordered == 0;
+    }
+
+    public void print(PrintStream out) {
+        StringBuilder line = new StringBuilder(String.format("%-24s sent %9d, received %9d, missing %7d, "
+                        + "duplicates %7d, reordered %7d (max distance %d)",
+                producer, sent, received, missing, duplicates, reordered, maxReorderDistance));
+        if (!gaps.isEmpty()) {
+            line.append("\n  gaps:");
+            for (long[] gap : gaps) {
+                line.append(' ').append(gap[0] == gap[1] ? String.valueOf(gap[0]) : gap[0] + "-" + gap[1]);
+            }
+            if (gapCount > gaps.size()) {
+                line.append(" ... (").append(gapCount).append(" ranges)");
+            }
+        }
+        out.println(line);
+    }
+}
@@ -0,0 +1,217 @@
+package ru.softlab.ib6.verify;
+
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Проверка доставки по номерам сообщений: каждый producer нумерует свои сообщения с 1
+ * (свойства {@link Messages#PRODUCER_PROPERTY} и {@link Messages#SEQUENCE_PROPERTY}), а verifier отмечает полученные
+ * номера в битовой карте и находит пропуски, повторы и нарушения порядка.
+ *
+ * Битовая карта producer'а - сегменты AtomicLongArray, которые создаются по мере роста номеров; бит выставляется
+ * CAS'ом, поэтому consumer'ы не блокируют друг друга, а на сообщение уходит один бит памяти. Порядок проверяется
+ * отдельно для каждой сессии ({@link #consumer()}): JMS гарантирует порядок сообщений одного producer'а только
+ * для одного consumer'а, и сессия хранит наибольший полученный номер каждого producer'а без синхронизации.
+ *
+ * @author Andrey Grigorov
+ */
+public class SequenceVerifier {
+
+    private static final int WORDS_PER_SEGMENT = 1 << 13;
+    private static final int BITS_PER_SEGMENT = WORDS_PER_SEGMENT * Long.SIZE;
+    private static final int MAX_SEGMENTS = 1 << 12;
+
+    /**
+     * Наибольший номер сообщения, который можно проверить: 2^31 - 1.
+     */
+    public static final long MAX_SEQUENCE = (long) BITS_PER_SEGMENT * MAX_SEGMENTS - 1;
+
+    private final List<String> producers;
+    private final List<ProducerTrack> tracks = new ArrayList<>();
+    private final LongAdder unverified = new LongAdder();
+
+    /**
+     * @param producers названия producer'ов; номер producer'а в сообщениях - индекс в этом списке
+     */
+    public SequenceVerifier(List<String> producers) {
+        this.producers = new ArrayList<>(producers);
+        for (int i = 0; i < producers.size(); i++) {
+            tracks.add(new ProducerTrack());
+        }
+    }
+
+    /**
+     * Помечает сообщение номером producer'а и очередным номером.
+     */
+    public static void stamp(Message message, int producer, long sequence) throws JMSException {
+        message.setIntProperty(Messages.PRODUCER_PROPERTY, producer);
+        message.setLongProperty(Messages.SEQUENCE_PROPERTY, sequence);
+    }
+
+    /**
+     * Запоминает последний номер, который producer отправляет; пропуски ищутся до этого номера. Вызывается
+     * до отправки сообщения, поэтому сообщение, отправка которого не удалась, окажется пропуском.
+     */
+    public void sent(int producer, long lastSequence) {
+        tracks.get(producer).lastSent.accumulate(lastSequence);
+    }
+
+    /**
+     * @return проверка для одной сессии consumer'а; вызывать её можно только из потока этой сессии
+     */
+    public Consumer consumer() {
+        return new Consumer();
+    }
+
+    /**
+     * @return сообщения без номера, с неизвестным producer'ом или номером вне диапазона
+     */
+    public long getUnverified() {
+        return unverified.sum();
+    }
+
+    /**
+     * Сравнивает полученные номера с отправленными. Вызывать после того, как consumer'ы перестали получать
+     * сообщения, иначе ещё не полученные сообщения окажутся пропусками.
+     */
+    public List<SequenceReport> report() {
+        List<SequenceReport> reports = new ArrayList<>();
+        for (int i = 0; i < producers.size(); i++) {
+            reports.add(tracks.get(i).report(producers.get(i)));
+        }
+        return reports;
+    }
+
+    public class Consumer {
+
+        private final long[] highest = new long[producers.size()];
+
+        private Consumer() {
+        }
+
+        public void record(Message message) {
+            int producer;
+            long sequence;
+            try {
+                if (!message.propertyExists(Messages.SEQUENCE_PROPERTY)) {
+                    unverified.increment();
+                    return;
+                }
+                producer = message.getIntProperty(Messages.PRODUCER_PROPERTY);
+                sequence = message.getLongProperty(Messages.SEQUENCE_PROPERTY);
+            } catch (JMSException | NumberFormatException e) {
+                unverified.increment();
+                return;
+            }
+            record(producer, sequence);
+        }
+
+        public void record(int producer, long sequence) {
+            if (producer < 0 || producer >= highest.length || sequence < 1 || sequence > MAX_SEQUENCE) {
+                unverified.increment();
+                return;
+            }
+            ProducerTrack track = tracks.get(producer);
+            if (!track.mark(sequence)) {
+                track.duplicates.increment();
+                return;
+            }
+            track.received.increment();
+            if (sequence < highest[producer]) {
+                track.reordered.increment();
+                track.maxReorderDistance.accumulate(highest[producer] - sequence);
+            } else {
+                highest[producer] = sequence;
+            }
+        }
+    }
+
+    private static class ProducerTrack {
+
+        private final AtomicReferenceArray<AtomicLongArray> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+        private final LongAccumulator lastSent = new LongAccumulator(Math::max, 0);
+        private final LongAdder received = new LongAdder();
+        private final LongAdder duplicates = new LongAdder();
+        private final LongAdder reordered = new LongAdder();
+        private final LongAccumulator maxReorderDistance = new LongAccumulator(Math::max, 0);
+
+        /**
+         * @return false, если номер уже был получен
+         */
+        boolean mark(long sequence) {
+            AtomicLongArray segment = segment((int) (sequence / BITS_PER_SEGMENT));
+            int bit = (int) (sequence % BITS_PER_SEGMENT);
+            int word = bit / Long.SIZE;
+            long mask = 1L << (bit % Long.SIZE);
+            long value;
+            do {
+                value = segment.get(word);
+                if ((value & mask) != 0) {
+                    return false;
+                }
+            } while (!segment.compareAndSet(word, value, value | mask));
+            return true;
+        }
+
+        private AtomicLongArray segment(int index) {
+            AtomicLongArray segment = segments.get(index);
+            if (segment == null) {
+                segments.compareAndSet(index, null, new AtomicLongArray(WORDS_PER_SEGMENT));
+                segment = segments.get(index);
+            }
+            return segment;
+        }
+
+        private boolean isMarked(long sequence) {
+            AtomicLongArray segment = segments.get((int) (sequence / BITS_PER_SEGMENT));
+            if (segment == null) {
+                return false;
+            }
+            int bit = (int) (sequence % BITS_PER_SEGMENT);
+            return (segment.get(bit / Long.SIZE) & (1L << (bit % Long.SIZE))) != 0;
+        }
+
+        SequenceReport report(String name) {
+            long last = lastSent.get();
+            long missing = 0;
+            long gapCount = 0;
+            List<long[]> gaps = new ArrayList<>();
+            long sequence = 1;
+            while (sequence <= last) {
+                // заполненные слова пропускаются целиком
+                if (sequence % Long.SIZE == 0 && sequence + Long.SIZE - 1 <= last && isFullWord(sequence)) {
+                    sequence += Long.SIZE;
+                    continue;
+                }
+                if (isMarked(sequence)) {
+                    sequence++;
+                    continue;
+                }
+                long gapStart = sequence;
+                while (sequence <= last && !isMarked(sequence)) {
+                    sequence++;
+                }
+                missing += sequence - gapStart;
+                gapCount++;
+                if (gaps.size() < SequenceReport.MAX_GAPS) {
+                    gaps.add(new long[]{gapStart, sequence - 1});
+                }
+            }
+            return new SequenceReport(name, last, received.sum(), missing, gaps, gapCount, duplicates.sum(),
+                    reordered.sum(), maxReorderDistance.get());
+        }
+
+        private boolean isFullWord(long sequence) {
+            AtomicLongArray segment = segments.get((int) (sequence / BITS_PER_SEGMENT));
+            return segment != null && segment.get((int) (sequence % BITS_PER_SEGMENT) / Long.SIZE) == -1L;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.softlab.ib6;
+
+import org.junit.Test;
+import ru.softlab.ib6.consumer.AckMode;
+import ru.softlab.ib6.embedded.BrokerStore;
+import ru.softlab.ib6.embedded.Topology;
+import ru.softlab.ib6.encoding.BodyType;
+import ru.softlab.ib6.large.TransferMode;
+import ru.softlab.ib6.payload.PayloadContent;
+import ru.softlab.ib6.persistence.DurabilityMode;
+import ru.softlab.ib6.requestreply.ReplyStrategy;
+import ru.softlab.ib6.routing.RoutingStrategy;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Разбор значений системных свойств в перечисления.
+ *
+ * @author Andrey Grigorov
+ */
+public class ParseTest {
+
+    @Test
+    public void payloadContent() {
+        assertParses(PayloadContent.values(), PayloadContent::parse);
+    }
+
+    @Test
+    public void ackMode() {
+        assertParses(AckMode.values(), AckMode::parse);
+    }
+
+    @Test
+    public void routingStrategy() {
+        assertParses(RoutingStrategy.values(), RoutingStrategy::parse);
+    }
+
+    @Test
+    public void topology() {
+        assertParses(Topology.values(), Topology::parse);
+    }
+
+    @Test
+    public void bodyType() {
+        assertParses(BodyType.values(), BodyType::parse);
+    }
+
+    @Test
+    public void transferMode() {
+        assertParses(TransferMode.values(), TransferMode::parse);
+    }
+
+    @Test
+    public void brokerStore() {
+        assertParses(BrokerStore.values(), BrokerStore::parse);
+    }
+
+    @Test
+    public void durabilityMode() {
+        assertParses(DurabilityMode.values(), DurabilityMode::parse);
+    }
+
+    @Test
+    public void replyStrategy() {
+        assertParses(ReplyStrategy.values(), ReplyStrategy::parse);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownName() {
+        PayloadContent.parse("zeros");
+    }
+
+    /**
+     * Каждое значение разбирается из имени в нижнем регистре с пробелами вокруг, в том числе в турецкой локали,
+     * в которой "i".toUpperCase() - это "İ".
+     */
+    private static <E extends Enum<E>> void assertParses(E[] constants, Function<String, E> parse) {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            for (Locale locale : new Locale[]{Locale.ROOT, new Locale("tr", "TR")}) {
+                Locale.setDefault(locale);
+                for (E constant : constants) {
+                    assertEquals(constant, parse.apply(" " + constant.name().toLowerCase(Locale.ROOT) + " "));
+                }
+            }
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ru.softlab.ib6.bridge;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+import ru.softlab.ib6.producer.Messages;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Счётчики, прочитанные через удалённый JMX у сети брокеров внутри JVM, сравниваются со счётчиками, прочитанными
+ * напрямую через API брокеров.
+ *
+ * @author Andrey Grigorov
+ */
+public class JmxBridgeStatisticsSourceTest {
+
+    private static final int MESSAGES = 20;
+
+    private EmbeddedBrokerNetwork network;
+    private JMXConnectorServer connectorServer;
+
+    @Before
+    public void start() throws Exception {
+        network = EmbeddedBrokerNetwork.builder().jmx(true).start();
+        // все брокеры сети регистрируют MBean'ы в одном platform MBeanServer, поэтому достаточно одного адреса
+        connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1"),
+                null, ManagementFactory.getPlatformMBeanServer());
+        connectorServer.start();
+    }
+
+    @After
+    public void stop() throws Exception {
+        if (connectorServer != null) {
+            connectorServer.stop();
+        }
+        if (network != null) {
+            network.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void countersMatchEmbeddedBrokers() throws Exception {
+        ActiveMQQueue queue = new ActiveMQQueue("jmx");
+        List<Connection> connections = new ArrayList<>();
+        try (JmxBridgeStatisticsSource jmx = new JmxBridgeStatisticsSource(
+                Collections.singletonList(connectorServer.getAddress().toString()))) {
+            BridgeStatistics before = jmx.snapshot();
+            assertEquals(network.getBrokerCount(), before.getBrokers().size());
+            assertEquals(network.getBrokerCount(), before.getBridges().size());
+
+            Connection consumerConnection = new ActiveMQConnectionFactory(network.getConnectUri(0)).createConnection();
+            connections.add(consumerConnection);
+            AtomicInteger received = new AtomicInteger();
+            MessageConsumer consumer = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE)
+                    .createConsumer(queue);
+            consumer.setMessageListener(message -> received.incrementAndGet());
+            consumerConnection.start();
+            assertTrue(jmx.awaitStableConsumers("jmx", 1, 30000));
+
+            Connection producerConnection = new ActiveMQConnectionFactory(network.getConnectUri(1)).createConnection();
+            connections.add(producerConnection);
+            Session session = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(queue);
+            for (int i = 1; i <= MESSAGES; i++) {
+                producer.send(Messages.createBytesMessage(session, "message " + i, null));
+            }
+            while (received.get() < MESSAGES) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+
+            BridgeStatistics viaJmx = jmx.snapshot().minus(before);
+            BridgeStatistics embedded = new EmbeddedBridgeStatisticsSource(network).snapshot();
+            assertEquals(MESSAGES, viaJmx.getForwarded());
+            assertEquals(embedded.getForwarded(), jmx.snapshot().getForwarded());
+
+            String producerBroker = network.getBroker(1).getBrokerName();
+            long forwards = 0;
+            for (BridgeStatistics.DestinationCounters destination : viaJmx.getDestinations()) {
+                if (destination.getBroker().equals(producerBroker) && destination.getDestination().equals("queue://jmx")) {
+                    forwards = destination.getForwards();
+                }
+            }
+            assertEquals(MESSAGES, forwards);
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ru.softlab.ib6.consumer;
+
+import org.apache.activemq.broker.BrokerService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.softlab.ib6.producer.Messages;
+import ru.softlab.ib6.scenario.DataCenter;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andrey Grigorov
+ */
+public class ConsumerPoolTest {
+
+    private static final String QUEUE = "dynamicQueues/pool";
+    private static final int MESSAGES = 250;
+
+    private BrokerService broker;
+    private DataCenter dataCenter;
+
+    @Before
+    public void startBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("consumer-pool-test");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        Properties properties = new Properties();
+        properties.put("java.naming.provider.url", "vm://consumer-pool-test?create=false&jms.prefetchPolicy.all=50");
+        properties.put("java.naming.factory.initial", "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+        dataCenter = new DataCenter("DataCenter #1", properties);
+    }
+
+    @After
+    public void stopBroker() throws Exception {
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test(timeout = 30000)
+    public void clientAcknowledgedMessagesAreNotRedelivered() throws Exception {
+        ConsumerPool pool = ConsumerPool.builder(dataCenter, QUEUE, message -> {
+        })
+                .sessions(2)
+                .workers(4)
+                .ackMode(AckMode.CLIENT)
+                .ackBatch(10, 50)
+                .start();
+        try {
+            send(MESSAGES);
+            while (pool.getProcessed() < MESSAGES) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        } finally {
+            pool.close();
+        }
+        assertEquals(MESSAGES, pool.getReceived());
+        assertTrue(pool.getAcknowledgements() > 0);
+
+        Connection connection = dataCenter.getConnectionFactory().createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(dataCenter.lookup(QUEUE));
+            assertNull(consumer.receive(500));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void send(int count) throws Exception {
+        Connection connection = dataCenter.getConnectionFactory().createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(dataCenter.lookup(QUEUE));
+            for (int i = 1; i <= count; i++) {
+                producer.send(Messages.createBytesMessage(session, "message " + i, null));
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
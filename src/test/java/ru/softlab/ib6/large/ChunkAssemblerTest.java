@@ -0,0 +1,124 @@
+package ru.softlab.ib6.large;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andrey Grigorov
+ */
+public class ChunkAssemblerTest {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static ActiveMQBytesMessage chunk(String groupId, byte[] payload, int offset, int length,
+                                      long checksum) throws Exception {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setStringProperty(ChunkedSender.GROUP_ID_PROPERTY, groupId);
+        message.setLongProperty(ChunkedSender.OFFSET_PROPERTY, offset);
+        message.setLongProperty(ChunkedSender.TOTAL_SIZE_PROPERTY, payload.length);
+        message.setLongProperty(ChunkedSender.CHECKSUM_PROPERTY, checksum);
+        message.writeBytes(payload, offset, length);
+        message.reset();
+        return message;
+    }
+
+    static ActiveMQBytesMessage chunk(String groupId, byte[] payload, int offset) throws Exception {
+        int length = Math.min(CHUNK_SIZE, payload.length - offset);
+        CRC32 crc = new CRC32();
+        crc.update(payload, offset, length);
+        return chunk(groupId, payload, offset, length, crc.getValue());
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    @Test
+    public void assemblesChunksInAnyOrder() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(folder.getRoot().toPath());
+        byte[] payload = payload(3500);
+        for (int offset : new int[]{2000, 0, 3000, 1000}) {
+            assembler.onMessage(chunk("group", payload, offset));
+        }
+
+        ChunkAssembler.AssembledFile file = assembler.await("group", 1000);
+        assertNotNull(file);
+        assertTrue(file.isVerified());
+        assertEquals(4, file.getChunks());
+        assertEquals(3500, file.getReceived());
+        assertArrayEquals(payload, Files.readAllBytes(file.getPath()));
+
+        assembler.remove("group");
+        assertFalse(Files.exists(file.getPath()));
+    }
+
+    @Test
+    public void redeliveredChunkIsCountedOnce() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(folder.getRoot().toPath());
+        byte[] payload = payload(2000);
+        assembler.onMessage(chunk("group", payload, 0));
+        assembler.onMessage(chunk("group", payload, 0));
+
+        ChunkAssembler.AssembledFile file = assembler.await("group", 100);
+        assertFalse(file.isComplete());
+        assertEquals(1000, file.getReceived());
+        assertEquals(1, file.getChunks());
+        assertEquals(1, file.getDuplicateChunks());
+
+        assembler.onMessage(chunk("group", payload, 1000));
+        assertTrue(file.isVerified());
+        assertEquals(2, file.getChunks());
+    }
+
+    @Test
+    public void corruptChunkFailsVerification() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(folder.getRoot().toPath());
+        byte[] payload = payload(2000);
+        assembler.onMessage(chunk("group", payload, 0));
+        assembler.onMessage(chunk("group", payload, 1000, 1000, 42));
+
+        ChunkAssembler.AssembledFile file = assembler.await("group", 1000);
+        assertTrue(file.isComplete());
+        assertEquals(1, file.getCorruptChunks());
+        assertFalse(file.isVerified());
+    }
+
+    @Test
+    public void messageWithoutGroupIsSingleChunk() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(folder.getRoot().toPath());
+        byte[] payload = payload(100);
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setJMSCorrelationID("single");
+        message.writeBytes(payload);
+        message.reset();
+        assembler.onMessage(message);
+
+        ChunkAssembler.AssembledFile file = assembler.await("single", 1000);
+        assertTrue(file.isVerified());
+        assertTrue(Arrays.equals(payload, Files.readAllBytes(file.getPath())));
+    }
+
+    @Test
+    public void missingGroupTimesOut() throws Exception {
+        assertNull(new ChunkAssembler(folder.getRoot().toPath()).await("absent", 50));
+    }
+}
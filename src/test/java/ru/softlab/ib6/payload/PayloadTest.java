@@ -0,0 +1,63 @@
+package ru.softlab.ib6.payload;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andrey Grigorov
+ */
+public class PayloadTest {
+
+    private static final byte[] BUFFER = {0, 1, 2, 3, 4, 5, 6, 7};
+
+    @Test
+    public void readOnlyBufferCoversOnlyPayload() {
+        ByteBuffer buffer = new Payload(BUFFER, 2, 4).asReadOnlyBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(0, buffer.position());
+        assertEquals(4, buffer.remaining());
+        byte[] content = new byte[4];
+        buffer.get(content);
+        assertArrayEquals(new byte[]{2, 3, 4, 5}, content);
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void sharedBufferCannotBeChanged() {
+        new Payload(BUFFER, 2, 4).asReadOnlyBuffer().put((byte) 42);
+    }
+
+    @Test
+    public void copyIsIndependentOfSharedBuffer() {
+        byte[] copy = new Payload(BUFFER, 2, 4).toByteArray();
+        copy[0] = 42;
+        assertEquals(2, BUFFER[2]);
+    }
+
+    @Test
+    public void inputStreamHasRequestedLength() {
+        PayloadProvider payloads = new PayloadProvider(SizeDistribution.uniform(1, 100), PayloadContent.RANDOM, 16,
+                new Random(1));
+        byte[] buffer = new byte[333];
+        long total = 0;
+        PayloadInputStream in = new PayloadInputStream(payloads, 10000);
+        int count;
+        while ((count = in.read(buffer, 0, buffer.length)) > 0) {
+            total += count;
+        }
+        assertEquals(10000, total);
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyPayloadIsRejected() {
+        // из пустых участков поток не смог бы прочитать ни байта
+        SizeDistribution.parse("histogram:0=1,100=1");
+    }
+}
@@ -0,0 +1,110 @@
+package ru.softlab.ib6.producer;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * @author Andrey Grigorov
+ */
+public class BatchSenderTest {
+
+    private static final ActiveMQQueue QUEUE = new ActiveMQQueue("batch");
+
+    private final ActiveMQConnectionFactory connectionFactory =
+            new ActiveMQConnectionFactory("vm://batch-sender-test?create=false");
+    private BrokerService broker;
+
+    @Before
+    public void startBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("batch-sender-test");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    @After
+    public void stopBroker() throws Exception {
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test
+    public void commitsIncompleteBatchOnTimeoutWhileWaitingForNextMessage() throws Exception {
+        Connection connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(QUEUE);
+            CountDownLatch firstReceived = new CountDownLatch(1);
+
+            BatchStatistics statistics;
+            try (BatchSender sender = new BatchSender(connectionFactory, 100, 50)) {
+                statistics = sender.send(QUEUE, new Iterator<OutgoingMessage>() {
+                    private int next = 1;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (next == 2) {
+                            // первое сообщение должно прийти раньше, чем итератор отдаст второе
+                            try {
+                                assertNotNull(consumer.receive(5000));
+                            } catch (Exception e) {
+                                throw new AssertionError(e);
+                            }
+                            firstReceived.countDown();
+                        }
+                        return next <= 2;
+                    }
+
+                    @Override
+                    public OutgoingMessage next() {
+                        return new OutgoingMessage("message " + next++);
+                    }
+                });
+            }
+
+            assertEquals(0, firstReceived.getCount());
+            assertNotNull(consumer.receive(5000));
+            assertEquals(2L, statistics.getMessages());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void commitsBySizeWithoutTimeout() throws Exception {
+        try (BatchSender sender = new BatchSender(connectionFactory, 10, 0)) {
+            Iterator<OutgoingMessage> messages = new Iterator<OutgoingMessage>() {
+                private int next = 1;
+
+                @Override
+                public boolean hasNext() {
+                    return next <= 25;
+                }
+
+                @Override
+                public OutgoingMessage next() {
+                    return new OutgoingMessage("message " + next++);
+                }
+            };
+            BatchStatistics statistics = sender.send(QUEUE, messages);
+            assertEquals(25L, statistics.getMessages());
+            assertEquals(3L, statistics.getBatches());
+        }
+    }
+}
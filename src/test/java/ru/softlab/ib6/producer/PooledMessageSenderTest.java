@@ -0,0 +1,78 @@
+package ru.softlab.ib6.producer;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * @author Andrey Grigorov
+ */
+public class PooledMessageSenderTest {
+
+    private static final String BROKER_NAME = "pooled-sender-test";
+    private static final ActiveMQQueue QUEUE = new ActiveMQQueue("pooled");
+
+    private final ActiveMQConnectionFactory connectionFactory =
+            new ActiveMQConnectionFactory("vm://" + BROKER_NAME + "?create=false");
+    private BrokerService broker;
+
+    @After
+    public void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test
+    public void reconnectsAfterConnectionFailure() throws Exception {
+        broker = startBroker();
+        try (PooledMessageSender sender = new PooledMessageSender(2)) {
+            sender.send(connectionFactory, QUEUE, "before restart", null);
+
+            broker.stop();
+            broker.waitUntilStopped();
+            broker = startBroker();
+
+            // первая отправка может сама обнаружить закрытое соединение; вторая идёт уже через новое
+            try {
+                sender.send(connectionFactory, QUEUE, "after restart", null);
+            } catch (JMSException e) {
+                sender.send(connectionFactory, QUEUE, "after restart", null);
+            }
+        }
+
+        Connection connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(QUEUE);
+            Message message = consumer.receive(5000);
+            assertNotNull(message);
+            assertEquals("after restart", message.getJMSCorrelationID());
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static BrokerService startBroker() throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName(BROKER_NAME);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+        return broker;
+    }
+}
@@ -0,0 +1,97 @@
+package ru.softlab.ib6.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andrey Grigorov
+ */
+public class ResultsFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ScenarioMetrics metrics(String scenario, double throughput, double p50, double p99, long lost) {
+        return new ScenarioMetrics(scenario, true, 1000, 20, 20 - lost, lost, 0, throughput, p50, 2.5, p99, 12.25,
+                15.5, 0.5);
+    }
+
+    @Test
+    public void csvRoundTrip() throws Exception {
+        List<ScenarioMetrics> written = Arrays.asList(
+                metrics("2 Active MQ, 2 Producers, \"quoted\"", 123.456, 1.25, 10.125, 0),
+                metrics("plain", 7, 0.5, 3, 2));
+        Path csv = folder.getRoot().toPath().resolve("results.csv");
+        ResultsFiles.writeCsv(csv, written);
+
+        List<ScenarioMetrics> read = ResultsFiles.readCsv(csv);
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            ScenarioMetrics expected = written.get(i);
+            ScenarioMetrics actual = read.get(i);
+            assertEquals(expected.getScenario(), actual.getScenario());
+            assertEquals(expected.isCompleted(), actual.isCompleted());
+            assertEquals(expected.getReceived(), actual.getReceived());
+            assertEquals(expected.getLost(), actual.getLost());
+            assertEquals(expected.getThroughput(), actual.getThroughput(), 0.001);
+            assertEquals(expected.getP50(), actual.getP50(), 0.001);
+            assertEquals(expected.getP99(), actual.getP99(), 0.001);
+            assertEquals(expected.getForwardedShare(), actual.getForwardedShare(), 0.001);
+        }
+    }
+
+    @Test
+    public void jsonEscapesScenarioName() throws Exception {
+        Path json = folder.getRoot().toPath().resolve("results.json");
+        ResultsFiles.writeJson(json, Collections.singletonList(metrics("a \"b\" \\ c", 1, 1, 1, 0)));
+
+        String content = new String(Files.readAllBytes(json), StandardCharsets.UTF_8);
+        assertTrue(content, content.contains("\"scenario\": \"a \\\"b\\\" \\\\ c\""));
+        assertTrue(content, content.contains("\"throughput\": 1.000"));
+    }
+
+    @Test
+    public void noRegressionAgainstOwnBaseline() throws Exception {
+        List<ScenarioMetrics> baseline = Collections.singletonList(metrics("s", 100, 1, 10, 0));
+        Path csv = folder.getRoot().toPath().resolve("baseline.csv");
+        ResultsFiles.writeCsv(csv, baseline);
+
+        assertTrue(check(ResultsFiles.readCsv(csv), baseline).isEmpty());
+    }
+
+    @Test
+    public void regressionsBeyondThresholds() {
+        List<ScenarioMetrics> baseline = Collections.singletonList(metrics("s", 100, 1, 10, 0));
+
+        assertTrue(check(baseline, Collections.singletonList(metrics("s", 95, 1.1, 11, 0))).isEmpty());
+        assertEquals(1, check(baseline, Collections.singletonList(metrics("s", 80, 1, 10, 0))).size());
+        assertEquals(2, check(baseline, Collections.singletonList(metrics("s", 100, 2, 20, 0))).size());
+        assertEquals(1, check(baseline, Collections.singletonList(metrics("s", 100, 1, 10, 1))).size());
+    }
+
+    @Test
+    public void missingBaselineScenarioIsRegression() {
+        List<ScenarioMetrics> baseline = Arrays.asList(metrics("s", 100, 1, 10, 0), metrics("t", 100, 1, 10, 0));
+        List<String> regressions = check(baseline, Collections.singletonList(metrics("s", 100, 1, 10, 0)));
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).contains("\"t\""));
+    }
+
+    private static List<String> check(List<ScenarioMetrics> baseline, List<ScenarioMetrics> current) {
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        return new RegressionCheck(0.1, 0.2).check(baseline, current, out);
+    }
+}
@@ -0,0 +1,153 @@
+package ru.softlab.ib6.scenario;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.softlab.ib6.bridge.EmbeddedBridgeStatisticsSource;
+import ru.softlab.ib6.embedded.EmbeddedBrokerNetwork;
+import ru.softlab.ib6.producer.PooledMessageSender;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Сценарии на сети из двух брокеров внутри JVM с небольшим числом сообщений и коротким таймаутом.
+ *
+ * @author Andrey Grigorov
+ */
+public class ScenarioRunnerTest {
+
+    private static final long TIMEOUT_MILLIS = 20000;
+    private static final int DC_1 = 0;
+    private static final int DC_2 = 1;
+
+    private static EmbeddedBrokerNetwork network;
+    private static PooledMessageSender sender;
+    private static ScenarioRunner runner;
+    private static ScenarioRunner demandAwareRunner;
+
+    @BeforeClass
+    public static void startNetwork() throws Exception {
+        network = EmbeddedBrokerNetwork.start();
+        sender = new PooledMessageSender();
+        List<DataCenter> dataCenters = Arrays.asList(
+                new DataCenter("DataCenter #1", properties(network.getConnectUri(0), network.getConnectUri(1))),
+                new DataCenter("DataCenter #2", properties(network.getConnectUri(1), network.getConnectUri(0))));
+        runner = new ScenarioRunner(dataCenters, sender, TIMEOUT_MILLIS, false);
+        demandAwareRunner = new ScenarioRunner(dataCenters, sender, TIMEOUT_MILLIS, false)
+                .bridgeStatistics(new EmbeddedBridgeStatisticsSource(network));
+    }
+
+    @AfterClass
+    public static void stopNetwork() throws Exception {
+        if (sender != null) {
+            sender.close();
+        }
+        if (network != null) {
+            network.close();
+        }
+    }
+
+    private static Properties properties(String primaryAddress, String backupAddress) {
+        Properties properties = new Properties();
+        properties.put("java.naming.provider.url", "failover:(" + primaryAddress + "," + backupAddress
+                + ")?randomize=false&priorityBackup=true&jms.prefetchPolicy.all=1");
+        properties.put("java.naming.factory.initial", "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+        return properties;
+    }
+
+    @Test
+    public void consumersInBothDataCentersReceiveAllMessages() throws Exception {
+        String queue = "dynamicQueues/regular";
+        ScenarioResult result = runner.run(Scenario.builder("regular")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, queue))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, queue))
+                .producer(new ProducerSpec(DC_1, queue, 10))
+                .producer(new ProducerSpec(DC_2, queue, 10))
+                .expectTotal(20)
+                .build());
+
+        assertTrue(result.isCompleted());
+        assertEquals(20, result.getReceivedTotal());
+        assertEquals(0, result.getLostTotal());
+        assertEquals(0, result.getDuplicateTotal());
+    }
+
+    @Test
+    public void messagesOfOtherDataCenterAreForwardedToSingleConsumer() throws Exception {
+        String queue = "dynamicQueues/forwarded";
+        ScenarioResult result = runner.run(Scenario.builder("one consumer")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, queue).expect(20))
+                .producer(new ProducerSpec(DC_1, queue, 10))
+                .producer(new ProducerSpec(DC_2, queue, 10))
+                .build());
+
+        assertTrue(result.isCompleted());
+        assertEquals(20, result.getReceivedTotal());
+        assertEquals(0.5, result.getLatency().getForwardedShare(), 0.001);
+    }
+
+    @Test
+    public void duplicateDeliveredToAnotherConsumerOfQueueIsCounted() throws Exception {
+        String queue = "dynamicQueues/duplicates";
+        // второй producer того же датацентра повторяет correlation ID первого, как при повторной доставке
+        ScenarioResult result = runner.run(Scenario.builder("duplicates")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, queue))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, queue))
+                .producer(new ProducerSpec(DC_1, queue, 5))
+                .producer(new ProducerSpec(DC_1, queue, 5))
+                .expectTotal(10)
+                .build());
+
+        assertTrue(result.isCompleted());
+        assertEquals(10, result.getReceivedTotal());
+        assertEquals(5, result.getDuplicateTotal());
+    }
+
+    @Test
+    public void topicSubscribersInBothDataCentersReceiveEveryMessage() throws Exception {
+        String topic = "dynamicTopics/fanout";
+        ScenarioResult result = runner.run(Scenario.builder("topic")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, topic).expect(10))
+                .consumer(new ConsumerSpec("Consumer 2", DC_2, topic).expect(10))
+                .producer(new ProducerSpec(DC_2, topic, 10))
+                .build());
+
+        assertTrue(result.isCompleted());
+        for (ConsumerResult consumer : result.getConsumers()) {
+            assertEquals(10, consumer.getReceived());
+            assertEquals(0, consumer.getDuplicates());
+        }
+    }
+
+    @Test
+    public void topicMessagesFromRemoteDataCenterAreSentAfterBridgeSubscribes() throws Exception {
+        String topic = "dynamicTopics/demand";
+        ScenarioResult result = demandAwareRunner.run(Scenario.builder("topic after demand")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, topic).expect(10))
+                .producer(new ProducerSpec(DC_2, topic, 10))
+                .build());
+
+        assertTrue(result.isCompleted());
+        assertEquals(10, result.getReceivedTotal());
+        assertEquals(1.0, result.getLatency().getForwardedShare(), 0.001);
+    }
+
+    @Test
+    public void selectorConsumerReceivesOnlyMatchingMessages() throws Exception {
+        String queue = "dynamicQueues/selector";
+        ScenarioResult result = runner.run(Scenario.builder("selector")
+                .consumer(new ConsumerSpec("Consumer 1", DC_1, queue).selector("service = 'ABC'").expect(20))
+                .producer(new ProducerSpec(DC_1, queue, 10).header("service", "ABC"))
+                .producer(new ProducerSpec(DC_2, queue, 10).header("service", "ABC"))
+                .producer(new ProducerSpec(DC_1, queue, 10).header("service", "XYZ"))
+                .build());
+
+        assertTrue(result.isCompleted());
+        assertEquals(20, result.getReceivedTotal());
+    }
+}
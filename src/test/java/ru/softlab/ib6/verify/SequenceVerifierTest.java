@@ -0,0 +1,138 @@
+package ru.softlab.ib6.verify;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andrey Grigorov
+ */
+public class SequenceVerifierTest {
+
+    @Test
+    public void allSequencesInOrder() {
+        SequenceVerifier verifier = new SequenceVerifier(Arrays.asList("p1", "p2"));
+        SequenceVerifier.Consumer consumer = verifier.consumer();
+        for (int sequence = 1; sequence <= 1000; sequence++) {
+            consumer.record(0, sequence);
+            consumer.record(1, sequence);
+        }
+        verifier.sent(0, 1000);
+        verifier.sent(1, 1000);
+
+        for (SequenceReport report : verifier.report()) {
+            assertTrue(report.isExactlyOnceInOrder());
+            assertEquals(1000, report.getSent());
+            assertEquals(1000, report.getReceived());
+        }
+        assertEquals(0, verifier.getUnverified());
+    }
+
+    @Test
+    public void gapsDuplicatesAndReorderings() {
+        SequenceVerifier verifier = new SequenceVerifier(Arrays.asList("p1"));
+        SequenceVerifier.Consumer consumer = verifier.consumer();
+        for (long sequence : new long[]{1, 2, 5, 3, 3, 7, 8}) {
+            consumer.record(0, sequence);
+        }
+        verifier.sent(0, 10);
+
+        SequenceReport report = verifier.report().get(0);
+        assertFalse(report.isExactlyOnceInOrder());
+        assertEquals(6, report.getReceived());
+        assertEquals(1, report.getDuplicates());
+        assertEquals(1, report.getReordered());
+        assertEquals(2, report.getMaxReorderDistance());
+        // 4, 6, 9-10
+        assertEquals(4, report.getMissing());
+        assertEquals(3, report.getGapCount());
+        List<long[]> gaps = report.getGaps();
+        assertArrayEquals(new long[]{4, 4}, gaps.get(0));
+        assertArrayEquals(new long[]{6, 6}, gaps.get(1));
+        assertArrayEquals(new long[]{9, 10}, gaps.get(2));
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentConsumersFindInjectedGaps() throws Exception {
+        final long total = 5_000_000;
+        final int threads = 4;
+        final SequenceVerifier verifier = new SequenceVerifier(Arrays.asList("p1"));
+        verifier.sent(0, total);
+
+        List<Thread> consumers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int first = t + 1;
+            Thread thread = new Thread(() -> {
+                SequenceVerifier.Consumer consumer = verifier.consumer();
+                for (long sequence = first; sequence <= total; sequence += threads) {
+                    // пропуски: 1000, 2500000-2500009, 5000000; номер 2 будет получен последним
+                    if (sequence == 1000 || sequence >= 2_500_000 && sequence < 2_500_010 || sequence == total
+                            || sequence == 2) {
+                        continue;
+                    }
+                    consumer.record(0, sequence);
+                }
+                if (first == 1) {
+                    consumer.record(0, 1);
+                } else if (first == 2) {
+                    consumer.record(0, 2);
+                }
+            });
+            consumers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : consumers) {
+            thread.join();
+        }
+
+        SequenceReport report = verifier.report().get(0);
+        assertEquals(total - 12, report.getReceived());
+        assertEquals(12, report.getMissing());
+        assertEquals(3, report.getGapCount());
+        List<long[]> gaps = report.getGaps();
+        assertArrayEquals(new long[]{1000, 1000}, gaps.get(0));
+        assertArrayEquals(new long[]{2_500_000, 2_500_009}, gaps.get(1));
+        assertArrayEquals(new long[]{total, total}, gaps.get(2));
+        assertEquals(1, report.getDuplicates());
+        assertEquals(1, report.getReordered());
+        assertEquals(0, verifier.getUnverified());
+    }
+
+    @Test
+    public void orderIsCheckedPerConsumer() {
+        SequenceVerifier verifier = new SequenceVerifier(Arrays.asList("p1"));
+        SequenceVerifier.Consumer first = verifier.consumer();
+        SequenceVerifier.Consumer second = verifier.consumer();
+        first.record(0, 2);
+        second.record(0, 1);
+        verifier.sent(0, 2);
+
+        SequenceReport report = verifier.report().get(0);
+        assertEquals(0, report.getReordered());
+        assertEquals(0, report.getMissing());
+    }
+
+    @Test
+    public void stampedMessagesAreRecorded() throws Exception {
+        SequenceVerifier verifier = new SequenceVerifier(Arrays.asList("p1"));
+        SequenceVerifier.Consumer consumer = verifier.consumer();
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        SequenceVerifier.stamp(message, 0, 1);
+        consumer.record(message);
+        consumer.record(new ActiveMQBytesMessage());
+        consumer.record(3, 1);
+        consumer.record(0, 0);
+        verifier.sent(0, 1);
+
+        assertTrue(verifier.report().get(0).isExactlyOnceInOrder());
+        assertEquals(3, verifier.getUnverified());
+    }
+}